@@ -0,0 +1,59 @@
+package org.jetbrains.research.refactorinsight.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Correction of the line markings of a refactoring against the contents of large files,
+ * as done the first time a refactoring is shown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CorrectionBenchmark {
+  @Param({"2000", "20000"})
+  public int lines;
+
+  @Param({"1", "20"})
+  public int markings;
+
+  private String before;
+  private String after;
+  private String uncorrected;
+  private RefactoringInfo info;
+
+  /**
+   * Generates the files and the uncorrected refactoring.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    SyntheticData data = new SyntheticData(SyntheticData.SEED);
+    before = data.javaFile(lines);
+    after = data.javaFile(lines);
+    uncorrected = data.uncorrectedInfo(lines, markings).toString();
+  }
+
+  /**
+   * Loads the uncorrected refactoring again, since the correction modifies its markings.
+   */
+  @Setup(Level.Invocation)
+  public void load() {
+    info = RefactoringInfo.fromString(uncorrected);
+  }
+
+  @Benchmark
+  public RefactoringInfo correctLines() {
+    info.correctLines(before, null, after);
+    return info;
+  }
+}
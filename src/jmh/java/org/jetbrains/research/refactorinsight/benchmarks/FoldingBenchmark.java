@@ -0,0 +1,54 @@
+package org.jetbrains.research.refactorinsight.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
+import org.jetbrains.research.refactorinsight.folding.FoldIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Grouping of the folds of the refactorings of a commit by file, offset and type,
+ * as done by the {@link org.jetbrains.research.refactorinsight.folding.RefactoringFolder}
+ * the first time a file of the commit is opened.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FoldingBenchmark {
+  @Param({"50", "1000"})
+  public int refactorings;
+
+  private String encodedEntry;
+  private RefactoringEntry entry;
+
+  /**
+   * Generates a commit whose moved methods often share their offsets.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    encodedEntry = new SyntheticData(SyntheticData.SEED)
+        .entry(SyntheticData.commitId(1), SyntheticData.commitId(0), 0, refactorings)
+        .toString();
+  }
+
+  /**
+   * Loads the commit again, since the hint texts of the folds are computed once.
+   */
+  @Setup(Level.Invocation)
+  public void load() {
+    entry = RefactoringEntry.fromString(encodedEntry, SyntheticData.commitId(1));
+  }
+
+  @Benchmark
+  public FoldIndex buildFoldIndex() {
+    return FoldIndex.build(entry);
+  }
+}
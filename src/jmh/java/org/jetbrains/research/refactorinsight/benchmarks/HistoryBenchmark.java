@@ -0,0 +1,46 @@
+package org.jetbrains.research.refactorinsight.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.research.refactorinsight.data.HistoryIndex;
+import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Replay of the refactorings of a project history into the index of the `Show Refactoring History` action.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HistoryBenchmark {
+  @Param({"1000", "10000"})
+  public int commits;
+
+  @Param({"5"})
+  public int refactoringsPerCommit;
+
+  private List<RefactoringEntry> history;
+
+  @Setup
+  public void setUp() {
+    history = new SyntheticData(SyntheticData.SEED).history(commits, refactoringsPerCommit);
+  }
+
+  /**
+   * Adds the commits one by one, from the oldest to the newest.
+   */
+  @Benchmark
+  public HistoryIndex replay() {
+    HistoryIndex index = new HistoryIndex();
+    history.forEach(index::addCommit);
+    return index;
+  }
+}
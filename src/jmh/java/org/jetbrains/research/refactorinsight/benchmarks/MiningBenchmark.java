@@ -0,0 +1,338 @@
+package org.jetbrains.research.refactorinsight.benchmarks;
+
+import com.intellij.openapi.vcs.VcsException;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.processors.CommitMiner;
+import org.jetbrains.research.refactorinsight.processors.MiningScope;
+import org.jetbrains.research.refactorinsight.processors.MiningTimer;
+import org.jetbrains.research.refactorinsight.processors.MiningTimer.Phase;
+import org.jetbrains.research.refactorinsight.processors.UMLModelCache;
+import org.jetbrains.research.refactorinsight.services.RefactoringsMap;
+import org.jetbrains.research.refactorinsight.services.RefactoringsMapConverter;
+import org.jetbrains.research.refactorinsight.utils.Utils;
+
+/**
+ * Mines the repositories bundled with the tests through the same code path as the {@link CommitMiner},
+ * and prints the throughput, the time spent in each phase and the peak heap usage for each number of threads.
+ * The correction of the line markings is measured separately, after the mining, as the plugin does it lazily.
+ * The snapshots in `miningService/commit_*` are committed one after another into a temporary repository
+ * with fixed authors and dates, so that the mined commits are the same on every run.
+ * It runs offline: the repositories are read with JGit only.
+ *
+ * <p>Usage: {@code MiningBenchmark <testData directory> [threads, e.g. 1,2,4] [runs]}
+ */
+public class MiningBenchmark {
+  //the same as the mining service
+  private static final int MODEL_CACHE_SIZE = 2000;
+  private static final int MAX_CHAIN_LENGTH = 8;
+  private static final String FORMAT = "%-24s %7s %7s %12s %9s %9s %9s %9s %9s %9s %9s %9s %9s%n";
+
+  private final String name;
+  private final Repository repository;
+  private final List<RevCommit> commits;
+
+  private MiningBenchmark(String name, Repository repository) throws IOException {
+    this.name = name;
+    this.repository = repository;
+    this.commits = new ArrayList<>();
+    try (RevWalk walk = new RevWalk(repository)) {
+      walk.markStart(walk.parseCommit(repository.resolve("HEAD")));
+      for (RevCommit commit : walk) {
+        if (commit.getParentCount() > 0) {
+          commits.add(commit);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the directory with the test data, the numbers of threads separated by commas
+   *             and the number of measured runs for each number of threads.
+   */
+  public static void main(String[] args) throws Exception {
+    File testData = new File(args.length > 0 ? args[0] : "src/test/testData");
+    int[] threads = Arrays.stream((args.length > 1 ? args[1] : "1,2,4").split(","))
+        .mapToInt(value -> Integer.parseInt(value.trim()))
+        .toArray();
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    Path snapshotsRepository = Files.createTempDirectory("refactorinsight-benchmark");
+    try {
+      List<MiningBenchmark> benchmarks = Arrays.asList(
+          new MiningBenchmark("example-refactorings", new FileRepositoryBuilder()
+              .setGitDir(new File(testData, "example-refactorings/gitdir"))
+              .setMustExist(true)
+              .build()),
+          new MiningBenchmark("miningService", commitSnapshots(new File(testData, "miningService"),
+              snapshotsRepository.toFile())));
+
+      System.out.printf(FORMAT, "repository", "threads", "commits", "refactorings", "wall ms", "commits/s",
+          "blobs ms", "java ms", "kotlin ms", "convert ms", "correct ms", "persist ms", "heap MB");
+      for (MiningBenchmark benchmark : benchmarks) {
+        //warms up the JIT and the file system caches, the results are not reported
+        benchmark.run(threads[0]);
+        for (int threadCount : threads) {
+          for (int i = 0; i < runs; i++) {
+            benchmark.run(threadCount).print(benchmark.name, threadCount);
+          }
+        }
+        benchmark.repository.close();
+      }
+    } finally {
+      try (Stream<Path> files = Files.walk(snapshotsRepository)) {
+        files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+      }
+    }
+    //the miners may leave non-daemon threads behind
+    System.exit(0);
+  }
+
+  /**
+   * Mines all the commits of the repository with a cold model cache.
+   */
+  private Result run(int threads) throws Exception {
+    resetPeakHeap();
+    UMLModelCache cache = new UMLModelCache(MODEL_CACHE_SIZE);
+    Map<String, RefactoringEntry> map = new ConcurrentHashMap<>();
+    MiningTimer total = new MiningTimer();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    long start = System.nanoTime();
+    List<Future<MiningTimer>> chains = new ArrayList<>();
+    for (List<RevCommit> chain : chains()) {
+      chains.add(pool.submit(() -> {
+        MiningTimer timer = new MiningTimer();
+        for (RevCommit commit : chain) {
+          mine(commit, map, cache, timer);
+        }
+        return timer;
+      }));
+    }
+    for (Future<MiningTimer> chain : chains) {
+      MiningTimer timer = chain.get();
+      for (Phase phase : Phase.values()) {
+        total.add(phase, timer.get(phase));
+      }
+    }
+    pool.shutdown();
+
+    RefactoringsMapConverter converter = new RefactoringsMapConverter();
+    total.time(Phase.PERSISTENCE, () ->
+        converter.fromString(converter.toString(new RefactoringsMap(new ConcurrentHashMap<>(map), "benchmark"))));
+    long wall = System.nanoTime() - start;
+    total.add(Phase.CORRECTION, correct(map));
+    int refactorings = map.values().stream().mapToInt(entry -> entry.getRefactorings().size()).sum();
+    return new Result(commits.size(), refactorings, wall, total, peakHeap());
+  }
+
+  /**
+   * Groups consecutive commits of a parent-child chain, as the {@link CommitMiner} does,
+   * so that the models parsed for one commit are reused by the next one on the same thread.
+   */
+  private List<List<RevCommit>> chains() {
+    List<List<RevCommit>> chains = new ArrayList<>();
+    List<RevCommit> chain = new ArrayList<>();
+    for (RevCommit commit : commits) {
+      if (!chain.isEmpty() && (chain.size() >= MAX_CHAIN_LENGTH
+          || !commit.equals(chain.get(chain.size() - 1).getParent(0)))) {
+        chains.add(chain);
+        chain = new ArrayList<>();
+      }
+      chain.add(commit);
+    }
+    if (!chain.isEmpty()) {
+      chains.add(chain);
+    }
+    return chains;
+  }
+
+  private void mine(RevCommit commit, Map<String, RefactoringEntry> map, UMLModelCache cache, MiningTimer timer) {
+    try {
+      CommitMiner.detect(map, commit.getName(), commit.getParent(0).getName(), commit.getCommitTime() * 1000L,
+          repository, cache, timer, MiningScope.ALL);
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Corrects the line markings of all the mined refactorings through {@link Utils#check},
+   * with the file contents read from the repository instead of the VCS of the project.
+   * The plugin corrects a refactoring only when its diff is opened, so this is measured after the mining,
+   * and not included in the mining throughput.
+   *
+   * @return the time spent, including the loading of the file contents.
+   */
+  private long correct(Map<String, RefactoringEntry> map) throws IOException {
+    long start = System.nanoTime();
+    try (RevWalk walk = new RevWalk(repository)) {
+      for (RevCommit commit : commits) {
+        RefactoringEntry entry = map.get(commit.getName());
+        if (entry == null) {
+          continue;
+        }
+        RevCommit parsed = walk.parseCommit(commit);
+        RevCommit parent = walk.parseCommit(parsed.getParent(0));
+        for (RefactoringInfo info : entry.getRefactorings()) {
+          if (info.needsCorrection()) {
+            Utils.check(info, (path, atCommit) -> read(atCommit ? parsed : parent, path));
+          }
+        }
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private String read(RevCommit commit, String path) throws VcsException {
+    try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree())) {
+      if (treeWalk == null) {
+        return null;
+      }
+      return new String(repository.open(treeWalk.getObjectId(0)).getBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new VcsException(e);
+    }
+  }
+
+  /**
+   * Commits the snapshots one after another, in the order of their numbers.
+   */
+  private static Repository commitSnapshots(File snapshots, File directory) throws Exception {
+    File[] commits = snapshots.listFiles(file -> file.isDirectory() && file.getName().startsWith("commit_"));
+    if (commits == null) {
+      throw new IOException("No snapshots in " + snapshots);
+    }
+    Arrays.sort(commits, Comparator.comparingInt(file -> Integer.parseInt(file.getName().substring(7))));
+    try (Git git = Git.init().setDirectory(directory).call()) {
+      long time = 1_600_000_000_000L;
+      for (File commit : commits) {
+        clearWorkingTree(directory.toPath());
+        copy(commit.toPath(), directory.toPath());
+        git.add().addFilepattern(".").call();
+        git.add().setUpdate(true).addFilepattern(".").call();
+        PersonIdent ident = new PersonIdent("RefactorInsight", "benchmark@refactorinsight",
+            new Date(time), TimeZone.getTimeZone("UTC"));
+        git.commit().setMessage(commit.getName()).setAuthor(ident).setCommitter(ident).call();
+        time += 60_000L;
+      }
+      return new FileRepositoryBuilder().setWorkTree(directory).setMustExist(true).build();
+    }
+  }
+
+  private static void clearWorkingTree(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      List<Path> paths = files
+          .filter(path -> !path.equals(directory) && !directory.relativize(path).startsWith(".git"))
+          .sorted(Comparator.reverseOrder())
+          .collect(Collectors.toList());
+      for (Path path : paths) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static void copy(Path from, Path to) throws IOException {
+    try (Stream<Path> files = Files.walk(from)) {
+      for (Path path : files.collect(Collectors.toList())) {
+        Path target = to.resolve(from.relativize(path).toString());
+        if (Files.isDirectory(path)) {
+          Files.createDirectories(target);
+        } else {
+          Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+    }
+  }
+
+  private static void resetPeakHeap() {
+    System.gc();
+    heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+  }
+
+  /**
+   * Returns the sum of the peak usages of the heap pools since they were reset.
+   */
+  private static long peakHeap() {
+    return heapPools().stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+  }
+
+  private static List<MemoryPoolMXBean> heapPools() {
+    return ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Measurements of a single run.
+   */
+  private static class Result {
+    private final int commits;
+    private final int refactorings;
+    private final long wallNanos;
+    private final MiningTimer phases;
+    private final long peakHeap;
+
+    Result(int commits, int refactorings, long wallNanos, MiningTimer phases, long peakHeap) {
+      this.commits = commits;
+      this.refactorings = refactorings;
+      this.wallNanos = wallNanos;
+      this.phases = phases;
+      this.peakHeap = peakHeap;
+    }
+
+    /**
+     * Prints the run as a row of the summary.
+     * The time of the mining phases is summed over all the threads.
+     * The correction runs on one thread after the mining, and is not included in the wall time.
+     */
+    void print(String repository, int threads) {
+      System.out.printf(FORMAT, repository, threads, commits, refactorings,
+          millis(wallNanos),
+          String.format("%.2f", commits / (wallNanos / 1e9)),
+          millis(phases.get(Phase.BLOB_LOADING)),
+          millis(phases.get(Phase.JAVA_DETECTION)),
+          millis(phases.get(Phase.KOTLIN_DETECTION)),
+          millis(phases.get(Phase.CONVERSION)),
+          millis(phases.get(Phase.CORRECTION)),
+          millis(phases.get(Phase.PERSISTENCE)),
+          peakHeap / (1024 * 1024));
+    }
+
+    private static long millis(long nanos) {
+      return nanos / 1_000_000;
+    }
+  }
+}
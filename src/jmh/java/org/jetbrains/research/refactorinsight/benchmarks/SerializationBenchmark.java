@@ -0,0 +1,115 @@
+package org.jetbrains.research.refactorinsight.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.services.RefactoringsMap;
+import org.jetbrains.research.refactorinsight.services.RefactoringsMapConverter;
+import org.jetbrains.research.refactorinsight.utils.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Serialization of the refactorings store, as done when the project is opened and saved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerializationBenchmark {
+  private static final int INFOS = 1000;
+
+  @Param({"100", "1000"})
+  public int commits;
+
+  @Param({"5"})
+  public int refactoringsPerCommit;
+
+  private final RefactoringsMapConverter converter = new RefactoringsMapConverter();
+  private RefactoringsMap store;
+  private String encodedStore;
+  private List<RefactoringInfo> infos;
+  private List<String> encodedInfos;
+  private List<String> names;
+  private List<String> sanitizedNames;
+
+  /**
+   * Generates the store and its serialized form.
+   */
+  @Setup
+  public void setUp() {
+    SyntheticData data = new SyntheticData(SyntheticData.SEED);
+    store = data.store(commits, refactoringsPerCommit);
+    encodedStore = converter.toString(store);
+    infos = new ArrayList<>();
+    encodedInfos = new ArrayList<>();
+    names = new ArrayList<>();
+    sanitizedNames = new ArrayList<>();
+    for (int i = 0; i < INFOS; i++) {
+      RefactoringInfo info = data.info();
+      infos.add(info);
+      encodedInfos.add(info.toString());
+      String name = data.nameWithDelimiters();
+      names.add(name);
+      sanitizedNames.add(StringUtils.sanitize(name));
+    }
+  }
+
+  @Benchmark
+  public String encodeStore() {
+    return converter.toString(store);
+  }
+
+  @Benchmark
+  public RefactoringsMap decodeStore() {
+    return converter.fromString(encodedStore);
+  }
+
+  /**
+   * Serializes {@value #INFOS} refactorings.
+   */
+  @Benchmark
+  public void encodeInfos(Blackhole blackhole) {
+    for (RefactoringInfo info : infos) {
+      blackhole.consume(info.toString());
+    }
+  }
+
+  /**
+   * Deserializes {@value #INFOS} refactorings.
+   */
+  @Benchmark
+  public void decodeInfos(Blackhole blackhole) {
+    for (String value : encodedInfos) {
+      blackhole.consume(RefactoringInfo.fromString(value));
+    }
+  }
+
+  /**
+   * Escapes {@value #INFOS} names that contain delimiters.
+   */
+  @Benchmark
+  public void sanitize(Blackhole blackhole) {
+    for (String name : names) {
+      blackhole.consume(StringUtils.sanitize(name));
+    }
+  }
+
+  /**
+   * Removes the escape chars from {@value #INFOS} names.
+   */
+  @Benchmark
+  public void deSanitize(Blackhole blackhole) {
+    for (String name : sanitizedNames) {
+      blackhole.consume(StringUtils.deSanitize(name));
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package org.jetbrains.research.refactorinsight.benchmarks;
+
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.FRAG;
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.delimiter;
+
+import com.intellij.diff.fragments.LineFragmentImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
+import org.jetbrains.research.refactorinsight.data.Group;
+import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.data.RefactoringLine;
+import org.jetbrains.research.refactorinsight.data.diff.TwoSidedDiffRequestGenerator;
+import org.jetbrains.research.refactorinsight.folding.FoldingDescriptor;
+import org.jetbrains.research.refactorinsight.services.MiningService;
+import org.jetbrains.research.refactorinsight.services.RefactoringsMap;
+
+/**
+ * Generates synthetic but realistic inputs for the benchmarks.
+ * Commits touch a few classes of a project with nested packages, and their refactorings
+ * follow the mix observed on real projects: mostly method and attribute renames and moves,
+ * with fewer class renames and variable changes.
+ * The generated data depends only on the seed, so that results are comparable between runs.
+ */
+final class SyntheticData {
+  static final long SEED = 42;
+
+  private static final int PACKAGES = 20;
+  private static final int CLASSES = 50;
+  private static final int METHODS = 30;
+
+  private final Random random;
+
+  SyntheticData(long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Generates the history of a project: a linear chain of commits, from the oldest to the newest.
+   *
+   * @param commits               number of commits.
+   * @param refactoringsPerCommit average number of refactorings in a commit.
+   */
+  List<RefactoringEntry> history(int commits, int refactoringsPerCommit) {
+    List<RefactoringEntry> entries = new ArrayList<>();
+    String parent = commitId(0);
+    for (int i = 1; i <= commits; i++) {
+      String commitId = commitId(i);
+      entries.add(entry(commitId, parent, 1_600_000_000_000L + i * 60_000L,
+          1 + random.nextInt(2 * refactoringsPerCommit)));
+      parent = commitId;
+    }
+    return entries;
+  }
+
+  /**
+   * Generates the refactorings store of a project, as it is persisted.
+   */
+  RefactoringsMap store(int commits, int refactoringsPerCommit) {
+    ConcurrentMap<String, RefactoringEntry> map = new ConcurrentHashMap<>();
+    history(commits, refactoringsPerCommit).forEach(entry -> map.put(entry.getCommitId(), entry));
+    //a few ranges mined as single changes are stored along with the commits
+    for (int i = 0; i + 10 < commits; i += commits / 10 + 1) {
+      RefactoringEntry range = entry(commitId(i + 10), commitId(i), 1_600_000_000_000L, refactoringsPerCommit * 5);
+      map.put(MiningService.rangeKey(commitId(i), commitId(i + 10)), range);
+    }
+    return new RefactoringsMap(map, "benchmark");
+  }
+
+  /**
+   * Generates the refactorings of a single commit.
+   */
+  RefactoringEntry entry(String commitId, String parent, long time, int refactorings) {
+    RefactoringEntry entry = new RefactoringEntry(commitId, parent, time);
+    List<RefactoringInfo> infos = new ArrayList<>();
+    for (int i = 0; i < refactorings; i++) {
+      infos.add(info());
+    }
+    entry.setRefactorings(infos);
+    infos.forEach(info -> info.setEntry(entry));
+    return entry;
+  }
+
+  /**
+   * Generates a refactoring, whose ranges are already corrected.
+   */
+  RefactoringInfo info() {
+    int kind = random.nextInt(10);
+    String className = className(random.nextInt(PACKAGES), random.nextInt(CLASSES));
+    String method = method(random.nextInt(METHODS));
+    RefactoringInfo info = new RefactoringInfo()
+        .setIncludes(new HashSet<>())
+        .setHidden(false)
+        .setThreeSided(false)
+        .setMoreSided(false);
+    int line = 1 + random.nextInt(1500);
+    int length = 3 + random.nextInt(40);
+    info.setRequestGenerator(new TwoSidedDiffRequestGenerator(Collections.singletonList(
+        new LineFragmentImpl(line, line + length, line, line + length, 0, 0, 0, 0))));
+    info.setLeftPath(path(className)).setRightPath(path(className));
+    if (kind < 3) {
+      return info.setType(RefactoringType.RENAME_METHOD)
+          .setGroup(Group.METHOD)
+          .setNameBefore(className + "." + method)
+          .setNameAfter(className + "." + method(random.nextInt(METHODS)))
+          .setDetailsBefore(className)
+          .setDetailsAfter(className);
+    } else if (kind < 5) {
+      String target = className(random.nextInt(PACKAGES), random.nextInt(CLASSES));
+      int offset = 100 * random.nextInt(40);
+      return info.setType(random.nextBoolean() ? RefactoringType.MOVE_OPERATION : RefactoringType.PULL_UP_OPERATION)
+          .setGroup(Group.METHOD)
+          .setNameBefore(className + "." + method)
+          .setNameAfter(target + "." + method)
+          .setDetailsBefore(className)
+          .setDetailsAfter(target)
+          .setRightPath(path(target))
+          .setChanged(random.nextBoolean())
+          .setFoldingDescriptorBefore(new FoldingDescriptor(offset, offset + 10, offset + 400))
+          .setFoldingDescriptorAfter(new FoldingDescriptor(offset, offset + 10, offset + 400));
+    } else if (kind < 7) {
+      String field = "field" + random.nextInt(METHODS);
+      return info.setType(RefactoringType.RENAME_ATTRIBUTE)
+          .setGroup(Group.ATTRIBUTE)
+          .setNameBefore(field)
+          .setNameAfter(field + "Renamed")
+          .setDetailsBefore(className)
+          .setDetailsAfter(className)
+          .setElementBefore("private int " + field)
+          .setElementAfter("private int " + field + "Renamed");
+    } else if (kind < 8) {
+      return info.setType(RefactoringType.RENAME_CLASS)
+          .setGroup(Group.CLASS)
+          .setNameBefore(className)
+          .setNameAfter(className + "Impl")
+          .setRightPath(path(className + "Impl"));
+    } else {
+      String variable = "value" + random.nextInt(10);
+      return info.setType(RefactoringType.CHANGE_VARIABLE_TYPE)
+          .setGroup(Group.VARIABLE)
+          .setGroupId(className + "." + method + "." + variable)
+          .setNameBefore(className + "." + method)
+          .setNameAfter(className + "." + method)
+          .setElementBefore("int " + variable)
+          .setElementAfter("long " + variable);
+    }
+  }
+
+  /**
+   * Generates a refactoring as it is reported by the miner, before its ranges are corrected.
+   *
+   * @param lines    number of lines of the refactored files.
+   * @param markings number of line markings of the refactoring.
+   */
+  RefactoringInfo uncorrectedInfo(int lines, int markings) {
+    String className = className(random.nextInt(PACKAGES), random.nextInt(CLASSES));
+    RefactoringInfo info = new RefactoringInfo()
+        .setType(RefactoringType.EXTRACT_OPERATION)
+        .setGroup(Group.METHOD)
+        .setNameBefore(className + ".process(int)")
+        .setNameAfter(className + ".validate(int)")
+        .setLeftPath(path(className))
+        .setRightPath(path(className))
+        .setIncludes(new HashSet<>())
+        .setRequestGenerator(new TwoSidedDiffRequestGenerator());
+    for (int i = 0; i < markings; i++) {
+      int leftStart = random.nextInt(lines - 50);
+      int rightStart = random.nextInt(lines - 50);
+      int length = 1 + random.nextInt(40);
+      info.getLineMarkings().add(RefactoringLine.fromRawString(String.join(delimiter(FRAG),
+          String.valueOf(RefactoringLine.VisualisationType.TWO.ordinal()),
+          String.valueOf(RefactoringLine.MarkingOption.NONE.ordinal()),
+          "", "", "",
+          String.valueOf(leftStart), String.valueOf(leftStart + length), "0", "0",
+          String.valueOf(rightStart), String.valueOf(rightStart + length),
+          "0", "0", "0", "0", "0", "0",
+          "", "", "")));
+    }
+    return info;
+  }
+
+  /**
+   * Generates the contents of a Java file, with javadoc and annotated members.
+   *
+   * @param lines the approximate number of lines.
+   */
+  String javaFile(int lines) {
+    StringBuilder text = new StringBuilder("package org.example.module;\n\n")
+        .append("import java.util.List;\n\n")
+        .append("/**\n * Generated class.\n */\npublic class Generated {\n");
+    int line = 7;
+    for (int i = 0; line < lines; i++) {
+      text.append("  /**\n   * Computes the value number ").append(i).append(".\n   */\n")
+          .append("  @Override\n  @SuppressWarnings(\"unchecked\")\n")
+          .append("  public int ").append(method(i % METHODS).replace("(int)", "")).append(i)
+          .append("(int value) {\n");
+      int statements = 5 + random.nextInt(20);
+      for (int j = 0; j < statements; j++) {
+        text.append("    value = value * ").append(j + 1).append(" + ").append(random.nextInt(100)).append(";\n");
+      }
+      text.append("    return value;\n  }\n\n");
+      line += 9 + statements;
+    }
+    return text.append("}\n").toString();
+  }
+
+  /**
+   * Generates names that contain the delimiters of the serialized data, as generic types and lambdas do.
+   */
+  String nameWithDelimiters() {
+    return "java.util.Map<java.lang.String,java.util.List<" + className(random.nextInt(PACKAGES), 0)
+        + ">>.compute(java.util.function.Function<T,R>; int[]) -> `value`_" + random.nextInt(100) + "!";
+  }
+
+  static String commitId(int i) {
+    return String.format("%040x", i * 2_654_435_761L);
+  }
+
+  private static String className(int pkg, int cls) {
+    return "org.example.module" + pkg + ".impl.Class" + cls;
+  }
+
+  private static String method(int i) {
+    return "method" + i + "(int)";
+  }
+
+  private static String path(String className) {
+    return "src/main/java/" + className.replace('.', '/') + ".java";
+  }
+}
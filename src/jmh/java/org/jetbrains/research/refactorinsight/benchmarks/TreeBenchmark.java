@@ -0,0 +1,45 @@
+package org.jetbrains.research.refactorinsight.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.swing.tree.DefaultMutableTreeNode;
+
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.ui.tree.TreeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building of the nodes of the refactorings tree of a commit.
+ * The Swing component itself needs the IDE, so only the nodes built off the EDT are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TreeBenchmark {
+  @Param({"50", "1000"})
+  public int refactorings;
+
+  private List<RefactoringInfo> infos;
+
+  /**
+   * Generates the refactorings of a commit.
+   */
+  @Setup
+  public void setUp() {
+    infos = new SyntheticData(SyntheticData.SEED)
+        .entry(SyntheticData.commitId(1), SyntheticData.commitId(0), 0, refactorings)
+        .getRefactorings();
+  }
+
+  @Benchmark
+  public DefaultMutableTreeNode buildTreeRoot() {
+    return TreeUtils.buildTreeRoot(infos);
+  }
+}
@@ -0,0 +1,114 @@
+package org.jetbrains.research.refactorinsight.actions;
+
+import com.intellij.ide.DataManager;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiMethod;
+import com.intellij.ui.treeStructure.Tree;
+import com.intellij.usages.PsiElementUsageTarget;
+import com.intellij.usages.UsageTarget;
+import com.intellij.usages.UsageView;
+import git4idea.repo.GitRepository;
+import git4idea.repo.GitRepositoryManager;
+
+import java.awt.Component;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.services.MiningService;
+
+/**
+ * Represents the `Mine Refactoring History of This File` action.
+ * Unlike `Show Refactoring History`, it does not need the recent commits of the whole repository to be mined.
+ * It mines only the commits that changed the file of the selected element, following its renames,
+ * and shows the history of the element as soon as the first refactorings are detected.
+ * The refactorings detected later are added to the displayed tree, which keeps its expanded and selected nodes.
+ * The history is shown after the action event is over, so it is positioned with the editor or the component
+ * the action was invoked from, rather than with the data context of the event.
+ */
+public class FileRefactoringHistoryAction extends RefactoringHistoryAction {
+
+  @Override
+  public void actionPerformed(@NotNull AnActionEvent e) {
+    Project project = e.getProject();
+    if (project == null) {
+      return;
+    }
+    UsageTarget[] usageTarget = e.getData(UsageView.USAGE_TARGETS_KEY);
+    PsiElement element = getElement(usageTarget);
+    VirtualFile file = getFile(element);
+    if (file == null) {
+      return;
+    }
+    GitRepository repository = GitRepositoryManager.getInstance(project).getRepositoryForFileQuick(file);
+    String path = repository != null ? VfsUtilCore.getRelativePath(file, repository.getRoot()) : null;
+    if (path == null) {
+      return;
+    }
+
+    Editor editor = e.getData(CommonDataKeys.EDITOR);
+    Component component = editor != null ? editor.getContentComponent() : e.getData(PlatformDataKeys.CONTEXT_COMPONENT);
+
+    Ref<Tree> shown = Ref.create();
+    project.getService(MiningService.class).mineFileHistory(repository, path, (history, done) -> {
+      if (!element.isValid()) {
+        return;
+      }
+      Set<RefactoringInfo> refactorings = history.getOrDefault(signature(element), Collections.emptySet());
+      Tree tree = shown.get();
+      if (tree == null) {
+        if (!refactorings.isEmpty() || done) {
+          map = history;
+          shown.set(showHistory(project, DataManager.getInstance().getDataContext(component), usageTarget));
+        }
+        return;
+      }
+      getToolbarWindow(project).addRefactorings(tree, refactorings);
+      if (element instanceof PsiClass) {
+        addMemberHistory(project, tree, (PsiClass) element, history);
+      }
+    });
+  }
+
+  /**
+   * The history of a single file is complete once all its commits are mined,
+   * so there is no older history to load.
+   */
+  @Override
+  Consumer<Tree> reloadHistory(Project project, PsiElement element) {
+    return null;
+  }
+
+  @Override
+  public void update(@NotNull AnActionEvent e) {
+    UsageTarget[] usageTarget = e.getDataContext().getData(UsageView.USAGE_TARGETS_KEY);
+    PsiElement element = getElement(usageTarget);
+    boolean supported = element instanceof PsiClass || element instanceof PsiMethod || element instanceof PsiField;
+    e.getPresentation().setEnabledAndVisible(e.getProject() != null && supported && getFile(element) != null);
+  }
+
+  private static PsiElement getElement(UsageTarget[] usageTarget) {
+    if (usageTarget != null && usageTarget.length > 0 && usageTarget[0] instanceof PsiElementUsageTarget) {
+      return ((PsiElementUsageTarget) usageTarget[0]).getElement();
+    }
+    return null;
+  }
+
+  private static VirtualFile getFile(PsiElement element) {
+    PsiFile file = element != null ? element.getContainingFile() : null;
+    return file != null ? file.getVirtualFile() : null;
+  }
+}
@@ -0,0 +1,26 @@
+package org.jetbrains.research.refactorinsight.actions;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.refactorinsight.ui.windows.MiningStatisticsPanel;
+
+/**
+ * Represents the `Show Mining Statistics` action.
+ * Opens the tool window with the time spent on mining the refactorings of the project.
+ */
+public class MiningStatisticsAction extends AnAction {
+
+  @Override
+  public void actionPerformed(@NotNull AnActionEvent e) {
+    if (e.getProject() != null) {
+      MiningStatisticsPanel.show(e.getProject());
+    }
+  }
+
+  @Override
+  public void update(@NotNull AnActionEvent e) {
+    e.getPresentation().setEnabledAndVisible(e.getProject() != null);
+  }
+}
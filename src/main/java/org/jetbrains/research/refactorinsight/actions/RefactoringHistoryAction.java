@@ -3,23 +3,28 @@ package org.jetbrains.research.refactorinsight.actions;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.DataContext;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiField;
 import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiNamedElement;
+import com.intellij.ui.treeStructure.Tree;
 import com.intellij.usages.PsiElementUsageTarget;
 import com.intellij.usages.UsageTarget;
 import com.intellij.usages.UsageView;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import git4idea.repo.GitRepositoryManager;
 
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
@@ -63,55 +68,98 @@ public class RefactoringHistoryAction extends AnAction {
    * @param project     the currently opened project.
    * @param dataContext context in editor.
    * @param usageTarget the target of the action call.
+   * @return the displayed tree, or null if there is no history to display.
    */
-  private void showHistory(Project project, DataContext dataContext,
-                           UsageTarget[] usageTarget) {
+  Tree showHistory(Project project, DataContext dataContext, UsageTarget[] usageTarget) {
     if (usageTarget != null) {
       UsageTarget target = usageTarget[0];
       if (target instanceof PsiElementUsageTarget) {
         PsiElementUsageTarget elementUsageTarget = (PsiElementUsageTarget) target;
         PsiElement targetElement = elementUsageTarget.getElement();
         if (targetElement instanceof PsiMethod) {
-          showHistoryMethod(project, dataContext, (PsiMethod) targetElement);
+          return showHistoryMethod(project, dataContext, (PsiMethod) targetElement);
         } else if (targetElement instanceof PsiClass) {
-          showHistoryClass(project, dataContext, (PsiClass) targetElement);
+          return showHistoryClass(project, dataContext, (PsiClass) targetElement);
         } else if (targetElement instanceof PsiField) {
-          showHistoryAttribute(project, dataContext, (PsiField) targetElement);
+          return showHistoryAttribute(project, dataContext, (PsiField) targetElement);
         }
       }
     }
+    return null;
   }
 
-  private void showHistoryAttribute(Project project, DataContext dataContext,
+  /**
+   * Adds the older history of the element to its displayed tree once it is loaded.
+   * The nodes already in the tree are kept, so they stay expanded and selected.
+   */
+  Consumer<Tree> reloadHistory(Project project, PsiElement element) {
+    return tree -> {
+      if (project.isDisposed() || !element.isValid()) {
+        return;
+      }
+      map = project.getService(MiningService.class).getRefactoringHistory();
+      getToolbarWindow(project).addRefactorings(tree, map.getOrDefault(signature(element), Collections.emptySet()));
+      if (element instanceof PsiClass) {
+        addMemberHistory(project, tree, (PsiClass) element, map);
+      }
+    };
+  }
+
+  private Tree showHistoryAttribute(Project project, DataContext dataContext,
                                     PsiField target) {
-    String signature = StringUtils.getFieldSignature(target);
-    getToolbarWindow(project)
+    String signature = StringUtils.getCachedFieldSignature(target);
+    return getToolbarWindow(project)
         .showToolbar(map.getOrDefault(signature, new HashSet<>()),
-                     target.getName(), dataContext, HistoryType.ATTRIBUTE, null, null);
+                     target.getName(), dataContext, HistoryType.ATTRIBUTE,
+                     reloadHistory(project, target));
   }
 
-  private void showHistoryClass(Project project, DataContext dataContext, PsiClass psiClass) {
+  /**
+   * Shows the class-level history right away.
+   * The history of the methods and fields is computed in a background read action and added when ready.
+   */
+  private Tree showHistoryClass(Project project, DataContext dataContext, PsiClass psiClass) {
     String signature = psiClass.getQualifiedName();
-    List<String> methods = Arrays.stream(psiClass.getMethods())
-        .map(StringUtils::calculateSignature).collect(Collectors.toList());
-    HashMap<String, Set<RefactoringInfo>> methodsHistory = new HashMap<>();
-    methods.forEach(method -> methodsHistory.put(method, map.getOrDefault(method, new HashSet<>())));
-
-    List<String> fields = Arrays.stream(psiClass.getFields())
-        .map(StringUtils::getFieldSignature).collect(Collectors.toList());
-    HashMap<String, Set<RefactoringInfo>> fieldsHistory = new HashMap<>();
-    fields.forEach(field -> fieldsHistory.put(field, map.getOrDefault(field, new HashSet<>())));
+    Tree tree = getToolbarWindow(project).showToolbar(map.getOrDefault(signature, new HashSet<>()),
+                                                      psiClass.getName(), dataContext, HistoryType.CLASS,
+                                                      reloadHistory(project, psiClass));
+    if (tree != null) {
+      addMemberHistory(project, tree, psiClass, map);
+    }
+    return tree;
+  }
 
-    getToolbarWindow(project)
-        .showToolbar(map.getOrDefault(signature, new HashSet<>()),
-                     psiClass.getName(), dataContext, HistoryType.CLASS, methodsHistory, fieldsHistory);
+  /**
+   * Computes the history of the methods and fields of a class in a background read action,
+   * and adds it to the tree of the class history when ready.
+   */
+  void addMemberHistory(Project project, Tree tree, PsiClass psiClass, Map<String, Set<RefactoringInfo>> history) {
+    RefactoringHistoryToolbar toolbar = getToolbarWindow(project);
+    ReadAction.nonBlocking(() -> {
+      Map<String, Set<RefactoringInfo>> methodsHistory = new HashMap<>();
+      for (PsiMethod method : psiClass.getMethods()) {
+        String methodSignature = StringUtils.getCachedSignature(method);
+        methodsHistory.put(methodSignature, history.getOrDefault(methodSignature, new HashSet<>()));
+      }
+      Map<String, Set<RefactoringInfo>> fieldsHistory = new HashMap<>();
+      for (PsiField field : psiClass.getFields()) {
+        String fieldSignature = StringUtils.getCachedFieldSignature(field);
+        fieldsHistory.put(fieldSignature, history.getOrDefault(fieldSignature, new HashSet<>()));
+      }
+      return Pair.create(methodsHistory, fieldsHistory);
+    })
+        .expireWhen(() -> project.isDisposed() || !psiClass.isValid())
+        .finishOnUiThread(ModalityState.defaultModalityState(),
+                          members -> toolbar.addMembers(tree, members.first, members.second))
+        .submit(AppExecutorUtil.getAppExecutorService());
   }
 
-  private void showHistoryMethod(Project project, DataContext dataContext, PsiMethod method) {
-    String signature = StringUtils.calculateSignature(method);
-    getToolbarWindow(project)
+  private Tree showHistoryMethod(Project project, DataContext dataContext, PsiMethod method) {
+    String signature = StringUtils.getCachedSignature(method);
+    return getToolbarWindow(project)
         .showToolbar(map.getOrDefault(signature, new HashSet<>()),
-                     method.getName(), dataContext, HistoryType.METHOD, null, null);
+                     method.getName(), dataContext, HistoryType.METHOD,
+                     reloadHistory(project, method));
   }
 
   @Override
@@ -122,23 +170,25 @@ public class RefactoringHistoryAction extends AnAction {
 
   /**
    * Checks if refactoring history is not empty for the selected element.
+   * Elements whose names do not appear in the history are ruled out before computing their signatures.
    */
   private boolean isRefactoringHistoryNotEmpty(DataContext dataContext, Project project) {
     UsageTarget[] usageTarget = dataContext.getData(UsageView.USAGE_TARGETS_KEY);
+    MiningService miningService = project.getService(MiningService.class);
     String key = "";
     UsageTarget target = usageTarget != null ? usageTarget[0] : null;
     if (target != null) {
       PsiElement element = ((PsiElementUsageTarget) target).getElement();
-      if (element instanceof PsiMethod) {
-        key = StringUtils.calculateSignature((PsiMethod) element);
-      } else if (element instanceof PsiClass) {
-        key = ((PsiClass) element).getQualifiedName();
-      } else if (element instanceof PsiField) {
-        key = StringUtils.getFieldSignature((PsiField) element);
+      if (element instanceof PsiNamedElement) {
+        String name = ((PsiNamedElement) element).getName();
+        if (name == null || !miningService.mightHaveHistory(name)) {
+          return false;
+        }
       }
+      key = signature(element);
     }
 
-    map = project.getService(MiningService.class).getRefactoringHistory();
+    map = miningService.getRefactoringHistory();
 
     if (map != null) {
       return map.get(key) != null && !map.get(key).isEmpty();
@@ -147,6 +197,23 @@ public class RefactoringHistoryAction extends AnAction {
     }
   }
 
+  /**
+   * Computes the key of an element in the refactoring history map.
+   *
+   * @param element the selected element.
+   * @return the signature of the element, or an empty string if it has no history.
+   */
+  static String signature(PsiElement element) {
+    if (element instanceof PsiMethod) {
+      return StringUtils.getCachedSignature((PsiMethod) element);
+    } else if (element instanceof PsiClass) {
+      return ((PsiClass) element).getQualifiedName();
+    } else if (element instanceof PsiField) {
+      return StringUtils.getCachedFieldSignature((PsiField) element);
+    }
+    return "";
+  }
+
   /**
    * Create or get a method refactorings toolbar window.
    *
@@ -0,0 +1,619 @@
+package org.jetbrains.research.refactorinsight.data;
+
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.ENTRY;
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.FRAG;
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.LIST;
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.MAP;
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.MAP_ENTRY;
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.delimiter;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.jetbrains.research.refactorinsight.utils.StringUtils;
+
+/**
+ * Refactoring history of code elements, used in `Show Refactoring History` action.
+ * Classes are keyed by their qualified name, methods by their signature and
+ * attributes by `class|attribute`.
+ * The index is built incrementally, commit by commit, from the oldest commit to the newest.
+ * It also keeps the keys of the members of each class, so that a class rename
+ * re-keys only the members of the renamed class, and the keys each element had before the oldest indexed commit,
+ * so that the history of older commits can be added later with {@link #addOlder}.
+ * Once published, an index is a snapshot that is never modified: newer commits are added to a {@link #copy()},
+ * a layer that records only the keys changed since the snapshot and reads the others through it.
+ * A copy whose chain of layers gets too long is flattened, so lookups stay fast.
+ * A bloom filter over the simple names of the indexed elements answers most lookups
+ * of elements without history before their signatures are computed.
+ */
+public class HistoryIndex {
+  private static final Logger LOG = Logger.getInstance(HistoryIndex.class);
+  private static final int FILTER_BITS = 1 << 16;
+  private static final int FILTER_HASHES = 3;
+  private static final int MAX_LAYERS = 8;
+  //marks a key of a layer that is removed from the snapshot below it
+  private static final Set<RefactoringInfo> REMOVED = Collections.unmodifiableSet(new HashSet<>());
+  private static final Set<String> NO_KEYS = Collections.unmodifiableSet(new HashSet<>());
+
+  private HistoryIndex base;
+  private int layers;
+  private final Map<String, Set<RefactoringInfo>> history = new HashMap<>();
+  private final Map<String, Set<String>> members = new HashMap<>();
+  private final Map<String, Set<String>> formerKeys = new HashMap<>();
+  private final Set<String> commits = new HashSet<>();
+  private BitSet names;
+  private final Set<String> layerNames = new HashSet<>();
+  private String tip;
+  private String missingAncestor;
+  private String ancestor;
+  private int depth;
+
+  public HistoryIndex() {
+    names = new BitSet(FILTER_BITS);
+  }
+
+  private HistoryIndex(HistoryIndex base) {
+    this.base = base;
+    this.layers = base.layers + 1;
+    this.tip = base.tip;
+    this.missingAncestor = base.missingAncestor;
+    this.ancestor = base.ancestor;
+    this.depth = base.depth;
+  }
+
+  /**
+   * Creates an index with the same history, to which newer commits can be added
+   * without affecting this one.
+   * The copy shares the history of this index instead of copying it.
+   */
+  public HistoryIndex copy() {
+    HistoryIndex copy = new HistoryIndex(this);
+    if (copy.layers > MAX_LAYERS) {
+      copy.flatten();
+    }
+    return copy;
+  }
+
+  /**
+   * Copies the history of the snapshots below this layer into it, so that it no longer reads through them.
+   */
+  private void flatten() {
+    if (base == null) {
+      return;
+    }
+    Map<String, Set<RefactoringInfo>> flatHistory = new HashMap<>();
+    Map<String, Set<String>> flatMembers = new HashMap<>();
+    Map<String, Set<String>> flatFormerKeys = new HashMap<>();
+    BitSet flatNames = new BitSet(FILTER_BITS);
+    Set<String> flatCommits = new HashSet<>();
+    collect(flatHistory, flatMembers, flatFormerKeys, flatNames, flatCommits);
+    history.clear();
+    history.putAll(flatHistory);
+    members.clear();
+    members.putAll(flatMembers);
+    formerKeys.clear();
+    formerKeys.putAll(flatFormerKeys);
+    commits.clear();
+    commits.addAll(flatCommits);
+    names = flatNames;
+    layerNames.clear();
+    base = null;
+    layers = 0;
+  }
+
+  private void collect(Map<String, Set<RefactoringInfo>> flatHistory, Map<String, Set<String>> flatMembers,
+                       Map<String, Set<String>> flatFormerKeys, BitSet flatNames, Set<String> flatCommits) {
+    if (base != null) {
+      base.collect(flatHistory, flatMembers, flatFormerKeys, flatNames, flatCommits);
+    }
+    history.forEach((key, infos) -> {
+      if (infos == REMOVED) {
+        flatHistory.remove(key);
+      } else {
+        flatHistory.put(key, infos);
+      }
+    });
+    members.forEach((owner, keys) -> flatMembers.put(owner, new HashSet<>(keys)));
+    formerKeys.forEach((key, keys) -> {
+      if (keys == NO_KEYS) {
+        flatFormerKeys.remove(key);
+      } else {
+        flatFormerKeys.put(key, new HashSet<>(keys));
+      }
+    });
+    if (names != null) {
+      flatNames.or(names);
+    }
+    layerNames.forEach(name -> setFilterBits(flatNames, name));
+    flatCommits.addAll(commits);
+  }
+
+  /**
+   * Deserializes an index, resolving the refactorings it references in the given commits.
+   * The indexed commits are walked again from the tip, through the parents of the given commits.
+   * A commit may have been mined again since the index was saved, e.g. by a retry or for another scope,
+   * so a reference whose refactoring is no longer at its position is looked up by its fingerprint.
+   * References that cannot be resolved are dropped, the rest of the index is kept.
+   *
+   * @param value   the serialized index.
+   * @param entries the refactorings of each mined commit.
+   * @return the index, or null if it cannot be restored.
+   */
+  public static HistoryIndex fromString(String value, Function<String, RefactoringEntry> entries) {
+    if (value == null || value.isEmpty()) {
+      return null;
+    }
+    HistoryIndex index = new HistoryIndex();
+    String[] tokens = value.split(delimiter(MAP, true), -1);
+    try {
+      String[] header = tokens[0].split(delimiter(ENTRY, true), -1);
+      index.tip = header[0];
+      index.missingAncestor = header[1].isEmpty() ? null : header[1];
+      index.depth = Integer.parseInt(header[2]);
+      index.ancestor = header.length > 3 && !header[3].isEmpty() ? header[3] : null;
+    } catch (RuntimeException e) {
+      LOG.warn("Cannot restore the refactoring history index", e);
+      return null;
+    }
+    Set<String> staleCommits = new HashSet<>();
+    for (int i = 1; i < tokens.length; i++) {
+      String[] keyAndRefs = tokens[i].split(delimiter(MAP_ENTRY, true), -1);
+      if (keyAndRefs.length < 2) {
+        continue;
+      }
+      Set<RefactoringInfo> infos = new HashSet<>();
+      for (String ref : keyAndRefs[1].split(delimiter(LIST, true))) {
+        if (!ref.isEmpty()) {
+          String[] parts = ref.split(delimiter(FRAG, true), -1);
+          RefactoringInfo info = resolve(parts, entries);
+          if (info != null) {
+            infos.add(info);
+          } else {
+            staleCommits.add(parts[0]);
+          }
+        }
+      }
+      if (!infos.isEmpty()) {
+        String key = StringUtils.deSanitize(keyAndRefs[0]);
+        index.put(key, infos);
+        if (keyAndRefs.length > 2 && !keyAndRefs[2].isEmpty()) {
+          index.formerKeys.put(key, Arrays.stream(keyAndRefs[2].split(delimiter(LIST, true)))
+              .map(StringUtils::deSanitize)
+              .collect(Collectors.toSet()));
+        }
+      }
+    }
+    if (!staleCommits.isEmpty()) {
+      LOG.warn("Dropped the refactoring history of commits that changed since it was saved: " + staleCommits);
+    }
+    //the indexed commits are not saved, they are walked again from the tip
+    String commit = index.tip;
+    for (int i = 0; i < index.depth && commit != null; i++) {
+      index.commits.add(commit);
+      RefactoringEntry entry = entries.apply(commit);
+      commit = entry != null ? entry.getParent() : null;
+    }
+    return index;
+  }
+
+  /**
+   * Resolves a reference to a refactoring: its commit, position, fingerprint and whether it is a class copy.
+   *
+   * @return the refactoring, or null if it is no longer in its commit.
+   */
+  private static RefactoringInfo resolve(String[] parts, Function<String, RefactoringEntry> entries) {
+    if (parts.length < 3) {
+      return null;
+    }
+    RefactoringEntry entry = entries.apply(parts[0]);
+    if (entry == null) {
+      return null;
+    }
+    List<RefactoringInfo> refactorings = entry.getRefactorings();
+    RefactoringInfo info = null;
+    try {
+      int position = Integer.parseInt(parts[1]);
+      if (position >= 0 && position < refactorings.size()
+          && fingerprint(refactorings.get(position)).equals(parts[2])) {
+        info = refactorings.get(position);
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    if (info == null) {
+      info = refactorings.stream().filter(r -> fingerprint(r).equals(parts[2])).findFirst().orElse(null);
+    }
+    if (info == null) {
+      return null;
+    }
+    return parts.length > 3 ? info.copyForClassHistory() : info;
+  }
+
+  private static String fingerprint(RefactoringInfo info) {
+    return Integer.toHexString(Objects.hash(String.valueOf(info.getType()), info.getNameBefore(), info.getNameAfter(),
+        info.getDetailsBefore(), info.getDetailsAfter()));
+  }
+
+  /**
+   * Serializes the index.
+   * Refactorings are referenced by their commit, their position among the refactorings of the commit
+   * and a fingerprint that identifies them if the commit is mined again.
+   * The former keys of an element follow its references.
+   *
+   * @return a string representation of the index.
+   */
+  @Override
+  public String toString() {
+    if (tip == null) {
+      return "";
+    }
+    Map<String, Set<RefactoringInfo>> flatHistory = new HashMap<>();
+    Map<String, Set<String>> flatFormerKeys = new HashMap<>();
+    collect(flatHistory, new HashMap<>(), flatFormerKeys, new BitSet(FILTER_BITS), new HashSet<>());
+    Map<RefactoringInfo, Integer> positions = new IdentityHashMap<>();
+    Set<RefactoringEntry> indexedEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+    Function<RefactoringInfo, String> reference = info -> {
+      RefactoringInfo origin = info.getOrigin() != null ? info.getOrigin() : info;
+      RefactoringEntry entry = origin.getEntry();
+      if (indexedEntries.add(entry)) {
+        List<RefactoringInfo> refactorings = entry.getRefactorings();
+        for (int i = 0; i < refactorings.size(); i++) {
+          positions.put(refactorings.get(i), i);
+        }
+      }
+      return entry.getCommitId() + delimiter(FRAG) + positions.get(origin) + delimiter(FRAG) + fingerprint(origin)
+          + (info.getOrigin() != null ? delimiter(FRAG) + "c" : "");
+    };
+    return tip + delimiter(ENTRY) + (missingAncestor == null ? "" : missingAncestor) + delimiter(ENTRY) + depth
+        + delimiter(ENTRY) + (ancestor == null ? "" : ancestor)
+        + flatHistory.entrySet().stream()
+        .map(e -> delimiter(MAP) + StringUtils.sanitize(e.getKey()) + delimiter(MAP_ENTRY)
+            + e.getValue().stream().map(reference).collect(Collectors.joining(delimiter(LIST)))
+            + (flatFormerKeys.containsKey(e.getKey()) ? delimiter(MAP_ENTRY) + flatFormerKeys.get(e.getKey()).stream()
+            .map(StringUtils::sanitize).collect(Collectors.joining(delimiter(LIST))) : ""))
+        .collect(Collectors.joining());
+  }
+
+  /**
+   * Returns a read-only view of the history, keyed like the index.
+   */
+  public Map<String, Set<RefactoringInfo>> getHistory() {
+    return new AbstractMap<>() {
+      private Set<Entry<String, Set<RefactoringInfo>>> entries;
+
+      @Override
+      public Set<RefactoringInfo> get(Object key) {
+        return key instanceof String ? lookup((String) key) : null;
+      }
+
+      @Override
+      public boolean containsKey(Object key) {
+        return get(key) != null;
+      }
+
+      @Override
+      public Set<Entry<String, Set<RefactoringInfo>>> entrySet() {
+        if (entries == null) {
+          Map<String, Set<RefactoringInfo>> flatHistory = new HashMap<>();
+          collect(flatHistory, new HashMap<>(), new HashMap<>(), new BitSet(FILTER_BITS), new HashSet<>());
+          entries = Collections.unmodifiableMap(flatHistory).entrySet();
+        }
+        return entries;
+      }
+    };
+  }
+
+  private Set<RefactoringInfo> lookup(String key) {
+    Set<RefactoringInfo> infos = history.get(key);
+    if (infos == REMOVED) {
+      return null;
+    }
+    return infos != null || base == null ? infos : base.lookup(key);
+  }
+
+  private Set<String> membersOf(String owner) {
+    Set<String> keys = members.get(owner);
+    return keys != null || base == null ? keys : base.membersOf(owner);
+  }
+
+  /**
+   * Returns the members of a class that this layer can modify, copying them from the snapshot below if needed.
+   */
+  private Set<String> ownMembersOf(String owner) {
+    return members.computeIfAbsent(owner, k -> {
+      Set<String> keys = base != null ? base.membersOf(owner) : null;
+      return keys != null ? new HashSet<>(keys) : new HashSet<>();
+    });
+  }
+
+  private Set<String> formerKeysOf(String key) {
+    Set<String> keys = formerKeys.get(key);
+    if (keys == NO_KEYS) {
+      return null;
+    }
+    return keys != null || base == null ? keys : base.formerKeysOf(key);
+  }
+
+  /**
+   * Returns the last commit added to the index.
+   */
+  public String getTip() {
+    return tip;
+  }
+
+  /**
+   * Checks whether a commit was added to the index.
+   *
+   * @param commitId the commit.
+   */
+  public boolean containsCommit(String commitId) {
+    return commits.contains(commitId) || base != null && base.containsCommit(commitId);
+  }
+
+  /**
+   * Checks whether an element with the given simple name may have history.
+   * False positives are possible, false negatives are not.
+   *
+   * @param name the name of a class, method or attribute.
+   */
+  public boolean mightContain(String name) {
+    if (names == null) {
+      return layerNames.contains(name) || base.mightContain(name);
+    }
+    for (int i = 0; i < FILTER_HASHES; i++) {
+      if (!names.get(filterBit(name, i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of commits added to the index.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Returns the ancestor of the oldest indexed commit, if it was not mined when the index was built.
+   */
+  public String getMissingAncestor() {
+    return missingAncestor;
+  }
+
+  public void setMissingAncestor(String missingAncestor) {
+    this.missingAncestor = missingAncestor;
+  }
+
+  /**
+   * Returns the parent of the oldest indexed commit, or null if it is not known.
+   */
+  public String getAncestor() {
+    return ancestor;
+  }
+
+  /**
+   * Adds the refactorings of a commit whose ancestors were already added.
+   *
+   * @param entry the refactorings of the commit.
+   */
+  public void addCommit(RefactoringEntry entry) {
+    List<RefactoringInfo> refactorings = new ArrayList<>(entry.getRefactorings());
+    Collections.reverse(refactorings);
+    refactorings.forEach(info -> info.addToHistory(this));
+    if (depth == 0) {
+      ancestor = entry.getParent();
+    }
+    tip = entry.getCommitId();
+    commits.add(tip);
+    depth++;
+  }
+
+  /**
+   * Returns a modifiable copy of the history of the given key.
+   */
+  Set<RefactoringInfo> getOrDefault(String key) {
+    Set<RefactoringInfo> infos = lookup(key);
+    return infos != null ? new HashSet<>(infos) : new HashSet<>();
+  }
+
+  void put(String key, Set<RefactoringInfo> infos) {
+    history.put(key, infos);
+    String name = simpleName(key);
+    if (names != null) {
+      setFilterBits(names, name);
+    } else {
+      layerNames.add(name);
+    }
+    String owner = owner(key);
+    if (owner != null) {
+      ownMembersOf(owner).add(key);
+    }
+  }
+
+  void remove(String key) {
+    if (base != null && base.lookup(key) != null) {
+      history.put(key, REMOVED);
+    } else {
+      history.remove(key);
+    }
+    String owner = owner(key);
+    if (owner != null && membersOf(owner) != null) {
+      ownMembersOf(owner).remove(key);
+    }
+  }
+
+  /**
+   * Records that the history of an element is moved to another key,
+   * keeping the keys the element had before the oldest indexed commit.
+   *
+   * @param before the key of the element before the move.
+   * @param after  the key of the element after the move.
+   */
+  void trackMove(String before, String after) {
+    if (before.equals(after)) {
+      return;
+    }
+    Set<String> keys = formerKeysOf(before);
+    if (base != null && base.formerKeysOf(before) != null) {
+      formerKeys.put(before, NO_KEYS);
+    } else {
+      formerKeys.remove(before);
+    }
+    Set<String> afterKeys = formerKeysOf(after);
+    afterKeys = afterKeys != null ? new HashSet<>(afterKeys) : new HashSet<>();
+    afterKeys.addAll(keys != null ? keys : Collections.singleton(before));
+    formerKeys.put(after, afterKeys);
+  }
+
+  /**
+   * Moves the history of the attributes and methods of a renamed class to their new signatures.
+   *
+   * @param before the qualified name of the class before the rename.
+   * @param after  the qualified name of the class after the rename.
+   */
+  void renameClass(String before, String after) {
+    Set<String> keys = membersOf(before);
+    if (keys == null || keys.isEmpty()) {
+      return;
+    }
+    new ArrayList<>(keys).forEach(signature -> move(signature, memberKey(signature, before, after)));
+  }
+
+  /**
+   * Computes the key of a member of a class after the class is renamed.
+   * Constructors are renamed together with the class.
+   */
+  private static String memberKey(String signature, String before, String after) {
+    if (signature.contains("|")) {
+      return after + signature.substring(signature.lastIndexOf("|"));
+    }
+    String methodName = signature.substring(signature.lastIndexOf(".") + 1);
+    if (methodName.contains("(")) {
+      methodName = methodName.substring(0, methodName.indexOf("("));
+    }
+    //change constructor name in case of a class rename
+    if (methodName.equals(before.substring(before.lastIndexOf(".") + 1)) && signature.contains("(")) {
+      return after + "." + after.substring(after.lastIndexOf(".") + 1) + signature.substring(signature.indexOf("("));
+    }
+    return after + signature.substring(signature.lastIndexOf("."));
+  }
+
+  private void move(String signature, String newKey) {
+    Set<RefactoringInfo> infos = lookup(signature);
+    put(newKey, infos != null ? infos : Collections.emptySet());
+    remove(signature);
+    trackMove(signature, newKey);
+  }
+
+  /**
+   * Adds the history of the commits right before the oldest indexed commit.
+   * The keys of the older history are moved to the keys their elements have in this index,
+   * so only the older commits are processed, not the history already indexed.
+   * The index is flattened first, since the keys of all its elements may change.
+   *
+   * @param older the history of the older commits, whose tip is the parent of the oldest indexed commit.
+   */
+  public void addOlder(HistoryIndex older) {
+    flatten();
+    HistoryIndex flatOlder = older;
+    if (older.base != null) {
+      flatOlder = new HistoryIndex(older);
+      flatOlder.flatten();
+    }
+    Map<String, Set<String>> olderFormerKeys = flatOlder.formerKeys;
+    Map<String, String> currentKeys = new HashMap<>();
+    formerKeys.forEach((key, keys) -> keys.forEach(former -> currentKeys.put(former, key)));
+    Map<String, Set<String>> merged = new HashMap<>();
+    formerKeys.forEach((key, keys) -> keys.forEach(former ->
+        merged.computeIfAbsent(key, k -> new HashSet<>())
+            .addAll(olderFormerKeys.getOrDefault(former, Collections.singleton(former)))));
+
+    flatOlder.history.forEach((olderKey, infos) -> {
+      String key = currentKey(olderKey, currentKeys);
+      Set<RefactoringInfo> data = getOrDefault(key);
+      data.addAll(infos);
+      put(key, data);
+      if (!key.equals(olderKey) || olderFormerKeys.containsKey(olderKey)) {
+        merged.computeIfAbsent(key, k -> new HashSet<>())
+            .addAll(olderFormerKeys.getOrDefault(olderKey, Collections.singleton(olderKey)));
+      }
+    });
+    formerKeys.clear();
+    formerKeys.putAll(merged);
+    commits.addAll(flatOlder.commits);
+    missingAncestor = flatOlder.missingAncestor;
+    ancestor = flatOlder.ancestor;
+    depth += flatOlder.depth;
+  }
+
+  /**
+   * Computes the key that an element of the older history has in this index,
+   * following its renames and the renames of its class.
+   */
+  private static String currentKey(String olderKey, Map<String, String> currentKeys) {
+    String key = currentKeys.get(olderKey);
+    if (key != null) {
+      return key;
+    }
+    String owner = owner(olderKey);
+    String renamedOwner = owner != null ? currentKeys.get(owner) : null;
+    if (renamedOwner == null) {
+      return olderKey;
+    }
+    String memberKey = memberKey(olderKey, owner, renamedOwner);
+    return currentKeys.getOrDefault(memberKey, memberKey);
+  }
+
+  private static void setFilterBits(BitSet bits, String name) {
+    for (int i = 0; i < FILTER_HASHES; i++) {
+      bits.set(filterBit(name, i));
+    }
+  }
+
+  private static int filterBit(String name, int i) {
+    int hash = name.hashCode();
+    return Math.floorMod(hash + i * Integer.reverse(hash * 0x9E3779B9), FILTER_BITS);
+  }
+
+  /**
+   * Returns the simple name of the element with the given key.
+   */
+  private static String simpleName(String key) {
+    if (key.contains("|")) {
+      //attributes are keyed with their type
+      return key.substring(key.lastIndexOf("|") + 1).split("[\\s:]", 2)[0];
+    }
+    String name = key.contains("(") ? key.substring(0, key.indexOf("(")) : key;
+    return name.substring(name.lastIndexOf(".") + 1);
+  }
+
+  /**
+   * Returns the class that declares the member with the given key,
+   * or null if the key does not belong to a member.
+   */
+  private static String owner(String key) {
+    if (key.contains("|")) {
+      return key.substring(0, key.lastIndexOf("|"));
+    }
+    if (key.contains(".")) {
+      return key.substring(0, key.lastIndexOf("."));
+    }
+    return null;
+  }
+}
@@ -1,13 +1,20 @@
 package org.jetbrains.research.refactorinsight.data;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
-import org.jetbrains.research.refactorinsight.data.types.Handler;
 import org.refactoringminer.api.Refactoring;
 
 /**
  * Creates {@link RefactoringInfo} objects for refactorings provided by RefactoringMiner and kotlinRMiner.
+ * The refactoring types of both miners are mapped to the plugin's types once, in enum maps.
  */
 public class InfoFactory {
+  private static final Map<org.refactoringminer.api.RefactoringType, RefactoringType> javaTypes =
+      types(org.refactoringminer.api.RefactoringType.class);
+  private static final Map<org.jetbrains.research.kotlinrminer.api.RefactoringType, RefactoringType> kotlinTypes =
+      types(org.jetbrains.research.kotlinrminer.api.RefactoringType.class);
 
   /**
    * Creates a relevant {@link RefactoringInfo} instance for a given Refactoring provided by RefactoringMiner.
@@ -16,8 +23,9 @@ public class InfoFactory {
    * @return resulting RefactoringInfo.
    */
   public RefactoringInfo create(Refactoring refactoring, RefactoringEntry entry) {
-    final Handler handler = RefactoringType.valueOf(refactoring.getRefactoringType().name()).getHandler();
-    return handler.handle(refactoring, entry);
+    final RefactoringType type = supported(javaTypes.get(refactoring.getRefactoringType()),
+        refactoring.getRefactoringType());
+    return type.getHandler().handle(refactoring, type, entry);
   }
 
   /**
@@ -28,8 +36,30 @@ public class InfoFactory {
    */
   public RefactoringInfo create(org.jetbrains.research.kotlinrminer.api.Refactoring refactoring,
                                 RefactoringEntry entry) {
-    final Handler handler = RefactoringType.valueOf(refactoring.getRefactoringType().name()).getHandler();
-    return handler.handle(refactoring, entry);
+    final RefactoringType type = supported(kotlinTypes.get(refactoring.getRefactoringType()),
+        refactoring.getRefactoringType());
+    return type.getHandler().handle(refactoring, type, entry);
+  }
+
+  private static RefactoringType supported(RefactoringType type, Enum<?> minerType) {
+    if (type == null) {
+      throw new IllegalArgumentException("Unsupported refactoring type " + minerType.name());
+    }
+    return type;
   }
 
+  /**
+   * Maps the refactoring types of a miner to the types with the same name.
+   */
+  private static <T extends Enum<T>> Map<T, RefactoringType> types(Class<T> minerTypes) {
+    Map<T, RefactoringType> types = new EnumMap<>(minerTypes);
+    for (T minerType : minerTypes.getEnumConstants()) {
+      for (RefactoringType type : RefactoringType.values) {
+        if (type.name().equals(minerType.name())) {
+          types.put(minerType, type);
+        }
+      }
+    }
+    return types;
+  }
 }
@@ -1,31 +1,29 @@
 package org.jetbrains.research.refactorinsight.data;
 
 import static org.jetbrains.research.refactorinsight.utils.StringUtils.ENTRY;
-import static org.jetbrains.research.refactorinsight.adapters.RefactoringType.EXTRACT_CLASS;
-import static org.jetbrains.research.refactorinsight.adapters.RefactoringType.EXTRACT_SUPERCLASS;
-import static org.jetbrains.research.refactorinsight.adapters.RefactoringType.MOVE_ATTRIBUTE;
-import static org.jetbrains.research.refactorinsight.adapters.RefactoringType.MOVE_OPERATION;
-import static org.jetbrains.research.refactorinsight.adapters.RefactoringType.PULL_UP_ATTRIBUTE;
-import static org.jetbrains.research.refactorinsight.adapters.RefactoringType.PULL_UP_OPERATION;
-
-import com.intellij.openapi.project.Project;
+
 import com.intellij.openapi.util.Pair;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.refactorinsight.folding.FoldIndex;
 import org.jetbrains.research.refactorinsight.utils.StringUtils;
 import org.jetbrains.research.refactorinsight.utils.Utils;
 import org.refactoringminer.api.Refactoring;
 
 /**
  * Collects data for a single commit: commit id, timestamp, parent, and a list of refactorings.
+ * An entry is built completely before it is put into the refactorings map, and its list of refactorings
+ * is never changed afterwards, so that it can be read from any thread without locking.
  */
 public class RefactoringEntry implements Serializable {
 
@@ -36,6 +34,8 @@ public class RefactoringEntry implements Serializable {
   private final long time;
   private List<RefactoringInfo> refactorings;
   public boolean timeout = false;
+  private String scope = "";
+  private transient volatile FoldIndex foldIndex;
 
   /**
    * Constructor for refactoring entry.
@@ -57,8 +57,8 @@ public class RefactoringEntry implements Serializable {
    */
   public static RefactoringEntry fromString(String value, String commitId) {
     String regex = StringUtils.delimiter(ENTRY, true);
-    String[] tokens = value.split(regex, 4);
-    String[] refs = tokens[3].split(regex);
+    String[] tokens = value.split(regex, 5);
+    String[] refs = tokens[4].split(regex);
     if (refs[0].isEmpty()) {
       refs = new String[0];
     }
@@ -67,6 +67,7 @@ public class RefactoringEntry implements Serializable {
         .setRefactorings(Arrays.stream(refs)
                              .map(RefactoringInfo::fromString).collect(Collectors.toList()));
     entry.timeout = Boolean.parseBoolean(tokens[2]);
+    entry.scope = StringUtils.deSanitize(tokens[3]);
     entry.getRefactorings().forEach(r -> r.setEntry(entry));
     return entry;
   }
@@ -76,7 +77,8 @@ public class RefactoringEntry implements Serializable {
   }
 
   /**
-   * Converter to RefactoringEntry given a list of refactorings, commit metadata and project.
+   * Converter to RefactoringEntry given a list of refactorings and commit metadata.
+   * The line markings keep the ranges reported by the miner until the refactoring is displayed.
    *
    * @param refactorings     to be processed.
    * @param commitHash       current commit.
@@ -87,8 +89,7 @@ public class RefactoringEntry implements Serializable {
   public static RefactoringEntry convertJavaRefactorings(List<Refactoring> refactorings,
                                                          String commitHash,
                                                          String commitParentHash,
-                                                         long commitTimestamp,
-                                                         Project project) {
+                                                         long commitTimestamp) {
     RefactoringEntry entry =
         new RefactoringEntry(commitHash, commitParentHash, commitTimestamp);
 
@@ -97,13 +98,12 @@ public class RefactoringEntry implements Serializable {
             Collectors.toList());
 
     entry.setRefactorings(infos).combineRelated();
-
-    entry.refactorings.forEach(info -> Utils.check(info, project));
     return entry;
   }
 
   /**
-   * Converter to RefactoringEntry given a list of refactorings, commit metadata and project.
+   * Converter to RefactoringEntry given a list of refactorings and commit metadata.
+   * The line markings keep the ranges reported by the miner until the refactoring is displayed.
    *
    * @param refactorings     to be processed.
    * @param commitHash       current commit.
@@ -115,8 +115,7 @@ public class RefactoringEntry implements Serializable {
       List<org.jetbrains.research.kotlinrminer.api.Refactoring> refactorings,
       String commitHash,
       String commitParentHash,
-      long commitTimestamp,
-      Project project) {
+      long commitTimestamp) {
     RefactoringEntry entry =
         new RefactoringEntry(commitHash, commitParentHash, commitTimestamp);
 
@@ -125,8 +124,6 @@ public class RefactoringEntry implements Serializable {
             Collectors.toList());
 
     entry.setRefactorings(infos).combineRelated();
-
-    entry.refactorings.forEach(info -> Utils.check(info, project));
     return entry;
   }
 
@@ -150,7 +147,7 @@ public class RefactoringEntry implements Serializable {
   @Override
   public String toString() {
     String del = StringUtils.delimiter(ENTRY);
-    return parent + del + time + del + timeout + del + refactorings.stream()
+    return parent + del + time + del + timeout + del + StringUtils.sanitize(scope) + del + refactorings.stream()
         .map(RefactoringInfo::toString).collect(Collectors.joining(del));
   }
 
@@ -159,20 +156,46 @@ public class RefactoringEntry implements Serializable {
    * Firstly, it combines Extract Superclass and Extract Class with its specific move attribute's
    * and move method's refactorings.
    * Secondly, it combines the refactorings that have the same group identifiers.
+   * The related refactorings are found by indexing the refactorings by type and path in a single pass.
+   * A refactoring with a missing path is related to the refactorings that miss the same path.
    */
-  private void combineRelated() {
-    combineRelatedExtractSuperClass();
-    combineRelatedExtractClass();
-
-    HashMap<String, List<RefactoringInfo>> groups = new HashMap<>();
-    refactorings.forEach(r -> {
+  void combineRelated() {
+    List<RefactoringInfo> superClassRefs = new ArrayList<>();
+    List<RefactoringInfo> extractClassRefs = new ArrayList<>();
+    Map<String, List<RefactoringInfo>> pullUpsBySuperPath = new HashMap<>();
+    Map<Pair<String, String>, List<RefactoringInfo>> movesByPaths = new HashMap<>();
+    Map<String, List<RefactoringInfo>> groups = new HashMap<>();
+    for (RefactoringInfo r : refactorings) {
+      if (r == null) {
+        continue;
+      }
+      switch (r.getType()) {
+        case EXTRACT_SUPERCLASS:
+          superClassRefs.add(r);
+          break;
+        case EXTRACT_CLASS:
+          extractClassRefs.add(r);
+          break;
+        case PULL_UP_ATTRIBUTE:
+        case PULL_UP_OPERATION:
+          pullUpsBySuperPath.computeIfAbsent(r.getRightPath(), k -> new ArrayList<>()).add(r);
+          break;
+        case MOVE_ATTRIBUTE:
+        case MOVE_OPERATION:
+          movesByPaths.computeIfAbsent(new Pair<>(r.getLeftPath(), r.getRightPath()), k -> new ArrayList<>())
+              .add(r);
+          break;
+        default:
+          break;
+      }
       if (r.getGroupId() != null) {
-        List<RefactoringInfo> list = groups.getOrDefault(r.getGroupId(), new ArrayList<>());
-        list.add(r);
-        groups.put(r.getGroupId(), list);
+        groups.computeIfAbsent(r.getGroupId(), k -> new ArrayList<>()).add(r);
       }
       r.setEntry(this);
-    });
+    }
+
+    combineRelatedExtractSuperClass(superClassRefs, pullUpsBySuperPath);
+    combineRelatedExtractClass(extractClassRefs, movesByPaths);
 
     groups.forEach((k, v) -> {
       if (v.size() > 1) {
@@ -192,58 +215,42 @@ public class RefactoringEntry implements Serializable {
     });
   }
 
-  private void combineRelatedExtractSuperClass() {
-    //Find all extract Super Class Refactorings
-    List<RefactoringInfo> superClassRefs = refactorings.stream()
-        .filter(info -> info != null && info.getType().name().equals(EXTRACT_SUPERCLASS.name()))
-        .collect(Collectors.toList());
-
-    //Find all pull up refactorings
-    List<RefactoringInfo> pullUpRefs = refactorings.stream()
-        .filter(info -> info != null && info.getType().name().equals(PULL_UP_ATTRIBUTE.name())
-            || info != null && info.getType().name().equals(PULL_UP_OPERATION.name()))
-        .collect(Collectors.toList());
-
+  private void combineRelatedExtractSuperClass(List<RefactoringInfo> superClassRefs,
+                                               Map<String, List<RefactoringInfo>> pullUpsBySuperPath) {
     superClassRefs.forEach(info -> {
-      String superPath = info.getRightPath();
       //Relate
-      List<RefactoringInfo> related = pullUpRefs.stream()
-          .filter(pullUp -> pullUp != null && pullUp.getRightPath().equals(superPath))
-          .collect(Collectors.toList());
+      List<RefactoringInfo> related =
+          pullUpsBySuperPath.getOrDefault(info.getRightPath(), Collections.emptyList());
 
-      //Combine ranges
+      //Combine ranges, the ranges of the last pull up go first
+      List<RefactoringLine> lines = new ArrayList<>();
+      List<Pair<String, Boolean>> leftPaths = new ArrayList<>();
       related.forEach(relInfo -> {
         relInfo.setHidden(true);
         relInfo.getLineMarkings().forEach(line -> {
           line.setMoreSided(true);
-          info.getLineMarkings().add(0, line);
-          info.getMoreSidedLeftPaths().add(0, new Pair<>(relInfo.getLeftPath(), false));
+          lines.add(line);
+          leftPaths.add(new Pair<>(relInfo.getLeftPath(), false));
         });
       });
+      if (!lines.isEmpty()) {
+        Collections.reverse(lines);
+        Collections.reverse(leftPaths);
+        info.getLineMarkings().addAll(0, lines);
+        info.getMoreSidedLeftPaths().addAll(0, leftPaths);
+      }
     });
   }
 
-  private void combineRelatedExtractClass() {
-    //find all extract class refactorings
-    List<RefactoringInfo> extractClassRefactorings = refactorings
-        .stream().filter(x -> x != null && x.getType().name().equals(EXTRACT_CLASS.name()))
-        .collect(Collectors.toList());
-
-    List<RefactoringInfo> moves = refactorings.stream()
-        .filter(info -> info.getType().name().equals(MOVE_OPERATION.name())
-            || info.getType().name().equals(MOVE_ATTRIBUTE.name()))
-        .collect(Collectors.toList());
-
-    extractClassRefactorings.forEach(
+  private void combineRelatedExtractClass(List<RefactoringInfo> extractClassRefs,
+                                          Map<Pair<String, String>, List<RefactoringInfo>> movesByPaths) {
+    extractClassRefs.forEach(
         extractClass -> {
           String extracted = extractClass.getMidPath() == null ? extractClass.getRightPath() :
               extractClass.getMidPath();
-          String leftPath = extractClass.getLeftPath();
           //Relate
-          List<RefactoringInfo> related = moves.stream()
-              .filter(move -> move.getRightPath().equals(extracted)
-                  && move.getLeftPath().equals(leftPath))
-              .collect(Collectors.toList());
+          List<RefactoringInfo> related = movesByPaths.getOrDefault(
+              new Pair<>(extractClass.getLeftPath(), extracted), Collections.emptyList());
 
           //Combine ranges
           related.forEach(r -> {
@@ -266,6 +273,7 @@ public class RefactoringEntry implements Serializable {
     return time == entry.time
         && Objects.equals(commitId, entry.commitId)
         && Objects.equals(parent, entry.parent)
+        && Objects.equals(scope, entry.scope)
         && Objects.equals(refactorings, entry.refactorings);
   }
 
@@ -274,12 +282,65 @@ public class RefactoringEntry implements Serializable {
     return refactorings;
   }
 
-  public void addRefactorings(List<RefactoringInfo> refactorings) {
-    this.refactorings.addAll(refactorings);
+  /**
+   * Sets the refactorings of this entry, which cannot be changed afterwards.
+   * Should be called only before the entry is put into the refactorings map.
+   *
+   * @param refactorings the refactorings of the commit.
+   * @return this entry.
+   */
+  public RefactoringEntry setRefactorings(@NotNull List<RefactoringInfo> refactorings) {
+    this.refactorings = Collections.unmodifiableList(refactorings);
+    foldIndex = null;
+    return this;
+  }
+
+  /**
+   * Creates a new entry with the refactorings of this entry followed by the refactorings of another entry
+   * of the same commit, e.g. to combine the refactorings detected in Java and in Kotlin code.
+   * The refactorings are moved to the new entry, so neither of the combined entries should be published.
+   *
+   * @param other the other entry of the same commit.
+   * @return the combined entry.
+   */
+  public RefactoringEntry combine(RefactoringEntry other) {
+    List<RefactoringInfo> infos = new ArrayList<>(refactorings.size() + other.refactorings.size());
+    infos.addAll(refactorings);
+    infos.addAll(other.refactorings);
+    RefactoringEntry entry = new RefactoringEntry(commitId, parent, time).setRefactorings(infos).setScope(scope);
+    infos.forEach(info -> info.setEntry(entry));
+    return entry;
   }
 
-  public RefactoringEntry setRefactorings(@NotNull List<RefactoringInfo> refactorings) {
-    this.refactorings = refactorings;
+  /**
+   * Returns the folds of the refactorings in this commit, indexed by file.
+   * The index is built the first time it is needed. Concurrent readers may build it more than once,
+   * which is cheaper than making every reader wait on a lock.
+   */
+  public FoldIndex getFoldIndex() {
+    FoldIndex index = foldIndex;
+    if (index == null) {
+      index = FoldIndex.build(this);
+      foldIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * Returns the paths the detection of the refactorings was restricted to, or an empty string if it was not.
+   */
+  public String getScope() {
+    return scope;
+  }
+
+  /**
+   * Records the paths the detection of the refactorings was restricted to.
+   *
+   * @param scope the paths of the mining scope.
+   * @return this entry.
+   */
+  public RefactoringEntry setScope(@NotNull String scope) {
+    this.scope = scope;
     return this;
   }
 
@@ -1,18 +1,20 @@
 package org.jetbrains.research.refactorinsight.data;
 
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.FRAG;
 import static org.jetbrains.research.refactorinsight.utils.StringUtils.INFO;
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.LIST;
 import static org.jetbrains.research.refactorinsight.utils.StringUtils.delimiter;
 import static org.jetbrains.research.refactorinsight.utils.Utils.fixPath;
 
 import com.intellij.diff.contents.DiffContent;
 import com.intellij.diff.requests.SimpleDiffRequest;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -27,6 +29,7 @@ import org.jetbrains.research.refactorinsight.data.diff.ThreeSidedDiffRequestGen
 import org.jetbrains.research.refactorinsight.data.diff.TwoSidedDiffRequestGenerator;
 import org.jetbrains.research.refactorinsight.folding.FoldingDescriptor;
 import org.jetbrains.research.refactorinsight.utils.StringUtils;
+import org.jetbrains.research.refactorinsight.utils.Utils;
 
 /**
  * Stores the information needed for displaying one refactoring:
@@ -40,6 +43,7 @@ public class RefactoringInfo {
   private transient RefactoringEntry entry;
   private transient String groupId;
   private transient List<Pair<String, Boolean>> moreSidedLeftPaths = new ArrayList<>();
+  private transient RefactoringInfo origin;
 
   private DiffRequestGenerator requestGenerator = new TwoSidedDiffRequestGenerator();
 
@@ -60,6 +64,9 @@ public class RefactoringInfo {
   // Optional data for move refactorings
   private boolean changed = true;
 
+  // Line markings are corrected lazily, the first time the refactoring is displayed
+  private boolean corrected = false;
+
   /**
    * Deserializes an {@link RefactoringInfo} instance from string.
    *
@@ -68,7 +75,7 @@ public class RefactoringInfo {
    */
   public static RefactoringInfo fromString(String value) {
     String regex = delimiter(INFO, true);
-    String[] tokens = value.split(regex, 20);
+    String[] tokens = value.split(regex, 22);
     RefactoringInfo info = new RefactoringInfo()
         .setType(RefactoringType.values[Integer.parseInt(tokens[0])])
         .setNameBefore(StringUtils.deSanitize(tokens[1]))
@@ -89,18 +96,36 @@ public class RefactoringInfo {
         .setFoldingDescriptorMid(FoldingDescriptor.fromString(tokens[17]))
         .setFoldingDescriptorAfter(FoldingDescriptor.fromString(tokens[18]))
         .setIncludes(new HashSet<>(
-            tokens[19].isEmpty() ? List.of() : Arrays.asList(tokens[19].split(regex))));
+            tokens[19].isEmpty() ? List.of() : Arrays.asList(tokens[19].split(delimiter(LIST, true)))));
 
     DiffRequestGenerator diffGenerator;
     if (info.isMoreSided()) {
-      diffGenerator = MoreSidedDiffRequestGenerator.fromString(tokens[15]);
+      diffGenerator = tokens[15].isEmpty() ? new MoreSidedDiffRequestGenerator()
+          : MoreSidedDiffRequestGenerator.fromString(tokens[15]);
     } else if (info.isThreeSided()) {
       diffGenerator = ThreeSidedDiffRequestGenerator.fromString(tokens[15]);
     } else {
       diffGenerator = TwoSidedDiffRequestGenerator.fromString(tokens[15]);
     }
 
-    return info.setRequestGenerator(diffGenerator);
+    info.setRequestGenerator(diffGenerator);
+
+    // Raw line markings are only present if the refactoring has not been displayed yet
+    if (tokens.length > 20 && !tokens[20].isEmpty()) {
+      Arrays.stream(tokens[20].split(delimiter(LIST, true)))
+          .map(RefactoringLine::fromRawString)
+          .forEach(info.getLineMarkings()::add);
+      if (info.isMoreSided()) {
+        info.moreSidedLeftPaths = Arrays.stream(tokens[21].split(delimiter(LIST, true)))
+            .filter(pair -> !pair.isEmpty())
+            .map(pair -> pair.split(delimiter(FRAG, true), -1))
+            .map(pair -> new Pair<>(StringUtils.deSanitize(pair[0]), pair[1].equals("t")))
+            .collect(Collectors.toList());
+      }
+    } else {
+      info.corrected = true;
+    }
+    return info;
   }
 
   public SimpleDiffRequest generate(DiffContent[] contents) {
@@ -113,7 +138,7 @@ public class RefactoringInfo {
    * @return string value.
    */
   public String toString() {
-    return String.join(delimiter(INFO),
+    String value = String.join(delimiter(INFO),
         String.valueOf(type.ordinal()),
         Stream.concat(
             Arrays.stream(uiStrings).flatMap(Arrays::stream),
@@ -130,10 +155,45 @@ public class RefactoringInfo {
         Arrays.stream(foldingPositions)
             .map(fp -> fp == null ? "" : fp.toString())
             .collect(Collectors.joining(delimiter(INFO))),
-        String.join(delimiter(INFO), includes)
+        String.join(delimiter(LIST), includes)
+    );
+    if (!needsCorrection()) {
+      return value;
+    }
+    return String.join(delimiter(INFO),
+        value,
+        getLineMarkings().stream()
+            .map(RefactoringLine::toRawString)
+            .collect(Collectors.joining(delimiter(LIST))),
+        moreSidedLeftPaths.stream()
+            .map(pair -> StringUtils.sanitize(pair.first == null ? "" : pair.first)
+                + delimiter(FRAG) + (pair.second ? "t" : ""))
+            .collect(Collectors.joining(delimiter(LIST)))
     );
   }
 
+  /**
+   * Checks if the line markings still hold the ranges reported by the miner.
+   *
+   * @return true if the markings have not been corrected yet.
+   */
+  public boolean needsCorrection() {
+    return !corrected && !getLineMarkings().isEmpty();
+  }
+
+  /**
+   * Corrects the line markings the first time the refactoring is displayed.
+   * The corrected ranges are kept in the request generator and persisted with the entry.
+   *
+   * @param project the current project.
+   */
+  public synchronized void correctIfNeeded(Project project) {
+    if (needsCorrection()) {
+      Utils.check(this, project);
+    }
+    corrected = true;
+  }
+
   public RefactoringInfo setRequestGenerator(DiffRequestGenerator requestGenerator) {
     this.requestGenerator = requestGenerator;
     return this;
@@ -145,13 +205,16 @@ public class RefactoringInfo {
   }
 
   /**
-   * Adds the refactoring to the method history map.
+   * Adds the refactoring to the method history index.
    * Note that it should be called in chronological order.
    *
-   * @param map for method history.
+   * @param index for method history.
    */
-  public void addToHistory(Map<String, Set<RefactoringInfo>> map) {
-    changeKeys(map);
+  public void addToHistory(HistoryIndex index) {
+    if ((group == Group.CLASS || group == Group.ABSTRACT || group == Group.INTERFACE)
+        && !getNameBefore().equals(getNameAfter())) {
+      index.renameClass(getNameBefore(), getNameAfter());
+    }
     String before = getNameBefore();
     String after = getNameAfter();
     if (group == Group.ATTRIBUTE) {
@@ -160,80 +223,53 @@ public class RefactoringInfo {
     }
 
     if (group != Group.VARIABLE) {
-      Set<RefactoringInfo> data = map.getOrDefault(before, new HashSet<>());
-      map.remove(before);
-      Set<RefactoringInfo> data2 = map.getOrDefault(after, new HashSet<>());
+      Set<RefactoringInfo> data = index.getOrDefault(before);
+      index.remove(before);
+      Set<RefactoringInfo> data2 = index.getOrDefault(after);
       data.add(this);
       data2.addAll(data);
-      map.put(after, data2);
+      index.put(after, data2);
+      index.trackMove(before, after);
       if (moreSided) {
         ((MoreSidedDiffRequestGenerator) requestGenerator).getClassNames()
             .forEach(name -> {
-              Set<RefactoringInfo> infos = map.getOrDefault(name, new HashSet<>());
-              RefactoringInfo info = new RefactoringInfo()
-                  .setGroup(group)
-                  .setNameBefore(getNameBefore())
-                  .setNameAfter(getNameAfter())
-                  .setType(type)
-                  .setIncludes(includes)
-                  .setHidden(hidden)
-                  .setRequestGenerator(requestGenerator)
-                  .setLeftPath(getLeftPath())
-                  .setRightPath(getRightPath())
-                  .setMidPath(getMidPath())
-                  .setMoreSided(moreSided)
-                  .setThreeSided(threeSided)
-                  .setEntry(entry)
-                  .setElementBefore(getNameAfter().substring(getNameAfter().lastIndexOf('.') + 1));
-              infos.add(info);
-              map.put(name, infos);
+              Set<RefactoringInfo> infos = index.getOrDefault(name);
+              infos.add(copyForClassHistory());
+              index.put(name, infos);
             });
       }
     }
 
   }
 
-  private void changeKeys(Map<String, Set<RefactoringInfo>> map) {
-    if ((group == Group.CLASS || group == Group.ABSTRACT || group == Group.INTERFACE)
-        && !getNameBefore().equals(getNameAfter())) {
-      changeAttributesSignature(map);
-      changeMethodsSignature(map);
-    }
+  /**
+   * Creates the copy of a more-sided refactoring that is added to the history of each of its classes.
+   */
+  RefactoringInfo copyForClassHistory() {
+    RefactoringInfo info = new RefactoringInfo()
+        .setGroup(group)
+        .setNameBefore(getNameBefore())
+        .setNameAfter(getNameAfter())
+        .setType(type)
+        .setIncludes(includes)
+        .setHidden(hidden)
+        .setRequestGenerator(requestGenerator)
+        .setLeftPath(getLeftPath())
+        .setRightPath(getRightPath())
+        .setMidPath(getMidPath())
+        .setMoreSided(moreSided)
+        .setThreeSided(threeSided)
+        .setEntry(entry)
+        .setElementBefore(getNameAfter().substring(getNameAfter().lastIndexOf('.') + 1));
+    info.origin = this;
+    return info;
   }
 
-  private void changeMethodsSignature(Map<String, Set<RefactoringInfo>> map) {
-    map.keySet().stream()
-        .filter(x -> !x.contains("|"))
-        .filter(x -> x.contains(".")).filter(x -> x.substring(0, x.lastIndexOf("."))
-        .equals(getNameBefore()))
-        .forEach(signature -> {
-          String methodName = signature.substring(signature.lastIndexOf(".") + 1);
-          if (methodName.contains("(")) {
-            methodName = methodName.substring(0, methodName.indexOf("("));
-          }
-          String newKey;
-          //change constructor name in case of a class rename
-          if (methodName.equals(getNameBefore().substring(getNameBefore().lastIndexOf(".") + 1))) {
-            newKey =
-                getNameAfter() + "." + getNameAfter().substring(getNameAfter().lastIndexOf(".") + 1)
-                    + signature.substring(signature.indexOf("("));
-          } else {
-            newKey = getNameAfter() + signature.substring(signature.lastIndexOf("."));
-          }
-          map.put(newKey, map.getOrDefault(signature, new HashSet<>()));
-          map.remove(signature);
-        });
-  }
-
-  private void changeAttributesSignature(Map<String, Set<RefactoringInfo>> map) {
-    map.keySet().stream()
-        .filter(x -> x.contains("|")).filter(x -> x.substring(0, x.lastIndexOf("|"))
-        .equals(getNameBefore()))
-        .forEach(signature -> {
-          String newKey = getNameAfter() + signature.substring(signature.lastIndexOf("|"));
-          map.put(newKey, map.getOrDefault(signature, new HashSet<>()));
-          map.remove(signature);
-        });
+  /**
+   * Returns the refactoring this one was copied from for the class history, if any.
+   */
+  RefactoringInfo getOrigin() {
+    return origin;
   }
 
   public RefactoringInfo addMarking(CodeRange left, CodeRange right, boolean hasColumns) {
@@ -7,13 +7,17 @@ import com.intellij.diff.fragments.MergeLineFragmentImpl;
 import com.intellij.openapi.util.TextRange;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.jetbrains.research.refactorinsight.adapters.CodeRange;
 import org.jetbrains.research.refactorinsight.adapters.LocationInfo;
 import org.jetbrains.research.refactorinsight.data.diff.MoreSidedDiffRequestGenerator;
 import org.jetbrains.research.refactorinsight.data.diff.ThreeSidedRange;
+import org.jetbrains.research.refactorinsight.utils.StringUtils;
 import org.jetbrains.research.refactorinsight.utils.Utils;
 
 /**
@@ -65,6 +69,72 @@ public class RefactoringLine {
     processLinesAndCols(left, mid, right, hasColumns);
   }
 
+  private RefactoringLine(VisualisationType type, MarkingOption option, boolean moreSided) {
+    this.markingOption = option;
+    this.type = type;
+    this.moreSided = moreSided;
+  }
+
+  /**
+   * Deserializes the uncorrected data of a {@link RefactoringLine} instance.
+   *
+   * @param value string.
+   * @return the RefactoringLine.
+   */
+  public static RefactoringLine fromRawString(String value) {
+    String[] tokens = Arrays.stream(value.split(StringUtils.delimiter(StringUtils.FRAG, true), -1))
+        .map(StringUtils::deSanitize)
+        .toArray(String[]::new);
+    RefactoringLine line = new RefactoringLine(
+        tokens[0].isEmpty() ? null : VisualisationType.values()[Integer.parseInt(tokens[0])],
+        MarkingOption.values()[Integer.parseInt(tokens[1])],
+        tokens[4].equals("t"));
+    line.hasColumns = tokens[2].equals("t");
+    for (int i = 0; i < 6; i++) {
+      line.lines[i] = Integer.parseInt(tokens[5 + i]);
+      line.columns[i] = Integer.parseInt(tokens[11 + i]);
+    }
+    if (tokens[3].equals("t")) {
+      line.setWord(Arrays.stream(tokens, 17, 20)
+                       .map(word -> word.isEmpty() ? null : word)
+                       .toArray(String[]::new));
+    }
+    for (int i = 20; i + 3 < tokens.length; i += 4) {
+      line.offsets.add(new RefactoringOffset(
+          Integer.parseInt(tokens[i]), Integer.parseInt(tokens[i + 1]),
+          Integer.parseInt(tokens[i + 2]), Integer.parseInt(tokens[i + 3])));
+    }
+    return line;
+  }
+
+  /**
+   * Serializes the data of this line as reported by the miner, before any correction.
+   *
+   * @return string value.
+   */
+  public String toRawString() {
+    Stream<String> flags = Stream.of(
+        type == null ? "" : String.valueOf(type.ordinal()),
+        String.valueOf(markingOption.ordinal()),
+        hasColumns ? "t" : "",
+        lazy ? "t" : "",
+        moreSided ? "t" : "");
+    Stream<String> words = IntStream.range(0, 3)
+        .mapToObj(i -> word == null || word[i] == null ? "" : word[i]);
+    Stream<String> offsetValues = offsets.stream()
+        .flatMap(offset -> IntStream.of(offset.leftStart, offset.leftEnd, offset.rightStart, offset.rightEnd)
+            .mapToObj(String::valueOf));
+    return Stream.of(
+        flags,
+        Arrays.stream(lines).mapToObj(String::valueOf),
+        Arrays.stream(columns).mapToObj(String::valueOf),
+        words,
+        offsetValues)
+        .flatMap(stream -> stream)
+        .map(StringUtils::sanitize)
+        .collect(Collectors.joining(StringUtils.delimiter(StringUtils.FRAG)));
+  }
+
   /**
    * Corrects lines and offsets returned by RefactoringMiner.
    *
@@ -14,12 +14,13 @@ public abstract class Handler {
    * Creates an {@link RefactoringInfo} instance from {@link Refactoring}.
    *
    * @param refactoring refactoring from RefactoringMiner.
+   * @param type        type of the refactoring.
    * @param entry       refactoring entry to handle.
    * @return RefactoringInfo.
    */
-  public RefactoringInfo handle(Refactoring refactoring, RefactoringEntry entry) {
+  public RefactoringInfo handle(Refactoring refactoring, RefactoringType type, RefactoringEntry entry) {
     RefactoringInfo info = new RefactoringInfo()
-        .setType(RefactoringType.valueOf(refactoring.getRefactoringType().name()))
+        .setType(type)
         .setEntry(entry);
     return specify(refactoring, info);
   }
@@ -28,13 +29,14 @@ public abstract class Handler {
    * Creates an {@link RefactoringInfo} instance from {@link org.jetbrains.research.kotlinrminer.api.Refactoring}.
    *
    * @param refactoring refactoring from kotlinRMiner.
+   * @param type        type of the refactoring.
    * @param entry       refactoring entry to handle.
    * @return RefactoringInfo.
    */
   public RefactoringInfo handle(org.jetbrains.research.kotlinrminer.api.Refactoring refactoring,
-                                RefactoringEntry entry) {
+                                RefactoringType type, RefactoringEntry entry) {
     RefactoringInfo info = new RefactoringInfo()
-        .setType(RefactoringType.valueOf(refactoring.getRefactoringType().name()))
+        .setType(type)
         .setEntry(entry);
     return specify(refactoring, info);
   }
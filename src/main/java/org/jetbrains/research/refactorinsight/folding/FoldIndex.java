@@ -0,0 +1,93 @@
+package org.jetbrains.research.refactorinsight.folding;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
+import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.folding.handlers.FoldingHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Folds of the refactorings in a commit, indexed by file path and revision side.
+ * Folds of the same type placed at the same offset are already united.
+ */
+public class FoldIndex {
+  private final Map<String, List<FoldingDescriptor>> before = new HashMap<>();
+  private final Map<String, List<FoldingDescriptor>> after = new HashMap<>();
+
+  private FoldIndex() {}
+
+  /**
+   * Computes the folds of all refactorings of a commit.
+   *
+   * @param entry the refactorings of the commit.
+   * @return the index.
+   */
+  public static FoldIndex build(@NotNull RefactoringEntry entry) {
+    FoldIndex index = new FoldIndex();
+    index.add(entry.getRefactorings(), true);
+    index.add(entry.getRefactorings(), false);
+    return index;
+  }
+
+  /**
+   * Returns the folds of a file revision.
+   *
+   * @param filePath the path of the file, which ends with the path of the file in the repository.
+   * @param isBefore Whether the file revision is the parent of the commit, otherwise the commit itself
+   */
+  @NotNull
+  public List<FoldingDescriptor> getFolds(@NotNull String filePath, boolean isBefore) {
+    Map<String, List<FoldingDescriptor>> folds = isBefore ? before : after;
+    if (folds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    //the file path is absolute, while the folds are keyed by the path in the repository
+    String path = filePath;
+    while (true) {
+      List<FoldingDescriptor> found = folds.get(path);
+      if (found != null) {
+        return found;
+      }
+      int separator = path.indexOf('/');
+      if (separator < 0) {
+        return Collections.emptyList();
+      }
+      path = path.substring(separator + 1);
+    }
+  }
+
+  private void add(List<RefactoringInfo> refactorings, boolean isBefore) {
+    Map<String, Map<Integer, Map<RefactoringType, List<FoldingDescriptor>>>> grouped = new HashMap<>();
+    for (RefactoringInfo info : refactorings) {
+      FoldingHandler handler = RefactoringFolder.foldingHandlers.get(info.getType());
+      String path = handler == null ? null : handler.getFoldedPath(info, isBefore);
+      if (path == null) {
+        continue;
+      }
+      Map<Integer, Map<RefactoringType, List<FoldingDescriptor>>> byOffset =
+          grouped.computeIfAbsent(path, k -> new LinkedHashMap<>());
+      for (FoldingDescriptor folding : handler.getFolds(info, isBefore)) {
+        byOffset.computeIfAbsent(folding.getHintOffset(), k -> new LinkedHashMap<>())
+            .computeIfAbsent(info.getType(), k -> new ArrayList<>())
+            .add(folding);
+      }
+    }
+
+    Map<String, List<FoldingDescriptor>> folds = isBefore ? before : after;
+    grouped.forEach((path, byOffset) -> {
+      List<FoldingDescriptor> united = new ArrayList<>();
+      byOffset.values().forEach(byType -> byType.forEach((type, group) ->
+          united.add(group.size() > 1
+              ? RefactoringFolder.foldingHandlers.get(type).uniteFolds(group)
+              : group.get(0))));
+      folds.put(path, united);
+    });
+  }
+}
@@ -25,7 +25,6 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.github.pullrequest.comment.GHPRDiffReviewSupport;
 import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
 import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
-import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
 import org.jetbrains.research.refactorinsight.folding.handlers.ExtractOperationFoldingHandler;
 import org.jetbrains.research.refactorinsight.folding.handlers.FoldingHandler;
 import org.jetbrains.research.refactorinsight.folding.handlers.InlineOperationFoldingHandler;
@@ -34,10 +33,10 @@ import org.jetbrains.research.refactorinsight.services.MiningService;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Folds discovered refactorings in code diffs.
+ * The folds of each file are taken from the fold index of the commit, computed once per commit.
  */
 public class RefactoringFolder {
   static Map<RefactoringType, FoldingHandler> foldingHandlers;
@@ -87,70 +86,55 @@ public class RefactoringFolder {
       return;
     }
 
-    List<RefactoringInfo> foldableRefactorings =
-        entry.getRefactorings().stream()
-            .filter(info -> foldingHandlers.containsKey(info.getType()))
-            .collect(Collectors.toList());
-
+    FoldIndex folds = entry.getFoldIndex();
     if (viewerBase instanceof OnesideTextDiffViewer) {
-      foldRefactorings(foldableRefactorings, (OnesideTextDiffViewer) viewerBase, project);
+      foldRefactorings(folds, (OnesideTextDiffViewer) viewerBase, project);
     } else if (viewerBase instanceof TwosideTextDiffViewer) {
-      foldRefactorings(foldableRefactorings, (TwosideTextDiffViewer) viewerBase, project);
+      foldRefactorings(folds, (TwosideTextDiffViewer) viewerBase, project);
     } else if (viewerBase instanceof ThreesideTextDiffViewer) {
-      foldRefactorings(foldableRefactorings, (ThreesideTextDiffViewer) viewerBase, project);
+      foldRefactorings(folds, (ThreesideTextDiffViewer) viewerBase, project);
     }
   }
 
   /**
    * Folds only in the added files.
    */
-  private static void foldRefactorings(@NotNull List<RefactoringInfo> foldableRefactorings,
+  private static void foldRefactorings(@NotNull FoldIndex folds,
                                        @NotNull OnesideTextDiffViewer viewer,
                                        @NotNull Project project) {
-    modifyEditor(viewer.getEditor(), foldableRefactorings, project, false);
+    modifyEditor(viewer.getEditor(), folds, project, false);
   }
 
-  private static void foldRefactorings(@NotNull List<RefactoringInfo> foldableRefactorings,
+  private static void foldRefactorings(@NotNull FoldIndex folds,
                                        @NotNull TwosideTextDiffViewer viewer,
                                        @NotNull Project project) {
-    modifyEditor(viewer.getEditor1(), foldableRefactorings, project, true);
-    modifyEditor(viewer.getEditor2(), foldableRefactorings, project, false);
+    modifyEditor(viewer.getEditor1(), folds, project, true);
+    modifyEditor(viewer.getEditor2(), folds, project, false);
   }
 
-  private static void foldRefactorings(@NotNull List<RefactoringInfo> foldableRefactorings,
+  private static void foldRefactorings(@NotNull FoldIndex folds,
                                        @NotNull ThreesideTextDiffViewer viewer,
                                        @NotNull Project project) {
     List<? extends EditorEx> editors = viewer.getEditors();
 
-    modifyEditor(editors.get(0), foldableRefactorings, project, true);
-    modifyEditor(editors.get(1), foldableRefactorings, project, false);
-    modifyEditor(editors.get(2), foldableRefactorings, project, true);
+    modifyEditor(editors.get(0), folds, project, true);
+    modifyEditor(editors.get(1), folds, project, false);
+    modifyEditor(editors.get(2), folds, project, true);
   }
 
   private static void modifyEditor(@NotNull Editor editor,
-                                   @NotNull List<RefactoringInfo> foldableRefactorings,
+                                   @NotNull FoldIndex foldIndex,
                                    @NotNull Project project,
                                    boolean before) {
     PsiFile psiFile = PsiDocumentManager.getInstance(project).getPsiFile(editor.getDocument());
-    if (psiFile == null) {
+    if (psiFile == null || psiFile.getVirtualFile() == null) {
       return;
     }
 
-    List<FoldingDescriptor> folds = foldableRefactorings.stream()
-        .flatMap(info ->
-            foldingHandlers.get(info.getType()).getFolds(info, psiFile, before).stream()
-                .map(folding -> new Pair<>(info.getType(), folding))
-        ).collect(
-            Collectors.groupingBy(pair -> pair.second.getHintOffset(),
-                Collectors.groupingBy(pair -> pair.first,
-                    Collectors.mapping(pair -> pair.second,
-                        Collectors.toList()))))
-        .values().stream()
-        .flatMap(map -> map.entrySet().stream())
-        .map(group -> group.getValue().size() > 1
-            ? foldingHandlers.get(group.getKey()).uniteFolds(group.getValue())
-            : group.getValue().get(0))
-        .collect(Collectors.toList());
+    List<FoldingDescriptor> folds = foldIndex.getFolds(psiFile.getVirtualFile().getPath(), before);
+    if (folds.isEmpty()) {
+      return;
+    }
 
     editor.getFoldingModel().runBatchFoldingOperation(() -> {
       for (FoldingDescriptor foldingDescriptor : folds) {
@@ -1,7 +1,7 @@
 package org.jetbrains.research.refactorinsight.folding.handlers;
 
-import com.intellij.psi.PsiFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
 import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
 import org.jetbrains.research.refactorinsight.folding.FoldingDescriptor;
@@ -12,13 +12,18 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 public class ExtractOperationFoldingHandler implements FoldingHandler {
-  @NotNull
+  @Nullable
   @Override
-  public List<FoldingDescriptor> getFolds(@NotNull RefactoringInfo info, @NotNull PsiFile file, boolean isBefore) {
-    String path = info.getMidPath() != null ? info.getMidPath() : info.getRightPath();
-    if (isBefore || !file.getVirtualFile().getPath().endsWith(path)) {
-      return Collections.emptyList();
+  public String getFoldedPath(@NotNull RefactoringInfo info, boolean isBefore) {
+    if (isBefore) {
+      return null;
     }
+    return info.getMidPath() != null ? info.getMidPath() : info.getRightPath();
+  }
+
+  @NotNull
+  @Override
+  public List<FoldingDescriptor> getFolds(@NotNull RefactoringInfo info, boolean isBefore) {
     FoldingDescriptor descriptor = info.getFoldingDescriptorMid();
     if (!descriptor.hasHintText()) {
       String hintText = "Extracted from " + Utils.functionSimpleName(info.getNameBefore());
@@ -1,7 +1,7 @@
 package org.jetbrains.research.refactorinsight.folding.handlers;
 
-import com.intellij.psi.PsiFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
 import org.jetbrains.research.refactorinsight.folding.FoldingDescriptor;
 
@@ -9,12 +9,21 @@ import java.util.List;
 
 public interface FoldingHandler {
   /**
-   * Gets {@link FoldingDescriptor} for the discovered refactoring.
+   * Gets the path of the file revision in which the discovered refactoring is folded.
+   *
+   * @param isBefore Whether the file revision is the parent of the info, otherwise the main revision
+   * @return the path, or null if the refactoring is not folded in this revision
+   */
+  @Nullable
+  String getFoldedPath(@NotNull RefactoringInfo info, boolean isBefore);
+
+  /**
+   * Gets {@link FoldingDescriptor} for the discovered refactoring in the file revision with its folded path.
    *
    * @param isBefore Whether the file revision is the parent of the info, otherwise the main revision
    */
   @NotNull
-  List<FoldingDescriptor> getFolds(@NotNull RefactoringInfo info, @NotNull PsiFile file, boolean isBefore);
+  List<FoldingDescriptor> getFolds(@NotNull RefactoringInfo info, boolean isBefore);
 
   /**
    * Summarizes folds of the same type that placed at the same offset.
@@ -1,8 +1,8 @@
 package org.jetbrains.research.refactorinsight.folding.handlers;
 
-import com.intellij.psi.PsiFile;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
 import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
 import org.jetbrains.research.refactorinsight.folding.FoldingDescriptor;
@@ -14,13 +14,15 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 public class MoveOperationFoldingHandler implements FoldingHandler {
+  @Nullable
+  @Override
+  public String getFoldedPath(@NotNull RefactoringInfo info, boolean isBefore) {
+    return isBefore ? info.getLeftPath() : info.getRightPath();
+  }
+
   @NotNull
   @Override
-  public List<FoldingDescriptor> getFolds(@NotNull RefactoringInfo info, @NotNull PsiFile file, boolean isBefore) {
-    String path = isBefore ? info.getLeftPath() : info.getRightPath();
-    if (!file.getVirtualFile().getPath().endsWith(path)) {
-      return Collections.emptyList();
-    }
+  public List<FoldingDescriptor> getFolds(@NotNull RefactoringInfo info, boolean isBefore) {
     FoldingDescriptor descriptor = isBefore ? info.getFoldingDescriptorBefore() : info.getFoldingDescriptorAfter();
     if (!descriptor.hasHintText()) {
       String details = "";
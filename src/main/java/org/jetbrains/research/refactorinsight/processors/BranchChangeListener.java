@@ -0,0 +1,18 @@
+package org.jetbrains.research.refactorinsight.processors;
+
+import git4idea.repo.GitRepository;
+import git4idea.repo.GitRepositoryChangeListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.refactorinsight.services.MiningService;
+
+/**
+ * Shows the refactoring history of the new revision when the current revision of a repository changes,
+ * e.g. when switching back to a branch whose history was already computed.
+ */
+public class BranchChangeListener implements GitRepositoryChangeListener {
+
+  @Override
+  public void repositoryChanged(@NotNull GitRepository repository) {
+    MiningService.getInstance(repository.getProject()).repositoryChanged(repository);
+  }
+}
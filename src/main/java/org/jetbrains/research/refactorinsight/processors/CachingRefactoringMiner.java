@@ -0,0 +1,197 @@
+package org.jetbrains.research.refactorinsight.processors;
+
+import gr.uom.java.xmi.UMLModel;
+import gr.uom.java.xmi.UMLModelASTReader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+import org.jetbrains.research.refactorinsight.processors.MiningTimer.Phase;
+import org.refactoringminer.api.Refactoring;
+import org.refactoringminer.api.RefactoringHandler;
+import org.refactoringminer.rm1.GitHistoryRefactoringMinerImpl;
+
+/**
+ * RefactoringMiner that builds the UML model of a revision file by file,
+ * reusing the models of file versions that were already parsed.
+ * It can also detect the refactorings between two arbitrary commits, as if they were a single change.
+ * The files of a revision are read right before its model is built,
+ * so the time elapsed since the previous model was built is accounted as blob loading.
+ * Only the files in the mining scope are parsed,
+ * so only the refactorings whose files are all in the scope are detected, as {@link MiningScope} requires.
+ * The models used by a detection are put back into the cache once it is done, see {@link UMLModelCache}.
+ */
+public class CachingRefactoringMiner extends GitHistoryRefactoringMinerImpl {
+  private final UMLModelCache cache;
+  private final MiningTimer timer;
+  private final MiningScope scope;
+  private final List<Runnable> borrowed = new ArrayList<>();
+  private long checkpoint;
+
+  public CachingRefactoringMiner(UMLModelCache cache) {
+    this(cache, new MiningTimer(), MiningScope.ALL);
+  }
+
+  /**
+   * Creates a miner that records the time spent in each phase and parses only the files in a scope.
+   *
+   * @param cache the models of the files that were already parsed.
+   * @param timer accumulates the time spent in each phase.
+   * @param scope the files to be parsed.
+   */
+  public CachingRefactoringMiner(UMLModelCache cache, MiningTimer timer, MiningScope scope) {
+    this.cache = cache;
+    this.timer = timer;
+    this.scope = scope;
+  }
+
+  @Override
+  public void detectAtCommit(Repository repository, String commitId, RefactoringHandler handler) {
+    checkpoint = System.nanoTime();
+    try {
+      super.detectAtCommit(repository, commitId, handler);
+    } finally {
+      release();
+    }
+  }
+
+  @Override
+  protected UMLModel createModel(Map<String, String> fileContents, Set<String> repositoryDirectories)
+      throws Exception {
+    timer.add(Phase.BLOB_LOADING, System.nanoTime() - checkpoint);
+    timer.addFiles(fileContents);
+    try {
+      if (scope.isRestricted()) {
+        Map<String, String> contents = new HashMap<>();
+        fileContents.forEach((path, content) -> {
+          if (scope.contains(path)) {
+            contents.put(path, content);
+          }
+        });
+        return buildModel(contents, repositoryDirectories);
+      }
+      return buildModel(fileContents, repositoryDirectories);
+    } finally {
+      checkpoint = System.nanoTime();
+    }
+  }
+
+  private UMLModel buildModel(Map<String, String> fileContents, Set<String> repositoryDirectories)
+      throws Exception {
+    UMLModel model = new UMLModel(repositoryDirectories);
+    ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+    for (Map.Entry<String, String> file : fileContents.entrySet()) {
+      String contentId = formatter.idFor(Constants.OBJ_BLOB,
+          file.getValue().getBytes(StandardCharsets.UTF_8)).getName();
+      UMLModel fileModel = cache.take(file.getKey(), contentId);
+      if (fileModel == null) {
+        fileModel = new UMLModelASTReader(Collections.singletonMap(file.getKey(), file.getValue()),
+            repositoryDirectories).getUmlModel();
+      }
+      UMLModel parsed = fileModel;
+      borrowed.add(() -> cache.put(file.getKey(), contentId, parsed));
+      fileModel.getClassList().forEach(model::addClass);
+      fileModel.getGeneralizationList().forEach(model::addGeneralization);
+      fileModel.getRealizationList().forEach(model::addRealization);
+    }
+    return model;
+  }
+
+  /**
+   * Puts the models of the files used by the last detection into the cache.
+   */
+  private void release() {
+    borrowed.forEach(Runnable::run);
+    borrowed.clear();
+  }
+
+  /**
+   * Detects the refactorings between two commits with a single diff of their trees.
+   *
+   * @param repository the repository.
+   * @param baseId     the older commit.
+   * @param headId     the newer commit.
+   * @return the refactorings made between the commits.
+   */
+  public List<Refactoring> detectBetween(Repository repository, String baseId, String headId) throws Exception {
+    checkpoint = System.nanoTime();
+    try (RevWalk walk = new RevWalk(repository)) {
+      RevCommit base = walk.parseCommit(repository.resolve(baseId));
+      RevCommit head = walk.parseCommit(repository.resolve(headId));
+      Set<String> pathsBefore = new HashSet<>();
+      Set<String> pathsAfter = new HashSet<>();
+      Map<String, String> renamedFilesHint = new HashMap<>();
+      try (DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+        formatter.setRepository(repository);
+        formatter.setDetectRenames(true);
+        for (DiffEntry diff : formatter.scan(base.getTree(), head.getTree())) {
+          boolean javaBefore = diff.getOldPath().endsWith(".java");
+          boolean javaAfter = diff.getNewPath().endsWith(".java");
+          if (diff.getChangeType() != DiffEntry.ChangeType.ADD && javaBefore) {
+            pathsBefore.add(diff.getOldPath());
+          }
+          if (diff.getChangeType() != DiffEntry.ChangeType.DELETE && javaAfter) {
+            pathsAfter.add(diff.getNewPath());
+          }
+          if (diff.getChangeType() == DiffEntry.ChangeType.RENAME && javaBefore && javaAfter) {
+            renamedFilesHint.put(diff.getOldPath(), diff.getNewPath());
+          }
+        }
+      }
+      UMLModel before = createModel(readFiles(repository, base.getTree(), pathsBefore), directories(pathsBefore));
+      UMLModel after = createModel(readFiles(repository, head.getTree(), pathsAfter), directories(pathsAfter));
+      return before.diff(after, renamedFilesHint).getRefactorings();
+    } finally {
+      release();
+    }
+  }
+
+  private static Map<String, String> readFiles(Repository repository, RevTree tree, Set<String> paths)
+      throws Exception {
+    Map<String, String> contents = new HashMap<>();
+    if (paths.isEmpty()) {
+      return contents;
+    }
+    try (TreeWalk treeWalk = new TreeWalk(repository)) {
+      treeWalk.addTree(tree);
+      treeWalk.setRecursive(true);
+      treeWalk.setFilter(PathFilterGroup.createFromStrings(paths));
+      while (treeWalk.next()) {
+        if (paths.contains(treeWalk.getPathString())) {
+          byte[] bytes = repository.open(treeWalk.getObjectId(0)).getBytes();
+          contents.put(treeWalk.getPathString(), new String(bytes, StandardCharsets.UTF_8));
+        }
+      }
+    }
+    return contents;
+  }
+
+  private static Set<String> directories(Set<String> paths) {
+    Set<String> directories = new HashSet<>();
+    for (String path : paths) {
+      String directory = path;
+      while (directory.contains("/")) {
+        directory = directory.substring(0, directory.lastIndexOf("/"));
+        directories.add(directory);
+      }
+    }
+    return directories;
+  }
+}
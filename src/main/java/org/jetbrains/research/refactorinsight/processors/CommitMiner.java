@@ -8,33 +8,41 @@ import com.intellij.util.Consumer;
 import com.intellij.vcs.log.TimedVcsCommit;
 import git4idea.repo.GitRepository;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jgit.lib.Repository;
 import org.jetbrains.research.kotlinrminer.api.GitHistoryKotlinRMiner;
 import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
 import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
 import org.jetbrains.research.refactorinsight.services.MiningService;
+import org.jetbrains.research.refactorinsight.services.MiningStatistics;
 import org.refactoringminer.api.GitHistoryRefactoringMiner;
 import org.refactoringminer.api.Refactoring;
 import org.refactoringminer.api.RefactoringHandler;
-import org.refactoringminer.rm1.GitHistoryRefactoringMinerImpl;
 
 /**
  * The CommitMiner is a Consumer of GitCommit.
  * It mines a commit and updates the refactoring map with the data retrieved for that commit.
  * Consumes a git commit, calls RefactoringMiner and detects the refactorings for a commit.
+ * Consecutive commits of a parent-child chain are mined by the same worker,
+ * so that the file models parsed for one commit are reused by the next.
  */
 public class CommitMiner implements Consumer<TimedVcsCommit> {
+  /**
+   * Time budget for mining a commit, after which it is marked as timed out and queued to be retried.
+   */
+  public static final long TIMEOUT_SECONDS = 120;
   private static final String progress = RefactorInsightBundle.message("progress");
+  private static final int MAX_CHAIN_LENGTH = 8;
   private final ExecutorService pool;
   private final Map<String, RefactoringEntry> map;
   private final Project myProject;
@@ -42,6 +50,8 @@ public class CommitMiner implements Consumer<TimedVcsCommit> {
   private final AtomicInteger commitsDone;
   private final ProgressIndicator progressIndicator;
   private final int limit;
+  private final MiningScope scope;
+  private final List<TimedVcsCommit> chain = new ArrayList<>();
 
   /**
    * CommitMiner for mining a single commit.
@@ -49,10 +59,12 @@ public class CommitMiner implements Consumer<TimedVcsCommit> {
    * @param pool       ThreadPool to submit to.
    * @param map        Map to add mined commit data to.
    * @param repository GitRepository.
+   * @param scope      the files to detect the refactorings in.
    */
   public CommitMiner(ExecutorService pool, Map<String, RefactoringEntry> map,
                      GitRepository repository,
-                     AtomicInteger commitsDone, ProgressIndicator progressIndicator, int limit) {
+                     AtomicInteger commitsDone, ProgressIndicator progressIndicator, int limit,
+                     MiningScope scope) {
     this.pool = pool;
     this.map = map;
     myProject = repository.getProject();
@@ -61,10 +73,13 @@ public class CommitMiner implements Consumer<TimedVcsCommit> {
     this.commitsDone = commitsDone;
     this.progressIndicator = progressIndicator;
     this.limit = limit;
+    this.scope = scope;
   }
 
   /**
    * Returns a runnable that processes only one commit by consistently running RefactoringMiner and kotlinRMiner.
+   * The commit is mined in all its files, whatever the configured scope: it is mined because it was selected,
+   * shown or retried, and an entry mined in all the files is covered by every scope, so it is never mined again.
    *
    * @param commitHash       commit hash.
    * @param commitParentHash commit parent's hash.
@@ -72,11 +87,13 @@ public class CommitMiner implements Consumer<TimedVcsCommit> {
    * @param map              the inner map that should be updated.
    * @param project          the current project.
    * @param repository       Git Repository.
+   * @param timer            accumulates the time spent in each phase, passed to the timeout if the mining is stopped.
    */
   public static Runnable mineAtCommit(String commitHash, String commitParentHash, long commitTimestamp,
                                       Map<String, RefactoringEntry> map,
-                                      Project project, Repository repository) {
-    return getRunnableToDetectRefactorings(map, commitHash, commitParentHash, commitTimestamp, repository, project);
+                                      Project project, Repository repository, MiningTimer timer) {
+    return getRunnableToDetectRefactorings(map, commitHash, commitParentHash, commitTimestamp, repository, project,
+        timer, MiningScope.ALL);
   }
 
   /**
@@ -88,89 +105,182 @@ public class CommitMiner implements Consumer<TimedVcsCommit> {
    * @param map              the inner map that should be updated.
    * @param project          the current project.
    * @param repository       Git Repository.
-   * @return a runnable.
+   * @param timer            accumulates the time spent in each phase, recorded in the mining statistics.
+   * @param scope            the files to detect the refactorings in.
+   * @return a runnable that records the commit as mined, unless it was stopped.
    */
   private static Runnable getRunnableToDetectRefactorings(Map<String, RefactoringEntry> map, String commitHash,
                                                           String commitParentHash, long commitTimestamp,
-                                                          Repository repository, Project project) {
+                                                          Repository repository, Project project,
+                                                          MiningTimer timer, MiningScope scope) {
     return () -> {
-      GitHistoryKotlinRMiner kminer = new GitHistoryKotlinRMiner();
-      GitHistoryRefactoringMiner jminer = new GitHistoryRefactoringMinerImpl();
-
+      MiningService service = MiningService.getInstance(project);
+      long start = System.nanoTime();
       try {
-        jminer.detectAtCommit(repository, commitHash, new RefactoringHandler() {
-          @Override
-          public void handle(String commitId, List<Refactoring> refactorings) {
-            map.put(commitId, RefactoringEntry.convertJavaRefactorings(refactorings, commitHash,
-                commitParentHash, commitTimestamp, project));
-          }
-        });
-
-        kminer.detectAtCommit(repository, commitHash,
-            new org.jetbrains.research.kotlinrminer.api.RefactoringHandler() {
-              @Override
-              public void handle(String commitId,
-                                 List<org.jetbrains.research.kotlinrminer.api.Refactoring> refactorings) {
-                final RefactoringEntry convertedKtRefactorings =
-                    RefactoringEntry.convertKotlinRefactorings(refactorings, commitHash,
-                        commitParentHash, commitTimestamp, project);
-                Optional.ofNullable(map.get(commitId)).ifPresentOrElse(
-                    re -> re.addRefactorings(convertedKtRefactorings.getRefactorings()),
-                    () -> map.put(commitId, convertedKtRefactorings)
-                );
-              }
-            });
+        detect(map, commitHash, commitParentHash, commitTimestamp, repository, service.getModelCache(), timer,
+            scope);
       } catch (Exception e) {
         e.printStackTrace();
+      } finally {
+        //a stopped commit is recorded by the thread that stopped it
+        if (!Thread.currentThread().isInterrupted() && timer.claimOutcome()) {
+          service.getStatistics().commitMined(commitHash, timer, System.nanoTime() - start);
+        }
+        service.entriesChanged(commitHash);
       }
     };
   }
 
+  /**
+   * Detects the refactorings in Java and Kotlin code of a commit and puts them into the map.
+   * Does not depend on the project, so that commits can be mined the same way outside of the IDE.
+   *
+   * @param map              the map that should be updated.
+   * @param commitHash       commit hash.
+   * @param commitParentHash commit parent's hash.
+   * @param commitTimestamp  commit timestamp.
+   * @param repository       Git Repository.
+   * @param cache            the models of the files that were already parsed.
+   * @param timer            accumulates the time spent in each phase.
+   * @param scope            the files to detect the refactorings in, recorded in the entry.
+   */
+  public static void detect(Map<String, RefactoringEntry> map, String commitHash,
+                            String commitParentHash, long commitTimestamp,
+                            Repository repository, UMLModelCache cache, MiningTimer timer,
+                            MiningScope scope) throws Exception {
+    GitHistoryKotlinRMiner kminer = new GitHistoryKotlinRMiner();
+    GitHistoryRefactoringMiner jminer = new CachingRefactoringMiner(cache, timer, scope);
+
+    AtomicReference<RefactoringEntry> javaEntry = new AtomicReference<>();
+    AtomicReference<RefactoringEntry> kotlinEntry = new AtomicReference<>();
+    long start = System.nanoTime();
+    long timed = timer.total();
+    jminer.detectAtCommit(repository, commitHash, new RefactoringHandler() {
+      @Override
+      public void handle(String commitId, List<Refactoring> refactorings) {
+        javaEntry.set(timer.time(MiningTimer.Phase.CONVERSION, () ->
+            RefactoringEntry.convertJavaRefactorings(refactorings, commitHash, commitParentHash, commitTimestamp)));
+      }
+    });
+    //the blob loading and the conversion are accounted separately
+    timer.add(MiningTimer.Phase.JAVA_DETECTION, System.nanoTime() - start - (timer.total() - timed));
+
+    start = System.nanoTime();
+    timed = timer.total();
+    try {
+      kminer.detectAtCommit(repository, commitHash,
+          new org.jetbrains.research.kotlinrminer.api.RefactoringHandler() {
+            @Override
+            public void handle(String commitId,
+                               List<org.jetbrains.research.kotlinrminer.api.Refactoring> refactorings) {
+              kotlinEntry.set(timer.time(MiningTimer.Phase.CONVERSION, () ->
+                  RefactoringEntry.convertKotlinRefactorings(refactorings, commitHash,
+                      commitParentHash, commitTimestamp)));
+            }
+          });
+    } finally {
+      timer.add(MiningTimer.Phase.KOTLIN_DETECTION, System.nanoTime() - start - (timer.total() - timed));
+      //the refactorings in Java code are published even if the detection in Kotlin code fails
+      publish(map, commitHash, javaEntry.get(), kotlinEntry.get(), scope);
+    }
+  }
+
+  /**
+   * Publishes the refactorings detected in Java and in Kotlin code of a commit as a single entry.
+   * The entry is complete when it is put into the map, so readers never see a partially mined commit.
+   * kotlinRMiner reads all the changed files, so its refactorings outside of the scope are dropped here.
+   * A mined entry replaces a timeout entry stored for the commit, while a timeout never replaces it.
+   */
+  private static void publish(Map<String, RefactoringEntry> map, String commitHash,
+                              RefactoringEntry javaEntry, RefactoringEntry kotlinEntry, MiningScope scope) {
+    if (javaEntry == null && kotlinEntry == null) {
+      return;
+    }
+    RefactoringEntry entry = javaEntry == null ? kotlinEntry
+        : kotlinEntry == null ? javaEntry : javaEntry.combine(kotlinEntry);
+    map.merge(commitHash, scope.restrict(entry), (stored, mined) -> mined);
+  }
+
   /**
    * Mines a gitCommit.
    * Method that calls RefactoringMiner and updates the refactoring map.
+   * Commits are collected into parent-child chains that are submitted to the pool as a whole.
    *
    * @param gitCommit to be mined
    */
   public void consume(TimedVcsCommit gitCommit) throws ProcessCanceledException {
     String commitId = gitCommit.getId().asString();
 
-    if (!map.containsKey(commitId)) {
-      pool.execute(() -> {
+    RefactoringEntry entry = map.get(commitId);
+    if (entry == null || !scope.isCoveredBy(entry)) {
+      if (!chain.isEmpty() && (chain.size() >= MAX_CHAIN_LENGTH
+          || !commitId.equals(firstParent(chain.get(chain.size() - 1))))) {
+        flush();
+      }
+      chain.add(gitCommit);
+    } else {
+      flush();
+      incrementProgress();
+      progressIndicator.checkCanceled();
+    }
+  }
+
+  /**
+   * Submits the commits of the current chain to the pool.
+   * Should be called once all the commits have been consumed.
+   */
+  public void flush() {
+    if (chain.isEmpty()) {
+      return;
+    }
+    List<TimedVcsCommit> commits = new ArrayList<>(chain);
+    chain.clear();
+    MiningStatistics statistics = MiningService.getInstance(myProject).getStatistics();
+    statistics.enqueued(commits.size());
+    long enqueuedAt = System.nanoTime();
+    pool.execute(() -> {
+      long queuedAt = enqueuedAt;
+      for (TimedVcsCommit gitCommit : commits) {
+        statistics.dequeued();
         if (progressIndicator.isCanceled()) {
           cancelProgress();
           return;
         }
 
-        String commitParentHash =
-            gitCommit.getParents().size() == 0 ? null : gitCommit.getParents().get(0).asString();
+        String commitId = gitCommit.getId().asString();
+        String commitParentHash = firstParent(gitCommit);
+        MiningTimer timer = new MiningTimer();
+        timer.add(MiningTimer.Phase.QUEUE_WAIT, System.nanoTime() - queuedAt);
         detectRefactorings(getRunnableToDetectRefactorings(map, commitId, commitParentHash,
                                                            gitCommit.getTimestamp(),
-                                                           myRepository, myProject),
-                           gitCommit.getId().asString(),
+                                                           myRepository, myProject, timer, scope),
+                           commitId,
                            commitParentHash,
-                           gitCommit.getTimestamp());
+                           gitCommit.getTimestamp(),
+                           timer);
         incrementProgress();
-      });
-    } else {
-      incrementProgress();
-      progressIndicator.checkCanceled();
-    }
+        //the next commit of the chain waits only for this one, which is not queue wait
+        queuedAt = System.nanoTime();
+      }
+    });
+  }
+
+  private static String firstParent(TimedVcsCommit gitCommit) {
+    return gitCommit.getParents().size() == 0 ? null : gitCommit.getParents().get(0).asString();
   }
 
   private void detectRefactorings(Runnable runnable, String commitHash,
-                                  String commitParentHash, long commitTimestamp) {
+                                  String commitParentHash, long commitTimestamp, MiningTimer timer) {
     ExecutorService service = Executors.newSingleThreadExecutor();
     Future<?> f = null;
+    long start = System.nanoTime();
     try {
       f = service.submit(runnable);
-      f.get(120, TimeUnit.SECONDS);
+      f.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
     } catch (TimeoutException e) {
       if (f.cancel(true)) {
-        RefactoringEntry refactoringEntry =
-            RefactoringEntry.createEmptyEntry(commitHash, commitParentHash, commitTimestamp);
-        refactoringEntry.setTimeout(true);
-        map.put(commitHash, refactoringEntry);
+        MiningService.getInstance(myProject)
+            .commitTimedOut(commitHash, commitParentHash, commitTimestamp, System.nanoTime() - start, timer);
       }
     } catch (Exception e) {
       e.printStackTrace();
@@ -184,6 +294,7 @@ public class CommitMiner implements Consumer<TimedVcsCommit> {
    */
   private void incrementProgress() {
     final int nCommits = commitsDone.incrementAndGet();
+    MiningService.getInstance(myProject).getStatistics().sessionProgress(nCommits);
     progressIndicator.setText(String.format(progress,
         nCommits, limit));
     progressIndicator.setFraction((float) nCommits / limit);
@@ -0,0 +1,201 @@
+package org.jetbrains.research.refactorinsight.processors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.services.SettingsState;
+
+/**
+ * The part of the repository to be mined: the commits made in a date range by some authors,
+ * and only the files under some paths. Paths are prefixes of directories or files, or globs.
+ * An empty part of the scope does not restrict the mining.
+ * The commits are selected by the log walk, the files are filtered before the refactorings are detected.
+ * A refactoring is in the scope only if all the files it involves, before and after the commit, are in the scope.
+ * RefactoringMiner parses only the files in the scope, so it cannot detect any other refactoring in Java code,
+ * and the refactorings in Kotlin code are restricted to the same rule after the detection.
+ */
+public class MiningScope {
+  public static final MiningScope ALL =
+      new MiningScope(Collections.emptyList(), "", "", Collections.emptyList());
+
+  private final List<String> paths;
+  private final List<Pattern> globs = new ArrayList<>();
+  private final String since;
+  private final String until;
+  private final List<String> authors;
+
+  /**
+   * Creates a mining scope.
+   *
+   * @param paths   prefixes or globs of the paths to be mined, relative to the repository root.
+   * @param since   the oldest commit date to be mined, in any format git accepts, or empty.
+   * @param until   the newest commit date to be mined, in any format git accepts, or empty.
+   * @param authors the authors whose commits are mined.
+   */
+  public MiningScope(List<String> paths, String since, String until, List<String> authors) {
+    this.paths = paths;
+    this.since = since;
+    this.until = until;
+    this.authors = authors;
+    for (String path : paths) {
+      if (isGlob(path)) {
+        globs.add(globToRegex(path));
+      }
+    }
+  }
+
+  /**
+   * Creates the mining scope configured in the settings of the project.
+   *
+   * @param settings the settings of the project.
+   * @return the scope.
+   */
+  public static MiningScope fromSettings(SettingsState settings) {
+    if (settings == null) {
+      return ALL;
+    }
+    return new MiningScope(split(settings.scopePaths), settings.scopeSince.trim(), settings.scopeUntil.trim(),
+        split(settings.scopeAuthors));
+  }
+
+  private static List<String> split(String value) {
+    return Arrays.stream(value.split(","))
+        .map(String::trim)
+        .filter(s -> !s.isEmpty())
+        .collect(Collectors.toList());
+  }
+
+  public boolean isRestricted() {
+    return !paths.isEmpty();
+  }
+
+  /**
+   * Returns the arguments of `git log` that select the commits in this scope.
+   * The paths are passed after `--`, so they have to be the last arguments.
+   */
+  public List<String> logArgs() {
+    List<String> args = new ArrayList<>();
+    if (!since.isEmpty()) {
+      args.add("--since=" + since);
+    }
+    if (!until.isEmpty()) {
+      args.add("--until=" + until);
+    }
+    authors.forEach(author -> args.add("--author=" + author));
+    if (!paths.isEmpty()) {
+      args.add("--");
+      paths.forEach(path -> args.add(isGlob(path) ? ":(glob)" + path : path));
+    }
+    return args;
+  }
+
+  /**
+   * Checks whether a file is in this scope.
+   *
+   * @param path the path of the file, relative to the repository root.
+   */
+  public boolean contains(String path) {
+    if (paths.isEmpty()) {
+      return true;
+    }
+    if (path == null) {
+      return false;
+    }
+    for (String prefix : paths) {
+      if (!isGlob(prefix) && (path.equals(prefix)
+          || path.startsWith(prefix.endsWith("/") ? prefix : prefix + "/"))) {
+        return true;
+      }
+    }
+    return globs.stream().anyMatch(glob -> glob.matcher(path).matches());
+  }
+
+  /**
+   * Restricts the refactorings of an entry that is not published yet to this scope,
+   * and records the scope in the entry.
+   * A refactoring is kept only if all its files are in this scope.
+   *
+   * @param entry the entry.
+   * @return the entry.
+   */
+  public RefactoringEntry restrict(RefactoringEntry entry) {
+    if (paths.isEmpty()) {
+      return entry;
+    }
+    List<RefactoringInfo> infos = entry.getRefactorings().stream()
+        .filter(this::contains)
+        .collect(Collectors.toList());
+    return entry.setRefactorings(infos).setScope(toString());
+  }
+
+  /**
+   * Checks whether all the files a refactoring involves are in this scope.
+   *
+   * @param info the refactoring.
+   */
+  public boolean contains(RefactoringInfo info) {
+    List<String> files = Stream.of(info.getLeftPath(), info.getMidPath(), info.getRightPath())
+        .filter(path -> path != null && !path.isEmpty())
+        .collect(Collectors.toList());
+    return !files.isEmpty() && files.stream().allMatch(this::contains);
+  }
+
+  /**
+   * Checks whether an entry does not need to be mined again for this scope,
+   * because it was mined for all the files or for the same paths.
+   * The dates and the authors only select the commits, so they do not change the refactorings of an entry.
+   *
+   * @param entry the mined entry.
+   */
+  public boolean isCoveredBy(RefactoringEntry entry) {
+    return entry.getScope().isEmpty() || entry.getScope().equals(toString());
+  }
+
+  /**
+   * Returns the paths of this scope, as they are recorded in the entries mined in it.
+   */
+  @Override
+  public String toString() {
+    return String.join(",", paths);
+  }
+
+  private static boolean isGlob(String path) {
+    return path.contains("*") || path.contains("?") || path.contains("[");
+  }
+
+  private static Pattern globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+        //`**/` also matches no directory at all
+        boolean slash = i + 2 < glob.length() && glob.charAt(i + 2) == '/';
+        regex.append(slash ? "(?:.*/)?" : ".*");
+        i += slash ? 2 : 1;
+      } else if (c == '*') {
+        regex.append("[^/]*");
+      } else if (c == '?') {
+        regex.append("[^/]");
+      } else if (c == '[') {
+        int end = glob.indexOf(']', i);
+        if (end < 0) {
+          regex.append("\\[");
+        } else {
+          String set = glob.substring(i + 1, end);
+          regex.append('[').append(set.startsWith("!") ? "^" + set.substring(1) : set).append(']');
+          i = end;
+        }
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+}
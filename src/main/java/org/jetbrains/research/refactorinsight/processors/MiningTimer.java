@@ -0,0 +1,117 @@
+package org.jetbrains.research.refactorinsight.processors;
+
+import com.intellij.openapi.util.ThrowableComputable;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Time spent in each phase of the mining of a commit, and the size of the files it read.
+ * A timer belongs to the thread that mines the commit.
+ * If the mining of the commit is stopped after the timeout, the timer is read by the thread that stopped it.
+ */
+public class MiningTimer {
+  private final long[] nanos = new long[Phase.values().length];
+  private int files = 0;
+  private long characters = 0;
+  private final AtomicBoolean recorded = new AtomicBoolean();
+
+  /**
+   * Phases of the mining of a commit.
+   */
+  public enum Phase {
+    /**
+     * Waiting for a mining thread.
+     */
+    QUEUE_WAIT,
+    /**
+     * Reading the changed files of the commit and its parent from the repository.
+     */
+    BLOB_LOADING,
+    /**
+     * Building the models of the Java files and comparing them with RefactoringMiner.
+     */
+    JAVA_DETECTION,
+    /**
+     * Detecting the refactorings of the Kotlin files with kotlinRMiner, including its own reading of the files.
+     */
+    KOTLIN_DETECTION,
+    /**
+     * Converting the detected refactorings into refactoring entries.
+     */
+    CONVERSION,
+    /**
+     * Correcting the line markings of the refactorings against the file contents.
+     */
+    CORRECTION,
+    /**
+     * Serializing the refactoring entries to the store.
+     */
+    PERSISTENCE
+  }
+
+  public void add(Phase phase, long nanos) {
+    this.nanos[phase.ordinal()] += nanos;
+  }
+
+  public long get(Phase phase) {
+    return nanos[phase.ordinal()];
+  }
+
+  /**
+   * Counts the files read from a revision.
+   *
+   * @param contents the contents of the files, keyed by their paths.
+   */
+  public void addFiles(Map<String, String> contents) {
+    files += contents.size();
+    for (String content : contents.values()) {
+      characters += content.length();
+    }
+  }
+
+  public int getFiles() {
+    return files;
+  }
+
+  public long getCharacters() {
+    return characters;
+  }
+
+  /**
+   * Claims the recording of the outcome of the commit in the mining statistics,
+   * either as mined by the thread that mines it, or as timed out by the thread that stops it.
+   *
+   * @return true only for the first caller.
+   */
+  public boolean claimOutcome() {
+    return recorded.compareAndSet(false, true);
+  }
+
+  /**
+   * Returns the time spent in all the phases.
+   */
+  public long total() {
+    long total = 0;
+    for (long phase : nanos) {
+      total += phase;
+    }
+    return total;
+  }
+
+  /**
+   * Runs a computation and adds its duration to a phase.
+   *
+   * @param phase       the phase of the computation.
+   * @param computation the computation.
+   * @return the result of the computation.
+   */
+  public <T, E extends Throwable> T time(Phase phase, ThrowableComputable<T, E> computation) throws E {
+    long start = System.nanoTime();
+    try {
+      return computation.compute();
+    } finally {
+      add(phase, System.nanoTime() - start);
+    }
+  }
+}
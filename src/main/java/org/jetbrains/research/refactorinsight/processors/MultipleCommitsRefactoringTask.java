@@ -0,0 +1,132 @@
+package org.jetbrains.research.refactorinsight.processors;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.vcs.log.VcsCommitMetadata;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.lib.Repository;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
+import org.jetbrains.research.refactorinsight.services.MiningService;
+import org.jetbrains.research.refactorinsight.services.SettingsState;
+import org.jetbrains.research.refactorinsight.ui.windows.GitWindow;
+
+/**
+ * Cancelable task that mines the commits selected in the Git Log in parallel.
+ * The window is refreshed after each commit is mined, so that its refactorings
+ * are shown as soon as they are available.
+ */
+public class MultipleCommitsRefactoringTask extends Task.Backgroundable {
+  private final Project project;
+  private final List<VcsCommitMetadata> commits;
+  private final GitWindow window;
+  private final MiningService service;
+  private final Repository myRepository;
+  private volatile boolean canceled = false;
+  private final Logger logger = Logger.getInstance(MultipleCommitsRefactoringTask.class);
+
+  /**
+   * Cancelable mining task for mining several commits at once.
+   *
+   * @param project Current IDEA project
+   * @param commits Meta data of the commits to mine
+   * @param window  Git Window for callback
+   */
+  public MultipleCommitsRefactoringTask(@Nullable Project project, List<VcsCommitMetadata> commits,
+                                        GitWindow window) {
+    super(project, RefactorInsightBundle.message("mining"), true);
+    this.project = project;
+    this.commits = commits;
+    this.window = window;
+    this.service = ServiceManager.getService(project, MiningService.class);
+    this.myRepository = service.getRepository();
+  }
+
+  @Override
+  public void run(@NotNull ProgressIndicator progressIndicator) {
+    int threads = Math.max(1, Math.min(SettingsState.getInstance(project).threads, commits.size()));
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    AtomicInteger commitsDone = new AtomicInteger();
+    Map<VcsCommitMetadata, Future<?>> futures = new LinkedHashMap<>();
+    Map<VcsCommitMetadata, Long> started = new ConcurrentHashMap<>();
+    Map<VcsCommitMetadata, MiningTimer> timers = new LinkedHashMap<>();
+    progressIndicator.setIndeterminate(false);
+    for (VcsCommitMetadata commit : commits) {
+      String commitId = commit.getId().asString();
+      MiningTimer timer = new MiningTimer();
+      timers.put(commit, timer);
+      Runnable miner = CommitMiner.mineAtCommit(commitId, commit.getParents().get(0).asString(),
+          commit.getTimestamp(), service.getRefactoringsMap(), project, myRepository, timer);
+      futures.put(commit, pool.submit(() -> {
+        started.put(commit, System.nanoTime());
+        miner.run();
+        progressIndicator.setText(String.format(RefactorInsightBundle.message("progress"),
+            commitsDone.incrementAndGet(), commits.size()));
+        progressIndicator.setFraction((double) commitsDone.get() / commits.size());
+        ApplicationManager.getApplication()
+            .invokeLater(() -> window.refresh(commitId), project.getDisposed());
+      }));
+    }
+    pool.shutdown();
+
+    //every commit gets the time budget of a single commit from the moment a worker starts mining it
+    try {
+      while (!pool.awaitTermination(10, TimeUnit.MILLISECONDS)
+          && !futures.values().stream().allMatch(Future::isDone)) {
+        if (canceled) {
+          progressIndicator.cancel();
+        }
+        progressIndicator.checkCanceled();
+        markTimedOut(futures, started, timers);
+      }
+    } catch (InterruptedException e) {
+      logger.info("The mining of refactorings at the selected commits was interrupted");
+      Thread.currentThread().interrupt();
+    } catch (ProcessCanceledException e) {
+      logger.info("The mining of refactorings at the selected commits was canceled");
+      throw e;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  public void cancel() {
+    canceled = true;
+  }
+
+  /**
+   * Stores empty entries for the commits that could not be mined in time, and queues them to be mined again.
+   */
+  private void markTimedOut(Map<VcsCommitMetadata, Future<?>> futures, Map<VcsCommitMetadata, Long> started,
+                            Map<VcsCommitMetadata, MiningTimer> timers) {
+    long now = System.nanoTime();
+    futures.forEach((commit, future) -> {
+      Long start = started.get(commit);
+      if (start == null || future.isDone() || now - start < TimeUnit.SECONDS.toNanos(CommitMiner.TIMEOUT_SECONDS)) {
+        return;
+      }
+      if (future.cancel(true)) {
+        service.commitTimedOut(commit.getId().asString(), commit.getParents().get(0).asString(),
+            commit.getTimestamp(), now - start, timers.get(commit));
+        ApplicationManager.getApplication()
+            .invokeLater(() -> window.refresh(commit.getId().asString()), project.getDisposed());
+      }
+    });
+  }
+}
@@ -15,57 +15,102 @@ import org.eclipse.jgit.lib.Repository;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
-import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
 import org.jetbrains.research.refactorinsight.pullrequests.PRFileEditor;
 import org.jetbrains.research.refactorinsight.services.MiningService;
 
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+/**
+ * Cancelable task that mines the commits of a pull request as soon as their details are loaded.
+ * The details are added in batches while the task runs, and the task finishes
+ * once all of them were added and mined.
+ */
 public class PRMiningBackgroundableTask extends Task.Backgroundable {
   private final Project project;
   private final PRFileEditor prFileEditor;
   private final MiningService service;
   private final Repository myRepository;
+  private final int commitsCount;
+  private final BlockingQueue<VcsFullCommitDetails> commits = new LinkedBlockingQueue<>();
+  private volatile boolean closed = false;
   private boolean canceled = false;
   private final Logger logger = Logger.getInstance(PRMiningBackgroundableTask.class);
-  List<VcsFullCommitDetails> commitDetails;
 
   /**
    * Cancelable mining task for mining refactorings in pull request.
    *
-   * @param project       current  project.
-   * @param commitDetails pull request's commits details.
+   * @param project      current  project.
+   * @param commitsCount number of commits in the pull request.
+   * @param prFileEditor editor to be updated.
    */
   public PRMiningBackgroundableTask(
-      @Nullable Project project, List<VcsFullCommitDetails> commitDetails, PRFileEditor prFileEditor) {
+      @Nullable Project project, int commitsCount, PRFileEditor prFileEditor) {
     super(project, RefactorInsightBundle.message("mining"), true);
     this.project = project;
     this.service = ServiceManager.getService(project, MiningService.class);
     this.myRepository = service.getRepository();
     this.prFileEditor = prFileEditor;
-    this.commitDetails = commitDetails;
+    this.commitsCount = commitsCount;
+  }
+
+  /**
+   * Adds commits whose details were loaded.
+   *
+   * @param details details of the commits to be mined.
+   */
+  public void addCommits(List<? extends VcsFullCommitDetails> details) {
+    commits.addAll(details);
+  }
+
+  /**
+   * Notifies the task that the details of all commits were added.
+   */
+  public void close() {
+    closed = true;
   }
 
   @Override
   public void onFinished() {
     super.onFinished();
     ApplicationManager.getApplication()
-        .invokeLater(prFileEditor::buildComponent);
+        .invokeLater(prFileEditor::finishMining);
   }
 
   @Override
   public void run(@NotNull ProgressIndicator progressIndicator) {
-    for (VcsFullCommitDetails commit : commitDetails) {
+    int commitsDone = 0;
+    while (!closed || !commits.isEmpty()) {
+      if (canceled) {
+        progressIndicator.cancel();
+      }
+      progressIndicator.checkCanceled();
+      VcsFullCommitDetails commit;
+      try {
+        commit = commits.poll(10, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        throw new ProcessCanceledException(e);
+      }
+      if (commit == null) {
+        continue;
+      }
+      prFileEditor.showProgress(String.format(RefactorInsightBundle.message("progress"),
+          ++commitsDone, commitsCount));
+      if (service.containsCommit(commit.getId().asString()) || commit.getParents().isEmpty()) {
+        continue;
+      }
       try {
+        MiningTimer timer = new MiningTimer();
         runWithCheckCanceled(
             CommitMiner.mineAtCommit(commit.getId().asString(), commit.getParents().get(0).asString(),
-                                     commit.getTimestamp(), service.getState().refactoringsMap.map, project,
-                                     myRepository),
-            progressIndicator, commit, project
+                                     commit.getTimestamp(), service.getRefactoringsMap(), project,
+                                     myRepository, timer),
+            progressIndicator, commit, project, timer
         );
       } catch (Exception e) {
         logger.info(String.format("The mining of refactorings at the commit %s was canceled",
@@ -83,7 +128,7 @@ public class PRMiningBackgroundableTask extends Task.Backgroundable {
    */
   public void runWithCheckCanceled(@NotNull final Runnable runnable,
                                    @NotNull final ProgressIndicator indicator,
-                                   VcsFullCommitDetails commit, Project project) throws Exception {
+                                   VcsFullCommitDetails commit, Project project, MiningTimer timer) throws Exception {
     final Ref<Throwable> error = Ref.create();
     Future<?> future = ApplicationManager.getApplication().executeOnPooledThread(
         () -> ProgressManager.getInstance().executeProcessUnderProgress(() -> {
@@ -95,7 +140,7 @@ public class PRMiningBackgroundableTask extends Task.Backgroundable {
         }, indicator)
     );
     try {
-      runWithCheckCanceled(future, indicator, commit, project);
+      runWithCheckCanceled(future, indicator, commit, project, timer);
       ExceptionUtil.rethrowAll(error.get());
     } catch (ProcessCanceledException e) {
       future.cancel(true);
@@ -109,8 +154,9 @@ public class PRMiningBackgroundableTask extends Task.Backgroundable {
    */
   private <T> void runWithCheckCanceled(@NotNull Future<T> future,
                                         @NotNull final ProgressIndicator indicator,
-                                        VcsFullCommitDetails commit, Project project) throws
-      ExecutionException {
+                                        VcsFullCommitDetails commit, Project project,
+                                        MiningTimer timer) throws ExecutionException {
+    long start = System.nanoTime();
     int timeout = 6000;
     while (timeout > 0) {
       if (canceled) {
@@ -127,14 +173,9 @@ public class PRMiningBackgroundableTask extends Task.Backgroundable {
       }
       timeout -= 1;
     }
-    if (timeout == 0) {
-      RefactoringEntry refactoringEntry = RefactoringEntry
-          .createEmptyEntry(commit.getId().asString(), commit.getParents().get(0).asString(),
-                            commit.getTimestamp());
-      refactoringEntry.setTimeout(true);
-      MiningService.getInstance(project).getState().refactoringsMap.map.put(
-          commit.getId().asString(),
-          refactoringEntry);
+    if (timeout == 0 && future.cancel(true)) {
+      MiningService.getInstance(project).commitTimedOut(commit.getId().asString(),
+          commit.getParents().get(0).asString(), commit.getTimestamp(), System.nanoTime() - start, timer);
     }
   }
 }
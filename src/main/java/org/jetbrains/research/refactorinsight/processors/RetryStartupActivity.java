@@ -0,0 +1,19 @@
+package org.jetbrains.research.refactorinsight.processors;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.refactorinsight.services.MiningService;
+
+/**
+ * Starts mining again the commits that timed out, whenever the IDE is idle,
+ * and restores the saved refactoring history in the background.
+ */
+public class RetryStartupActivity implements StartupActivity {
+
+  @Override
+  public void runActivity(@NotNull Project project) {
+    MiningService.getInstance(project).getRetryQueue().schedule(project);
+    MiningService.getInstance(project).loadHistoryInBackground();
+  }
+}
@@ -22,7 +22,6 @@ import org.eclipse.jgit.lib.Repository;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
-import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
 import org.jetbrains.research.refactorinsight.services.MiningService;
 import org.jetbrains.research.refactorinsight.ui.windows.GitWindow;
 
@@ -69,11 +68,12 @@ public class SingleCommitRefactoringTask extends Task.Backgroundable {
   @Override
   public void run(@NotNull ProgressIndicator progressIndicator) {
     try {
+      MiningTimer timer = new MiningTimer();
       runWithCheckCanceled(
           CommitMiner.mineAtCommit(commit.getId().asString(), commit.getParents().get(0).asString(),
-                                   commit.getTimestamp(), service.getState().refactoringsMap.map, project,
-                                   myRepository),
-          progressIndicator, commit, project
+                                   commit.getTimestamp(), service.getRefactoringsMap(), project,
+                                   myRepository, timer),
+          progressIndicator, commit, project, timer
       );
     } catch (Exception e) {
       logger.info(String.format("The mining of refactorings at the commit %s was canceled", commit.getId()));
@@ -89,7 +89,7 @@ public class SingleCommitRefactoringTask extends Task.Backgroundable {
    */
   public void runWithCheckCanceled(@NotNull final Runnable runnable,
                                    @NotNull final ProgressIndicator indicator,
-                                   VcsCommitMetadata commit, Project project) throws Exception {
+                                   VcsCommitMetadata commit, Project project, MiningTimer timer) throws Exception {
     final Ref<Throwable> error = Ref.create();
     Future<?> future = ApplicationManager.getApplication().executeOnPooledThread(
         () -> ProgressManager.getInstance().executeProcessUnderProgress(() -> {
@@ -101,7 +101,7 @@ public class SingleCommitRefactoringTask extends Task.Backgroundable {
         }, indicator)
     );
     try {
-      runWithCheckCanceled(future, indicator, commit, project);
+      runWithCheckCanceled(future, indicator, commit, project, timer);
       ExceptionUtil.rethrowAll(error.get());
     } catch (ProcessCanceledException e) {
       future.cancel(true);
@@ -115,8 +115,9 @@ public class SingleCommitRefactoringTask extends Task.Backgroundable {
    */
   private <T> void runWithCheckCanceled(@NotNull Future<T> future,
                                         @NotNull final ProgressIndicator indicator,
-                                        TimedVcsCommit commit, Project project) throws
-      ExecutionException {
+                                        TimedVcsCommit commit, Project project,
+                                        MiningTimer timer) throws ExecutionException {
+    long start = System.nanoTime();
     int timeout = 6000;
     while (timeout > 0) {
       if (canceled) {
@@ -133,13 +134,9 @@ public class SingleCommitRefactoringTask extends Task.Backgroundable {
       }
       timeout -= 1;
     }
-    if (timeout == 0) {
-      RefactoringEntry refactoringEntry =
-          RefactoringEntry.createEmptyEntry(commit.getId().asString(), commit.getParents().get(0).asString(),
-                                            commit.getTimestamp());
-      refactoringEntry.setTimeout(true);
-      MiningService.getInstance(project).getState().refactoringsMap.map.put(commit.getId().asString(),
-                                                                            refactoringEntry);
+    if (timeout == 0 && future.cancel(true)) {
+      MiningService.getInstance(project).commitTimedOut(commit.getId().asString(),
+          commit.getParents().get(0).asString(), commit.getTimestamp(), System.nanoTime() - start, timer);
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package org.jetbrains.research.refactorinsight.processors;
+
+import gr.uom.java.xmi.UMLModel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the UML models of single files.
+ * The models are keyed by the file path and the id of the file contents,
+ * so that the version of a file parsed as the child of one commit
+ * is reused when it is parsed as the parent of the next one.
+ *
+ * <p>RefactoringMiner keeps intermediate results in the statements of a model while it diffs the model,
+ * such as the statements with the parameters of a method replaced by the arguments of a call.
+ * A model is therefore lent to one detection at a time: {@link #take} removes it from the cache,
+ * and the detection puts it back with {@link #put} once it is done,
+ * while a concurrent detection of the same file version parses its own model.
+ * Those results are computed again every time a model is diffed,
+ * so a model reused by the next commit gives the same refactorings as a freshly parsed one.
+ */
+public class UMLModelCache {
+  private final Map<String, UMLModel> models;
+
+  /**
+   * Creates a cache holding at most the given number of file models.
+   *
+   * @param capacity maximum number of cached models.
+   */
+  public UMLModelCache(int capacity) {
+    models = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, UMLModel> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Removes the model of a file version from the cache, so that no other detection uses it until it is put back.
+   *
+   * @param path      the path of the file.
+   * @param contentId the id of the file contents.
+   * @return the model, or null if the file version is not cached.
+   */
+  public synchronized UMLModel take(String path, String contentId) {
+    return models.remove(key(path, contentId));
+  }
+
+  public synchronized void put(String path, String contentId, UMLModel model) {
+    models.put(key(path, contentId), model);
+  }
+
+  public synchronized void clear() {
+    models.clear();
+  }
+
+  private static String key(String path, String contentId) {
+    return contentId + ":" + path;
+  }
+}
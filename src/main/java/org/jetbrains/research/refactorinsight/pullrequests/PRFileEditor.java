@@ -1,6 +1,7 @@
 package org.jetbrains.research.refactorinsight.pullrequests;
 
 import com.intellij.diff.util.FileEditorBase;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
@@ -9,6 +10,7 @@ import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.Change;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.Gray;
+import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBLoadingPanel;
 import com.intellij.ui.components.JBLoadingPanelListener;
@@ -19,11 +21,13 @@ import com.intellij.vcs.log.VcsLogProvider;
 import com.intellij.vcs.log.data.VcsLogData;
 import com.intellij.vcs.log.impl.VcsProjectLog;
 import com.intellij.vcs.log.util.VcsLogUtil;
+import git4idea.changes.GitChangeUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
 import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
 import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.processors.PRMiningBackgroundableTask;
 import org.jetbrains.research.refactorinsight.services.MiningService;
 import org.jetbrains.research.refactorinsight.ui.tree.Node;
 import org.jetbrains.research.refactorinsight.ui.tree.TreeUtils;
@@ -31,6 +35,7 @@ import org.jetbrains.research.refactorinsight.ui.tree.renderers.MainCellRenderer
 import org.jetbrains.research.refactorinsight.ui.windows.DiffWindow;
 
 import javax.swing.JComponent;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.SwingConstants;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -46,13 +51,24 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Shows a list of discovered refactorings in opened Pull Request.
+ * The commit details are loaded and mined in background, with the progress shown in the editor.
+ * The pull request can also be shown as a single change, whose refactorings in Java code are detected
+ * with one diff between its base and its head, usually long before the commits are mined.
  */
 public class PRFileEditor extends FileEditorBase {
   private final PRVirtualFile file;
   private final Project project;
   private final JScrollPane panel;
   private JBLoadingPanel loadingPanel;
+  private final JPanel component;
+  private static final int DETAILS_BATCH = 10;
   private final ConcurrentHashMap<String, VcsFullCommitDetails> commitsDetails = new ConcurrentHashMap<>();
+  private volatile String baseCommit;
+  private final String headCommit;
+  private boolean aggregate = false;
+  private boolean commitsMined = false;
+  private Collection<Change> rangeChanges;
+  private String rangeError;
 
   /**
    * Creates a new editor.
@@ -64,42 +80,108 @@ public class PRFileEditor extends FileEditorBase {
     this.file = prVirtualFile;
     this.project = project;
     this.panel = new JScrollPane();
+    List<String> commitsIds = prVirtualFile.getCommitsIds();
+    this.headCommit = commitsIds.isEmpty() ? null : commitsIds.get(commitsIds.size() - 1);
     createLoadingPanel();
+    JBCheckBox aggregateBox = new JBCheckBox(RefactorInsightBundle.message("pr.aggregate"));
+    aggregateBox.addActionListener(e -> {
+      aggregate = aggregateBox.isSelected();
+      buildComponent();
+    });
+    component = new JPanel(new BorderLayout());
+    component.add(aggregateBox, BorderLayout.NORTH);
+    component.add(loadingPanel, BorderLayout.CENTER);
     collectCommitsDetails();
   }
 
   @Override
   public @NotNull
   JComponent getComponent() {
-    return loadingPanel;
+    return component;
   }
 
+  /**
+   * Loads the details of the pull request commits in background, batch by batch.
+   * Each batch is mined as soon as it is loaded.
+   */
   private void collectCommitsDetails() {
-    ProgressManager.getInstance().run(new Task.Modal(
-        project, "", true) {
-      List<? extends VcsFullCommitDetails> details = new ArrayList<>();
-
+    loadingPanel.startLoading();
+    List<String> commitsIds = file.getCommitsIds();
+    PRMiningBackgroundableTask miningTask =
+        MiningService.getInstance(project).mineAtCommitFromPR(commitsIds.size(), project, this);
+    ProgressManager.getInstance().run(new Task.Backgroundable(
+        project, RefactorInsightBundle.message("pr.details.loading"), true) {
       @Override
       public void run(@NotNull ProgressIndicator progressIndicator) {
-        loadingPanel.startLoading();
         VcsLogData vcsLogData = VcsProjectLog.getInstance(project).getLogManager().getDataManager();
         VirtualFile root = vcsLogData.getRoots().iterator().next();
         VcsLogProvider vcsLogProvider = VcsProjectLog.getInstance(project).getDataManager().getLogProvider(root);
-        try {
-          details = VcsLogUtil.getDetails(vcsLogProvider, root, file.getCommitsIds());
-        } catch (VcsException e) {
-          e.printStackTrace();
+        for (int from = 0; from < commitsIds.size(); from += DETAILS_BATCH) {
+          progressIndicator.checkCanceled();
+          int to = Math.min(from + DETAILS_BATCH, commitsIds.size());
+          try {
+            List<? extends VcsFullCommitDetails> details =
+                VcsLogUtil.getDetails(vcsLogProvider, root, commitsIds.subList(from, to));
+            saveCommitsDetails(details);
+            miningTask.addCommits(details);
+            if (from == 0) {
+              ApplicationManager.getApplication().invokeLater(() -> mineRange());
+            }
+          } catch (VcsException e) {
+            e.printStackTrace();
+          }
+          showProgress(String.format(RefactorInsightBundle.message("pr.details"), to, commitsIds.size()));
         }
-        saveCommitsDetails(details);
       }
 
       @Override
       public void onFinished() {
-        calculateRefactorings();
+        miningTask.close();
+      }
+    });
+  }
+
+  /**
+   * Starts the detection of the refactorings of the whole pull request,
+   * once the base of its first commit is known.
+   */
+  private void mineRange() {
+    VcsFullCommitDetails first = commitsDetails.get(file.getCommitsIds().get(0));
+    if (first == null || first.getParents().isEmpty() || headCommit == null) {
+      return;
+    }
+    baseCommit = first.getParents().get(0).asString();
+    MiningService.getInstance(project).mineRange(baseCommit, headCommit, project, () -> {
+      if (aggregate) {
+        buildComponent();
+      }
+    }, error -> {
+      rangeError = error;
+      if (aggregate) {
+        buildComponent();
       }
     });
   }
 
+  /**
+   * Called once all commits of the pull request are mined.
+   */
+  public void finishMining() {
+    commitsMined = true;
+    if (!aggregate) {
+      buildComponent();
+    }
+  }
+
+  /**
+   * Shows the progress of loading and mining the pull request in the editor.
+   *
+   * @param text progress text.
+   */
+  public void showProgress(String text) {
+    ApplicationManager.getApplication().invokeLater(() -> loadingPanel.setLoadingText(text));
+  }
+
   private void saveCommitsDetails(List<? extends VcsFullCommitDetails> vcsFullCommitDetails) {
     if (!vcsFullCommitDetails.isEmpty()) {
       for (VcsFullCommitDetails data : vcsFullCommitDetails) {
@@ -123,34 +205,44 @@ public class PRFileEditor extends FileEditorBase {
     loadingPanel.add(panel);
   }
 
-  private void calculateRefactorings() {
-    MiningService.getInstance(project).mineAtCommitFromPR(new ArrayList<>(commitsDetails.values()),
-        project, this);
-  }
-
   /**
    * Builds a panel to show the discovered refactorings in opened Pull Request.
+   * Shows either the refactorings of each commit, or the refactorings of the pull request as a whole.
    */
   public void buildComponent() {
-    panel.setAutoscrolls(true);
-    JBViewport viewport = new JBViewport();
-    viewport.setAutoscrolls(true);
     MiningService miner = MiningService.getInstance(project);
     List<RefactoringInfo> refactoringsFromAllCommits = new ArrayList<>();
-
-    for (String commitId : file.getCommitsIds()) {
-      RefactoringEntry entry = miner.get(commitId);
-      if (entry != null) {
-        refactoringsFromAllCommits.addAll(entry.getRefactorings());
+    if (aggregate) {
+      RefactoringEntry entry = baseCommit == null ? null : miner.get(MiningService.rangeKey(baseCommit, headCommit));
+      if (entry == null && rangeError != null) {
+        showLabel(String.format(RefactorInsightBundle.message("pr.range.failed"), rangeError));
+        return;
+      }
+      if (entry == null) {
+        loadingPanel.startLoading();
+        return;
+      }
+      refactoringsFromAllCommits.addAll(entry.getRefactorings());
+    } else {
+      if (!commitsMined) {
+        loadingPanel.startLoading();
+        return;
+      }
+      for (String commitId : file.getCommitsIds()) {
+        RefactoringEntry entry = miner.get(commitId);
+        if (entry != null) {
+          refactoringsFromAllCommits.addAll(entry.getRefactorings());
+        }
       }
     }
 
+    panel.setAutoscrolls(true);
+    JBViewport viewport = new JBViewport();
+    viewport.setAutoscrolls(true);
+
     // Check if all commits don't have refactorings
     if (refactoringsFromAllCommits.isEmpty()) {
-      final JBLabel component =
-          new JBLabel(RefactorInsightBundle.message("no.ref"), SwingConstants.CENTER);
-      component.setForeground(Gray._105);
-      viewport.setView(component);
+      viewport.setView(createLabel(RefactorInsightBundle.message("no.ref")));
     } else {
       Tree tree = TreeUtils.buildTree(refactoringsFromAllCommits);
       tree.setCellRenderer(new MainCellRenderer());
@@ -167,6 +259,10 @@ public class PRFileEditor extends FileEditorBase {
             DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
             if (node.isLeaf()) {
               RefactoringInfo info = ((Node) node.getUserObject()).getInfo();
+              if (aggregate) {
+                showRangeDiff(info);
+                return;
+              }
               final Collection<Change> changes = Optional.ofNullable(commitsDetails.get(info.getCommitId()))
                   .map(VcsFullCommitDetails::getChanges).orElse(new ArrayList<>());
               if (changes.size() != 0) {
@@ -180,7 +276,52 @@ public class PRFileEditor extends FileEditorBase {
     }
     panel.setViewport(viewport);
     loadingPanel.stopLoading();
-    loadingPanel.add(panel);
+  }
+
+  private void showLabel(String text) {
+    JBViewport viewport = new JBViewport();
+    viewport.setView(createLabel(text));
+    panel.setViewport(viewport);
+    loadingPanel.stopLoading();
+  }
+
+  private static JBLabel createLabel(String text) {
+    final JBLabel component = new JBLabel(text, SwingConstants.CENTER);
+    component.setForeground(Gray._105);
+    return component;
+  }
+
+  /**
+   * Shows the diff of a refactoring detected in the whole pull request.
+   * The changes between the base and the head of the pull request are loaded in background once.
+   */
+  private void showRangeDiff(RefactoringInfo info) {
+    if (rangeChanges != null) {
+      DiffWindow.showDiff(rangeChanges, info, project, info.getEntry().getRefactorings());
+      return;
+    }
+    ProgressManager.getInstance().run(new Task.Backgroundable(project, RefactorInsightBundle.message("loading")) {
+      private Collection<Change> changes;
+
+      @Override
+      public void run(@NotNull ProgressIndicator progressIndicator) {
+        VirtualFile root = VcsProjectLog.getInstance(project).getLogManager().getDataManager()
+            .getRoots().iterator().next();
+        try {
+          changes = GitChangeUtils.getDiff(project, root, baseCommit, headCommit, null);
+        } catch (VcsException e) {
+          e.printStackTrace();
+        }
+      }
+
+      @Override
+      public void onSuccess() {
+        if (changes != null) {
+          rangeChanges = changes;
+          DiffWindow.showDiff(rangeChanges, info, project, info.getEntry().getRefactorings());
+        }
+      }
+    });
   }
 
   @Override
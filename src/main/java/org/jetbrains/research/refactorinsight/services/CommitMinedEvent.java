@@ -0,0 +1,77 @@
+package org.jetbrains.research.refactorinsight.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import org.jetbrains.research.refactorinsight.processors.MiningTimer;
+import org.jetbrains.research.refactorinsight.processors.MiningTimer.Phase;
+
+/**
+ * Java Flight Recorder event of the mining of a commit.
+ * It is recorded only when a recording with the event enabled is running.
+ */
+@Name("org.jetbrains.research.refactorinsight.CommitMined")
+@Label("Commit Mined")
+@Category("RefactorInsight")
+@Description("Mining of the refactorings of a commit")
+@StackTrace(false)
+class CommitMinedEvent extends Event {
+  @Label("Commit")
+  String commitId;
+
+  @Label("Mining Time")
+  @Timespan
+  long miningTime;
+
+  @Label("Queue Wait")
+  @Timespan
+  long queueWait;
+
+  @Label("Blob Loading")
+  @Timespan
+  long blobLoading;
+
+  @Label("Java Detection")
+  @Timespan
+  long javaDetection;
+
+  @Label("Kotlin Detection")
+  @Timespan
+  long kotlinDetection;
+
+  @Label("Conversion")
+  @Timespan
+  long conversion;
+
+  @Label("Changed Files")
+  int changedFiles;
+
+  @Label("Changed Characters")
+  long changedCharacters;
+
+  @Label("Timed Out")
+  boolean timedOut;
+
+  static void emit(String commitId, MiningTimer timer, long nanos, boolean timedOut) {
+    CommitMinedEvent event = new CommitMinedEvent();
+    if (!event.isEnabled()) {
+      return;
+    }
+    event.commitId = commitId;
+    event.miningTime = nanos;
+    event.queueWait = timer.get(Phase.QUEUE_WAIT);
+    event.blobLoading = timer.get(Phase.BLOB_LOADING);
+    event.javaDetection = timer.get(Phase.JAVA_DETECTION);
+    event.kotlinDetection = timer.get(Phase.KOTLIN_DETECTION);
+    event.conversion = timer.get(Phase.CONVERSION);
+    event.changedFiles = timer.getFiles();
+    event.changedCharacters = timer.getCharacters();
+    event.timedOut = timedOut;
+    event.commit();
+  }
+}
@@ -1,5 +1,8 @@
 package org.jetbrains.research.refactorinsight.services;
 
+import com.intellij.ide.IdeEventQueue;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.components.ServiceManager;
@@ -9,34 +12,69 @@ import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.xmlb.annotations.OptionTag;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.TimedVcsCommit;
 import com.intellij.vcs.log.VcsCommitMetadata;
-import com.intellij.vcs.log.VcsFullCommitDetails;
+import com.intellij.vcs.log.VcsLogObjectsFactory;
+import com.intellij.vcs.log.impl.HashImpl;
 import git4idea.history.GitHistoryUtils;
 import git4idea.repo.GitRepository;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.FollowFilter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
+import org.jetbrains.research.refactorinsight.data.HistoryIndex;
 import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
 import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.processors.CachingRefactoringMiner;
 import org.jetbrains.research.refactorinsight.processors.CommitMiner;
+import org.jetbrains.research.refactorinsight.processors.MiningScope;
+import org.jetbrains.research.refactorinsight.processors.MiningTimer;
+import org.jetbrains.research.refactorinsight.processors.MultipleCommitsRefactoringTask;
 import org.jetbrains.research.refactorinsight.processors.PRMiningBackgroundableTask;
 import org.jetbrains.research.refactorinsight.processors.SingleCommitRefactoringTask;
+import org.jetbrains.research.refactorinsight.processors.UMLModelCache;
 import org.jetbrains.research.refactorinsight.pullrequests.PRFileEditor;
 import org.jetbrains.research.refactorinsight.ui.windows.GitWindow;
 import org.jetbrains.research.refactorinsight.utils.Utils;
+import org.refactoringminer.api.Refactoring;
 import org.refactoringminer.util.GitServiceImpl;
 
 /**
@@ -48,17 +86,51 @@ import org.refactoringminer.util.GitServiceImpl;
 @State(name = "MiningRefactoringsState",
     storages = {@Storage("refactorings.xml")})
 @Service
-public class MiningService implements PersistentStateComponent<MiningService.MyState> {
+public class MiningService implements PersistentStateComponent<MiningService.MyState>, Disposable {
+
+  private static final int MODEL_CACHE_SIZE = 2000;
+  private static final int HISTORY_SNAPSHOTS = 8;
+  private static final int PREFETCH_IDLE_MILLIS = 2000;
 
-  public static ConcurrentHashMap<String, Set<RefactoringInfo>> methodHistory
-      = new ConcurrentHashMap<>();
   private boolean mining = false;
   private MyState innerState = new MyState();
   private SingleCommitRefactoringTask task = null;
+  private MultipleCommitsRefactoringTask multipleTask = null;
   private PRMiningBackgroundableTask prTask = null;
   private Repository myRepository = null;
+  private final UMLModelCache modelCache = new UMLModelCache(MODEL_CACHE_SIZE);
+  private final AtomicReference<HistoryIndex> methodHistory = new AtomicReference<>(new HistoryIndex());
+  private volatile boolean historyLoaded = false;
+  private final AtomicBoolean historyLoading = new AtomicBoolean();
+  private HistoryIndex savedHistory = null;
+  private final RefactoringSummaries summaries = new RefactoringSummaries();
+  private final MiningStatistics statistics = new MiningStatistics();
+  private final RetryQueue retries = new RetryQueue(this);
+  private final AtomicInteger modificationCount = new AtomicInteger();
+  private final Map<String, Integer> entryVersions = new ConcurrentHashMap<>();
+  private volatile int resetVersion;
+  private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "RefactorInsight prefetch");
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicInteger prefetchGeneration = new AtomicInteger();
+  private final AtomicReference<Future<?>> prefetchRunning = new AtomicReference<>();
+  private final Map<String, HistoryIndex> historySnapshots =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HistoryIndex> eldest) {
+          return size() > HISTORY_SNAPSHOTS;
+        }
+      };
+
+  private final Queue<String> changedCommits = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean historyRebuilding = new AtomicBoolean();
+  private final Project project;
 
-  public MiningService() {
+  public MiningService(Project project) {
+    this.project = project;
   }
 
   public static MiningService getInstance(@NotNull Project project) {
@@ -69,11 +141,44 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
     return mining;
   }
 
+  /**
+   * Returns the state to be saved, and is only meant to be called by the platform to persist it.
+   * The history index is serialized here, and only if it changed since it was last saved,
+   * instead of every time a new snapshot is published.
+   * Use {@link #getRefactoringsMap()} to read or update the mined refactorings.
+   */
   @Override
   public MyState getState() {
+    innerState.retries = retries.toString();
+    synchronized (historySnapshots) {
+      if (historyLoaded) {
+        HistoryIndex index = methodHistory.get();
+        if (index != savedHistory) {
+          innerState.history = index.toString();
+          savedHistory = index;
+        }
+      }
+    }
     return innerState;
   }
 
+  /**
+   * Returns the refactorings mined in each commit, by commit hash.
+   */
+  public ConcurrentMap<String, RefactoringEntry> getRefactoringsMap() {
+    return innerState.refactoringsMap.map;
+  }
+
+  /**
+   * Replaces all the mined refactorings, e.g. with the ones imported from a file.
+   *
+   * @param refactoringsMap the refactorings to be used.
+   */
+  public void setRefactoringsMap(RefactoringsMap refactoringsMap) {
+    innerState.refactoringsMap = refactoringsMap;
+    entriesChanged();
+  }
+
   @Override
   public void loadState(MyState state) {
     if (Utils.version().equals(state.refactoringsMap.version)) {
@@ -82,12 +187,73 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
       innerState = new MyState();
       innerState.refactoringsMap.version = Utils.version();
     }
+    retries.load(innerState.retries);
+    synchronized (historySnapshots) {
+      historyLoaded = false;
+      historyLoading.set(false);
+      savedHistory = null;
+    }
+    entriesChanged();
   }
 
   public Repository getRepository() {
     return myRepository;
   }
 
+  Repository getRepository(Project project) {
+    if (myRepository == null) {
+      myRepository = openRepository(project.getBasePath());
+    }
+    return myRepository;
+  }
+
+  /**
+   * Cache of parsed file models, shared by all the mining tasks of the project.
+   */
+  public UMLModelCache getModelCache() {
+    return modelCache;
+  }
+
+  /**
+   * Statistics of the mining of the project, shown in the mining statistics tool window.
+   */
+  public MiningStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Commits whose mining timed out and that are going to be mined again when the IDE is idle.
+   */
+  public RetryQueue getRetryQueue() {
+    return retries;
+  }
+
+  /**
+   * Stores an empty entry for a commit that could not be mined in time,
+   * and queues the commit to be mined again with a larger time budget.
+   * The entry of a commit that was mined before, or was published just before it was stopped, is kept.
+   *
+   * @param commitId  the commit.
+   * @param parentId  the parent of the commit.
+   * @param timestamp the timestamp of the commit.
+   * @param nanos     the time spent on the commit before it was stopped.
+   * @param timer     the timer of the stopped mining, nothing is stored if its outcome is already recorded.
+   */
+  public void commitTimedOut(String commitId, String parentId, long timestamp, long nanos, MiningTimer timer) {
+    if (!timer.claimOutcome()) {
+      return;
+    }
+    RefactoringEntry refactoringEntry = RefactoringEntry.createEmptyEntry(commitId, parentId, timestamp);
+    refactoringEntry.setTimeout(true);
+    RefactoringEntry stored = innerState.refactoringsMap.map.merge(commitId, refactoringEntry,
+        (existing, timedOut) -> existing.timeout ? timedOut : existing);
+    statistics.commitTimedOut(commitId, timer, nanos);
+    if (stored == refactoringEntry) {
+      retries.timedOut(commitId);
+      entriesChanged(commitId);
+    }
+  }
+
   private static Repository openRepository(final String path) {
     try {
       return new GitServiceImpl().openRepository(path);
@@ -109,7 +275,7 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
     } catch (Exception e) {
       e.printStackTrace();
     } finally {
-      mineRepo(repository, limit);
+      mineRepo(repository, limit, MiningScope.fromSettings(SettingsState.getInstance(repository.getProject())));
     }
   }
 
@@ -119,23 +285,27 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
    * @param repository GitRepository
    */
   public void mineRepo(GitRepository repository) {
-    int limit = SettingsState.getInstance(repository.getProject()).commitLimit;
+    SettingsState settings = SettingsState.getInstance(repository.getProject());
+    int limit = settings.commitLimit;
     try {
       limit = Math.min(Utils.getCommitCount(repository), limit);
     } catch (Exception e) {
       e.printStackTrace();
     } finally {
-      mineRepo(repository, limit);
+      mineRepo(repository, limit, MiningScope.fromSettings(settings));
     }
   }
 
   /**
    * Mine repo with limit.
+   * Only the commits in the scope are mined, and only the refactorings in the files of the scope are detected.
+   * The progress and the estimated remaining time are computed from the number of commits in the scope.
    *
    * @param repository GitRepository
    * @param limit      int
+   * @param scope      the part of the repository to be mined.
    */
-  public void mineRepo(GitRepository repository, int limit) {
+  public void mineRepo(GitRepository repository, int limit, MiningScope scope) {
     if (myRepository == null) {
       myRepository = openRepository(repository.getProject().getBasePath());
     }
@@ -144,6 +314,11 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
 
           public void run(@NotNull ProgressIndicator progressIndicator) {
             mining = true;
+            int commits = countCommits(repository, limit, scope);
+            statistics.startSession(commits);
+            if (repository.getCurrentRevision() != null) {
+              showHistorySnapshot(repository.getCurrentRevision());
+            }
             progressIndicator.setText(RefactorInsightBundle.message("mining"));
             progressIndicator.setIndeterminate(false);
             int cores = SettingsState
@@ -153,17 +328,20 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
             CommitMiner miner =
                 new CommitMiner(pool, innerState.refactoringsMap.map, repository, commitsDone,
                                 progressIndicator,
-                                limit);
+                                commits, scope);
             progressIndicator.checkCanceled();
             try {
-              String logArgs = "--max-count=" + limit;
+              List<String> logArgs = new ArrayList<>();
+              logArgs.add("--max-count=" + limit);
+              logArgs.addAll(scope.logArgs());
               progressIndicator.checkCanceled();
               GitHistoryUtils.loadTimedCommits(repository.getProject(), repository.getRoot(),
-                                               miner, logArgs);
+                                               miner, ArrayUtil.toStringArray(logArgs));
               progressIndicator.checkCanceled();
             } catch (Exception exception) {
               exception.printStackTrace();
             } finally {
+              miner.flush();
               mining = false;
             }
             pool.shutdown();
@@ -172,6 +350,8 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
               pool.awaitTermination(5, TimeUnit.MINUTES);
             } catch (InterruptedException e) {
               e.printStackTrace();
+            } finally {
+              statistics.endSession();
             }
             if (repository.getCurrentRevision() != null) {
               computeRefactoringHistory(repository.getCurrentRevision(), repository.getProject());
@@ -181,6 +361,18 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
         });
   }
 
+  private static int countCommits(GitRepository repository, int limit, MiningScope scope) {
+    if (scope.logArgs().isEmpty()) {
+      return limit;
+    }
+    try {
+      return Math.min(limit, Utils.getCommitCount(repository, scope.logArgs()));
+    } catch (Exception e) {
+      e.printStackTrace();
+      return limit;
+    }
+  }
+
   /**
    * Mine complete git repo for refactorings, and wait to be done.
    *
@@ -199,6 +391,105 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
     }
   }
 
+  /**
+   * Mines the given commits ahead of time, one after another, on a low priority thread,
+   * while the IDE is idle.
+   * A new request replaces the previous one: the commit of the previous request that is being mined is stopped,
+   * and the commits that have not been started yet are skipped.
+   * Every commit gets the same time budget as in `Mine All`, and is queued to be retried if it runs out.
+   *
+   * @param commits  commits to be mined.
+   * @param project  current project.
+   * @param onMined  called on the EDT with the id of each mined commit.
+   */
+  public void prefetch(List<VcsCommitMetadata> commits, Project project, Consumer<String> onMined) {
+    int generation = prefetchGeneration.incrementAndGet();
+    if (myRepository == null) {
+      myRepository = openRepository(project.getBasePath());
+    }
+    for (VcsCommitMetadata commit : commits) {
+      prefetchExecutor.execute(() -> {
+        String commitId = commit.getId().asString();
+        if (!awaitPrefetch(generation, project) || commit.getParents().isEmpty() || containsCommit(commitId)) {
+          return;
+        }
+        String parentId = commit.getParents().get(0).asString();
+        ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "RefactorInsight prefetch worker");
+          thread.setPriority(Thread.MIN_PRIORITY);
+          thread.setDaemon(true);
+          return thread;
+        });
+        long start = System.nanoTime();
+        MiningTimer timer = new MiningTimer();
+        Future<?> future = worker.submit(CommitMiner.mineAtCommit(commitId, parentId, commit.getTimestamp(),
+            innerState.refactoringsMap.map, project, myRepository, timer));
+        prefetchRunning.set(future);
+        try {
+          if (generation == prefetchGeneration.get()) {
+            future.get(CommitMiner.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+          } else {
+            future.cancel(true);
+          }
+        } catch (TimeoutException e) {
+          if (future.cancel(true)) {
+            commitTimedOut(commitId, parentId, commit.getTimestamp(), System.nanoTime() - start, timer);
+          }
+        } catch (CancellationException e) {
+          //the viewport moved while the commit was mined
+        } catch (InterruptedException e) {
+          future.cancel(true);
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          e.printStackTrace();
+        } finally {
+          prefetchRunning.compareAndSet(future, null);
+          worker.shutdown();
+        }
+        if (containsCommit(commitId)) {
+          ApplicationManager.getApplication().invokeLater(() -> onMined.accept(commitId), project.getDisposed());
+        }
+      });
+    }
+  }
+
+  /**
+   * Waits until the IDE is idle before the next commit of a prefetch request is mined.
+   *
+   * @return whether the request is still current and the commit can be mined.
+   */
+  private boolean awaitPrefetch(int generation, Project project) {
+    try {
+      while (generation == prefetchGeneration.get() && !mining && !project.isDisposed()) {
+        long idle = IdeEventQueue.getInstance().getIdleTime();
+        if (idle >= PREFETCH_IDLE_MILLIS) {
+          return true;
+        }
+        Thread.sleep(PREFETCH_IDLE_MILLIS - idle);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  /**
+   * Stops the commit of the last prefetch request that is being mined, and skips the ones not started yet.
+   */
+  public void cancelPrefetch() {
+    prefetchGeneration.incrementAndGet();
+    Future<?> running = prefetchRunning.getAndSet(null);
+    if (running != null) {
+      running.cancel(true);
+    }
+  }
+
+  @Override
+  public void dispose() {
+    prefetchExecutor.shutdownNow();
+    retries.dispose();
+  }
+
   /**
    * Mine refactorings in the specific commit.
    *
@@ -210,6 +501,9 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
     if (task != null) {
       task.cancel();
     }
+    if (multipleTask != null) {
+      multipleTask.cancel();
+    }
     if (myRepository == null) {
       myRepository = openRepository(project.getBasePath());
     }
@@ -218,42 +512,492 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
     ProgressManager.getInstance().run(task);
   }
 
+  /**
+   * Mine refactorings in several commits in parallel, replacing the previous selection.
+   *
+   * @param commits to be mined.
+   * @param project current project.
+   * @param window  to be updated after each mined commit.
+   */
+  public void mineAtCommits(List<VcsCommitMetadata> commits, Project project, GitWindow window) {
+    if (task != null) {
+      task.cancel();
+    }
+    if (multipleTask != null) {
+      multipleTask.cancel();
+    }
+    if (myRepository == null) {
+      myRepository = openRepository(project.getBasePath());
+    }
+
+    multipleTask = new MultipleCommitsRefactoringTask(project, commits, window);
+    ProgressManager.getInstance().run(multipleTask);
+  }
+
+  /**
+   * Returns the key under which the refactorings between two commits are stored.
+   *
+   * @param base the older commit.
+   * @param head the newer commit.
+   */
+  public static String rangeKey(String base, String head) {
+    return base + ".." + head;
+  }
+
+  /**
+   * Returns the commit at which the refactorings stored under the given key are shown.
+   * For a range, that is its newer commit.
+   *
+   * @param key a commit hash or a range key.
+   */
+  public static String commitOfKey(String key) {
+    return key.substring(key.lastIndexOf('.') + 1);
+  }
+
+  /**
+   * Detects the refactorings of a pull request as a whole, with a single diff between its base and its head.
+   * The refactorings are stored under the key of the range.
+   * Only Java code is compared, since kotlinRMiner can only detect the refactorings of a single commit.
+   *
+   * @param base     the commit the pull request is based on.
+   * @param head     the last commit of the pull request.
+   * @param project  current project.
+   * @param onMined  called on the EDT once the refactorings are stored.
+   * @param onFailed called on the EDT with the reason if the refactorings could not be detected.
+   */
+  public void mineRange(String base, String head, Project project, Runnable onMined, Consumer<String> onFailed) {
+    String key = rangeKey(base, head);
+    if (containsCommit(key)) {
+      ApplicationManager.getApplication().invokeLater(onMined, project.getDisposed());
+      return;
+    }
+    if (myRepository == null) {
+      myRepository = openRepository(project.getBasePath());
+    }
+    ProgressManager.getInstance().run(new Task.Backgroundable(project, RefactorInsightBundle.message("mining.range")) {
+      private String error;
+
+      @Override
+      public void run(@NotNull ProgressIndicator progressIndicator) {
+        try (RevWalk walk = new RevWalk(myRepository)) {
+          long timestamp = walk.parseCommit(myRepository.resolve(head)).getCommitTime() * 1000L;
+          List<Refactoring> refactorings = new CachingRefactoringMiner(modelCache)
+              .detectBetween(myRepository, base, head);
+          innerState.refactoringsMap.map.put(key,
+              RefactoringEntry.convertJavaRefactorings(refactorings, head, base, timestamp));
+          entriesChanged(key);
+        } catch (Exception e) {
+          e.printStackTrace();
+          error = String.valueOf(e.getMessage());
+        }
+      }
+
+      @Override
+      public void onFinished() {
+        if (error == null) {
+          onMined.run();
+        } else {
+          onFailed.accept(error);
+        }
+      }
+    });
+  }
+
   /**
    * Runs detection of refactorings in Pull Request.
+   * The returned task mines the commits that are added to it, until it is closed.
    *
-   * @param commitDetails pull request's commits details.
-   * @param project       current project.
-   * @param scrollPane    scrollPane to be updated.
+   * @param commitsCount number of commits in the pull request.
+   * @param project      current project.
+   * @param scrollPane   scrollPane to be updated.
+   * @return the running task.
    */
-  public void mineAtCommitFromPR(List<VcsFullCommitDetails> commitDetails,
-                                 Project project, PRFileEditor scrollPane) {
+  public PRMiningBackgroundableTask mineAtCommitFromPR(int commitsCount, Project project, PRFileEditor scrollPane) {
     if (myRepository == null) {
       myRepository = openRepository(project.getBasePath());
     }
-    prTask = new PRMiningBackgroundableTask(project, commitDetails, scrollPane);
+    prTask = new PRMiningBackgroundableTask(project, commitsCount, scrollPane);
     ProgressManager.getInstance().run(prTask);
+    return prTask;
   }
 
+  /**
+   * Returns the refactoring history of the current tip.
+   * On the EDT, the history is empty until the saved history is restored in the background.
+   */
   public Map<String, Set<RefactoringInfo>> getRefactoringHistory() {
-    return methodHistory;
+    loadHistoryOutsideEdt();
+    return methodHistory.get().getHistory();
+  }
+
+  /**
+   * Checks whether an element with the given simple name may have refactoring history,
+   * without computing its signature.
+   *
+   * @param name the name of a class, method or attribute.
+   */
+  public boolean mightHaveHistory(String name) {
+    return loadHistoryOutsideEdt() && methodHistory.get().mightContain(name);
+  }
+
+  /**
+   * Restores the refactoring history saved with the refactorings on a pooled thread,
+   * so that the first update of an action on the EDT does not have to parse it.
+   */
+  public void loadHistoryInBackground() {
+    if (!historyLoaded && historyLoading.compareAndSet(false, true)) {
+      ApplicationManager.getApplication().executeOnPooledThread(this::loadHistory);
+    }
+  }
+
+  /**
+   * Restores the saved history right away outside of the EDT, or starts restoring it in the background.
+   *
+   * @return whether the history is restored.
+   */
+  private boolean loadHistoryOutsideEdt() {
+    if (historyLoaded) {
+      return true;
+    }
+    if (ApplicationManager.getApplication().isDispatchThread()) {
+      loadHistoryInBackground();
+      return false;
+    }
+    loadHistory();
+    return true;
+  }
+
+  /**
+   * Restores the refactoring history saved with the refactorings, on first access.
+   * It becomes the snapshot of the tip it was computed for.
+   */
+  private void loadHistory() {
+    if (historyLoaded) {
+      return;
+    }
+    synchronized (historySnapshots) {
+      if (!historyLoaded) {
+        HistoryIndex index = HistoryIndex.fromString(innerState.history, this::get);
+        if (index != null) {
+          historySnapshots.put(index.getTip(), index);
+          methodHistory.set(index);
+        }
+        historyLoaded = true;
+      }
+    }
+  }
+
+  /**
+   * Shows the history computed earlier for the given tip, if there is one,
+   * e.g. when switching back to a branch.
+   *
+   * @param tip the current revision.
+   * @return whether there is a snapshot for the tip.
+   */
+  private boolean showHistorySnapshot(@NotNull String tip) {
+    loadHistory();
+    synchronized (historySnapshots) {
+      dropChangedSnapshots();
+      HistoryIndex snapshot = historySnapshots.get(tip);
+      if (snapshot != null) {
+        methodHistory.set(snapshot);
+      }
+      return snapshot != null;
+    }
+  }
+
+  /**
+   * Shows the history of the current revision of a repository after it changed, e.g. after a branch switch.
+   * The snapshot of the revision is shown right away if there is one,
+   * otherwise the history is computed from the mined commits, on top of the snapshot of the nearest ancestor.
+   *
+   * @param repository GitRepository.
+   */
+  public void repositoryChanged(GitRepository repository) {
+    String tip = repository.getCurrentRevision();
+    if (tip == null || tip.equals(methodHistory.get().getTip())) {
+      return;
+    }
+    Runnable update = () -> {
+      if (!showHistorySnapshot(tip) && containsCommit(tip)) {
+        computeRefactoringHistory(tip, repository.getProject());
+      }
+    };
+    if (ApplicationManager.getApplication().isDispatchThread()) {
+      ApplicationManager.getApplication().executeOnPooledThread(update);
+    } else {
+      update.run();
+    }
   }
 
+  /**
+   * Computes the refactoring history snapshot for the given commit and publishes it.
+   * The snapshot is built on top of the snapshot of its nearest indexed ancestor, if there is one,
+   * by adding only the commits mined since. Otherwise the history is rebuilt.
+   * Snapshots that miss commits mined after they were built are rebuilt as well,
+   * and so are the snapshots of commits whose refactorings changed since, e.g. after a retry.
+   *
+   * @param commitId the commit to compute the history for.
+   * @param project  the current project.
+   */
   private void computeRefactoringHistory(@NotNull String commitId, Project project) {
-    List<RefactoringInfo> refs = new ArrayList<>();
-    final SettingsState settingsState = SettingsState.getInstance(project);
-    int limit = settingsState != null ? settingsState.historyLimit : Integer.MAX_VALUE / 100;
-    while (containsCommit(commitId) && limit-- > 0) {
+    loadHistory();
+    synchronized (historySnapshots) {
+      historySnapshots.values().removeIf(snapshot -> snapshot.getMissingAncestor() != null
+          && containsCommit(snapshot.getMissingAncestor()));
+      dropChangedSnapshots();
+      HistoryIndex index = historySnapshots.get(commitId);
+      if (index == null) {
+        final SettingsState settingsState = SettingsState.getInstance(project);
+        int limit = settingsState != null ? settingsState.historyLimit : Integer.MAX_VALUE / 100;
+        index = buildHistory(commitId, limit, true);
+      }
+      publishHistory(commitId, index);
+    }
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Builds the refactoring history of the given commit from its first-parent history.
+   *
+   * @param commitId      the commit to build the history for.
+   * @param limit         maximum number of commits to add.
+   * @param fromSnapshots whether to build on top of the snapshot of the nearest indexed ancestor.
+   * @return the history.
+   */
+  private HistoryIndex buildHistory(String commitId, int limit, boolean fromSnapshots) {
+    List<RefactoringEntry> entries = new ArrayList<>();
+    while (commitId != null && containsCommit(commitId)
+        && !(fromSnapshots && historySnapshots.containsKey(commitId)) && limit-- > 0) {
       RefactoringEntry refactoringEntry = get(commitId);
       assert refactoringEntry != null;
-      refs.addAll(refactoringEntry.getRefactorings());
+      entries.add(refactoringEntry);
       commitId = refactoringEntry.getParent();
     }
-    Collections.reverse(refs);
-    methodHistory.clear();
-    refs.forEach(r -> r.addToHistory(methodHistory));
-    synchronized (this) {
-      notifyAll();
+    HistoryIndex base = commitId == null || !fromSnapshots ? null : historySnapshots.get(commitId);
+    HistoryIndex index;
+    if (base != null) {
+      index = base.copy();
+    } else {
+      index = new HistoryIndex();
+      index.setMissingAncestor(commitId != null && !containsCommit(commitId) ? commitId : null);
+    }
+    Collections.reverse(entries);
+    entries.forEach(index::addCommit);
+    return index;
+  }
+
+  /**
+   * Drops the snapshots that index a commit whose refactorings changed since they were built.
+   * Called with the lock of the snapshots held.
+   */
+  private void dropChangedSnapshots() {
+    List<String> changed = new ArrayList<>();
+    for (String commitId = changedCommits.poll(); commitId != null; commitId = changedCommits.poll()) {
+      changed.add(commitId);
+    }
+    dropSnapshots(historySnapshots, changed);
+  }
+
+  /**
+   * Drops the snapshots whose first-parent walk includes any of the given commits.
+   *
+   * @param snapshots the snapshots by tip.
+   * @param commits   the commits whose refactorings changed.
+   */
+  static void dropSnapshots(Map<String, HistoryIndex> snapshots, Collection<String> commits) {
+    if (!commits.isEmpty()) {
+      snapshots.values().removeIf(snapshot -> commits.stream().anyMatch(snapshot::containsCommit));
+    }
+  }
+
+  private void publishHistory(String commitId, HistoryIndex index) {
+    historySnapshots.put(commitId, index);
+    methodHistory.set(index);
+  }
+
+  /**
+   * Extends the history of the current tip with one more page of older commits.
+   * Mines up to `historyLimit` first-parent commits below the oldest commit in the history,
+   * then adds their history to a copy of the current snapshot, without walking the commits already indexed.
+   *
+   * @param repository GitRepository.
+   * @param onLoaded   called on the EDT once the older history is published.
+   */
+  public void loadOlderHistory(GitRepository repository, Runnable onLoaded) {
+    Project project = repository.getProject();
+    if (myRepository == null) {
+      myRepository = openRepository(project.getBasePath());
+    }
+    ProgressManager.getInstance()
+        .run(new Task.Backgroundable(project, RefactorInsightBundle.message("mining.history"), true) {
+
+          public void run(@NotNull ProgressIndicator progressIndicator) {
+            HistoryIndex index = methodHistory.get();
+            String tip = index.getTip();
+            if (tip == null) {
+              return;
+            }
+            String from = index.getAncestor() != null ? index.getAncestor() : findAncestor(index);
+            if (from == null) {
+              return;
+            }
+
+            SettingsState settings = SettingsState.getInstance(project);
+            int pageSize = settings.historyLimit;
+            ExecutorService pool = Executors.newFixedThreadPool(settings.threads);
+            CommitMiner miner = new CommitMiner(pool, innerState.refactoringsMap.map, repository,
+                                                new AtomicInteger(0), progressIndicator, pageSize, MiningScope.ALL);
+            try {
+              GitHistoryUtils.loadTimedCommits(project, repository.getRoot(), miner,
+                                               from, "--first-parent", "--max-count=" + pageSize);
+            } catch (Exception exception) {
+              exception.printStackTrace();
+            } finally {
+              miner.flush();
+            }
+            pool.shutdown();
+            try {
+              pool.awaitTermination(5, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+              e.printStackTrace();
+            }
+
+            HistoryIndex older = buildHistory(from, pageSize, false);
+            if (older.getDepth() == 0) {
+              return;
+            }
+            synchronized (historySnapshots) {
+              if (methodHistory.get() != index) {
+                return;
+              }
+              HistoryIndex extended = index.copy();
+              extended.addOlder(older);
+              publishHistory(tip, extended);
+            }
+            ApplicationManager.getApplication().invokeLater(onLoaded, project.getDisposed());
+          }
+        });
+  }
+
+  /**
+   * Finds the parent of the oldest commit of an index saved without it, by walking its commits.
+   */
+  private String findAncestor(HistoryIndex index) {
+    String oldest = index.getTip();
+    for (int i = 1; i < index.getDepth() && containsCommit(oldest); i++) {
+      oldest = get(oldest).getParent();
+      if (oldest == null) {
+        return null;
+      }
+    }
+    return containsCommit(oldest) ? get(oldest).getParent() : oldest;
+  }
+
+  /**
+   * Mines the history of a single file, without mining the rest of the repository.
+   * Walks only the commits that changed the file, following its renames, and mines them
+   * on a pool of its own, ahead of the prefetching.
+   * The history of the file is computed from those commits alone, and is published
+   * every time more of them are mined.
+   * The configured scope does not apply: the file was selected explicitly, and may be outside of the scope.
+   *
+   * @param repository GitRepository.
+   * @param path       the path of the file, relative to the root of the repository.
+   * @param onUpdate   called on the EDT with the history of the file and whether all its commits are mined,
+   *                   unless the commits of the file cannot be read, which is reported to the user instead.
+   */
+  public void mineFileHistory(GitRepository repository, String path,
+                              BiConsumer<Map<String, Set<RefactoringInfo>>, Boolean> onUpdate) {
+    Project project = repository.getProject();
+    cancelPrefetch();
+    ProgressManager.getInstance().run(new Task.Backgroundable(project,
+        String.format(RefactorInsightBundle.message("mining.file.history"), path), true) {
+
+      public void run(@NotNull ProgressIndicator progressIndicator) {
+        List<TimedVcsCommit> commits;
+        try {
+          commits = loadFileCommits(project, getRepository(project), path);
+        } catch (Exception e) {
+          e.printStackTrace();
+          ApplicationManager.getApplication().invokeLater(() -> Messages.showErrorDialog(project,
+              String.format(RefactorInsightBundle.message("file.history.failed"), path, e.getMessage()),
+              RefactorInsightBundle.message("name")), project.getDisposed());
+          return;
+        }
+        progressIndicator.setIndeterminate(false);
+        ExecutorService pool = Executors.newFixedThreadPool(SettingsState.getInstance(project).threads,
+            runnable -> {
+              Thread thread = new Thread(runnable, "RefactorInsight file history");
+              thread.setPriority(Thread.NORM_PRIORITY + 1);
+              return thread;
+            });
+        CommitMiner miner = new CommitMiner(pool, innerState.refactoringsMap.map, repository,
+                                            new AtomicInteger(0), progressIndicator, commits.size(),
+                                            MiningScope.ALL);
+        try {
+          commits.forEach(miner::consume);
+        } finally {
+          miner.flush();
+          pool.shutdown();
+        }
+
+        int published = -1;
+        try {
+          do {
+            int count = modificationCount.get();
+            if (count != published) {
+              published = count;
+              publishFileHistory(project, commits, false, onUpdate);
+            }
+          } while (!pool.awaitTermination(1, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          e.printStackTrace();
+        }
+        publishFileHistory(project, commits, true, onUpdate);
+      }
+    });
+  }
+
+  /**
+   * Returns the commits that changed a file, from the newest to the oldest, following the renames of the file.
+   * The commits are read from a separate walk, because the walk that follows the file rewrites their parents.
+   */
+  private List<TimedVcsCommit> loadFileCommits(Project project, Repository repo, String path)
+      throws IOException {
+    List<String> ids = new ArrayList<>();
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.setTreeFilter(FollowFilter.create(path, repo.getConfig().get(DiffConfig.KEY)));
+      walk.markStart(walk.parseCommit(repo.resolve(Constants.HEAD)));
+      walk.forEach(commit -> ids.add(commit.getName()));
+    }
+    VcsLogObjectsFactory factory = project.getService(VcsLogObjectsFactory.class);
+    List<TimedVcsCommit> commits = new ArrayList<>();
+    try (RevWalk walk = new RevWalk(repo)) {
+      for (String id : ids) {
+        RevCommit commit = walk.parseCommit(ObjectId.fromString(id));
+        List<Hash> parents = Arrays.stream(commit.getParents())
+            .map(parent -> HashImpl.build(parent.getName()))
+            .collect(Collectors.toList());
+        commits.add(factory.createTimedCommit(HashImpl.build(id), parents, commit.getCommitTime() * 1000L));
+      }
+    }
+    return commits;
+  }
+
+  private void publishFileHistory(Project project, List<TimedVcsCommit> commits, boolean done,
+                                  BiConsumer<Map<String, Set<RefactoringInfo>>, Boolean> onUpdate) {
+    HistoryIndex index = new HistoryIndex();
+    for (int i = commits.size() - 1; i >= 0; i--) {
+      RefactoringEntry entry = get(commits.get(i).getId().asString());
+      if (entry != null) {
+        index.addCommit(entry);
+      }
     }
+    ApplicationManager.getApplication()
+        .invokeLater(() -> onUpdate.accept(index.getHistory(), done), project.getDisposed());
   }
 
   public RefactoringEntry get(String commitHash) {
@@ -269,13 +1013,75 @@ public class MiningService implements PersistentStateComponent<MiningService.MyS
         && innerState.refactoringsMap.map.get(commitHash).getRefactorings().size() != 0;
   }
 
+  /**
+   * Returns the summary of the refactorings detected in a commit.
+   *
+   * @param commitIndex index of the commit in the VCS log.
+   * @param commitHash  supplies the hash of the commit, if its summary is not known.
+   * @return the summary, or null if no refactorings were detected in the commit.
+   */
+  public RefactoringSummaries.Summary getSummary(int commitIndex, Supplier<String> commitHash) {
+    return summaries.get(commitIndex, commitHash, this::get);
+  }
+
+  /**
+   * Returns a version of the refactorings of a commit, which changes whenever they are added or changed.
+   * An entry is stored before its version changes, so reading the version before the entry
+   * never pairs a new version with an old entry.
+   *
+   * @param commitId the commit.
+   */
+  public int getEntryVersion(String commitId) {
+    return entryVersions.getOrDefault(commitId, resetVersion);
+  }
+
+  /**
+   * Notifies that the refactorings of any commit may have been added or changed.
+   */
+  public void entriesChanged() {
+    resetVersion = modificationCount.incrementAndGet();
+    entryVersions.clear();
+    summaries.clear();
+  }
+
+  /**
+   * Notifies that the refactorings of a commit were added or changed.
+   * The history snapshots that index the commit are dropped the next time a snapshot is looked up,
+   * and the shown history is rebuilt in the background if it indexes the commit.
+   *
+   * @param commitId the commit.
+   */
+  public void entriesChanged(String commitId) {
+    entryVersions.put(commitId, modificationCount.incrementAndGet());
+    summaries.invalidate(commitId);
+    changedCommits.add(commitId);
+    if (methodHistory.get().containsCommit(commitId) && historyRebuilding.compareAndSet(false, true)) {
+      ApplicationManager.getApplication().executeOnPooledThread(() -> {
+        historyRebuilding.set(false);
+        String tip = methodHistory.get().getTip();
+        if (tip != null && !project.isDisposed()) {
+          computeRefactoringHistory(tip, project);
+        }
+      });
+    }
+  }
+
   public void clear() {
     innerState.refactoringsMap.map.clear();
+    entriesChanged();
+    synchronized (historySnapshots) {
+      historySnapshots.clear();
+    }
+    methodHistory.set(new HistoryIndex());
+    innerState.history = "";
+    retries.clear();
   }
 
   public static class MyState {
     @OptionTag(converter = RefactoringsMapConverter.class)
     public RefactoringsMap refactoringsMap = new RefactoringsMap();
+    public String history = "";
+    public String retries = "";
   }
 
 }
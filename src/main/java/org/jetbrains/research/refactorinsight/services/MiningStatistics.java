@@ -0,0 +1,245 @@
+package org.jetbrains.research.refactorinsight.services;
+
+import com.intellij.openapi.project.Project;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.processors.MiningTimer;
+import org.jetbrains.research.refactorinsight.processors.MiningTimer.Phase;
+
+/**
+ * Statistics of the mining of the project: the time spent in each phase, the depth of the mining queue,
+ * the throughput of the current `Mine All` session, the number of timeouts and the slowest commits.
+ * Every mined commit and every correction of ranges are also emitted as events to Java Flight Recorder.
+ */
+public class MiningStatistics {
+  private static final int SLOWEST_COMMITS = 20;
+
+  private final Map<Phase, Long> phases = new EnumMap<>(Phase.class);
+  private final PriorityQueue<CommitStatistics> slowest =
+      new PriorityQueue<>(Comparator.comparingLong(CommitStatistics::getNanos));
+  private int minedCommits = 0;
+  private int timeouts = 0;
+  private int queueDepth = 0;
+  private int corrections = 0;
+  private long correctionNanos = 0;
+  private long sessionStart = -1;
+  private int sessionCommits = 0;
+  private int sessionMined = 0;
+  private int sessionDone = 0;
+
+  /**
+   * Starts a session of mining a fixed number of commits.
+   *
+   * @param commits the number of commits to be mined.
+   */
+  public synchronized void startSession(int commits) {
+    sessionStart = System.nanoTime();
+    sessionCommits = commits;
+    sessionMined = 0;
+    sessionDone = 0;
+  }
+
+  /**
+   * Ends the current session. The commits that were not started are no longer queued.
+   */
+  public synchronized void endSession() {
+    sessionStart = -1;
+    queueDepth = 0;
+  }
+
+  /**
+   * Updates the number of commits of the session that are mined or were already mined.
+   */
+  public synchronized void sessionProgress(int done) {
+    sessionDone = done;
+  }
+
+  public synchronized void enqueued(int commits) {
+    queueDepth += commits;
+  }
+
+  public synchronized void dequeued() {
+    queueDepth = Math.max(0, queueDepth - 1);
+  }
+
+  /**
+   * Records a mined commit.
+   *
+   * @param commitId the commit.
+   * @param timer    the time spent in each phase.
+   * @param nanos    the time spent on the commit, without waiting in the queue.
+   */
+  public void commitMined(String commitId, MiningTimer timer, long nanos) {
+    synchronized (this) {
+      for (Phase phase : Phase.values()) {
+        phases.merge(phase, timer.get(phase), Long::sum);
+      }
+      minedCommits++;
+      if (sessionStart >= 0) {
+        sessionMined++;
+      }
+      addSlowest(new CommitStatistics(commitId, nanos, timer, false));
+    }
+    CommitMinedEvent.emit(commitId, timer, nanos, false);
+  }
+
+  /**
+   * Records a commit whose mining was stopped after the timeout.
+   *
+   * @param commitId the commit.
+   * @param timer    the time spent in each phase before the commit was stopped.
+   * @param nanos    the time spent on the commit before it was stopped.
+   */
+  public void commitTimedOut(String commitId, MiningTimer timer, long nanos) {
+    synchronized (this) {
+      timeouts++;
+      if (sessionStart >= 0) {
+        sessionMined++;
+      }
+      addSlowest(new CommitStatistics(commitId, nanos, timer, true));
+    }
+    CommitMinedEvent.emit(commitId, timer, nanos, true);
+  }
+
+  /**
+   * Corrects the ranges of a refactoring if needed, and records the time spent on the correction.
+   *
+   * @param info    the refactoring.
+   * @param project the current project.
+   */
+  public void correct(RefactoringInfo info, Project project) {
+    if (!info.needsCorrection()) {
+      info.correctIfNeeded(project);
+      return;
+    }
+    RangesCorrectedEvent event = new RangesCorrectedEvent();
+    event.begin();
+    long start = System.nanoTime();
+    info.correctIfNeeded(project);
+    long nanos = System.nanoTime() - start;
+    event.end();
+    if (event.shouldCommit()) {
+      event.commitId = info.getCommitId();
+      event.refactoringType = info.getType().getName();
+      event.commit();
+    }
+    synchronized (this) {
+      corrections++;
+      correctionNanos += nanos;
+    }
+  }
+
+  private void addSlowest(CommitStatistics commit) {
+    slowest.add(commit);
+    if (slowest.size() > SLOWEST_COMMITS) {
+      slowest.poll();
+    }
+  }
+
+  public synchronized long getPhaseNanos(Phase phase) {
+    return phases.getOrDefault(phase, 0L);
+  }
+
+  public synchronized int getMinedCommits() {
+    return minedCommits;
+  }
+
+  public synchronized int getTimeouts() {
+    return timeouts;
+  }
+
+  public synchronized int getQueueDepth() {
+    return queueDepth;
+  }
+
+  public synchronized int getCorrections() {
+    return corrections;
+  }
+
+  public synchronized long getCorrectionNanos() {
+    return correctionNanos;
+  }
+
+  public synchronized boolean isSessionRunning() {
+    return sessionStart >= 0;
+  }
+
+  public synchronized int getSessionCommits() {
+    return sessionCommits;
+  }
+
+  public synchronized int getSessionDone() {
+    return sessionDone;
+  }
+
+  /**
+   * Returns the number of commits mined per second in the current session.
+   */
+  public synchronized double getThroughput() {
+    if (sessionStart < 0) {
+      return 0;
+    }
+    double seconds = (System.nanoTime() - sessionStart) / 1e9;
+    return seconds > 0 ? sessionMined / seconds : 0;
+  }
+
+  /**
+   * Returns the estimated number of seconds until the current session is done, or -1 if it is unknown.
+   */
+  public synchronized long getRemainingSeconds() {
+    double throughput = getThroughput();
+    if (throughput <= 0) {
+      return -1;
+    }
+    return Math.round(Math.max(0, sessionCommits - sessionDone) / throughput);
+  }
+
+  /**
+   * Returns the slowest mined commits, the slowest first.
+   */
+  public synchronized List<CommitStatistics> getSlowestCommits() {
+    List<CommitStatistics> commits = new ArrayList<>(slowest);
+    commits.sort(Comparator.comparingLong(CommitStatistics::getNanos).reversed());
+    return commits;
+  }
+
+  /**
+   * Mining time and diff size of a single commit.
+   */
+  public static class CommitStatistics {
+    private final String commitId;
+    private final long nanos;
+    private final MiningTimer timer;
+    private final boolean timedOut;
+
+    CommitStatistics(String commitId, long nanos, MiningTimer timer, boolean timedOut) {
+      this.commitId = commitId;
+      this.nanos = nanos;
+      this.timer = timer;
+      this.timedOut = timedOut;
+    }
+
+    public String getCommitId() {
+      return commitId;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+
+    public MiningTimer getTimer() {
+      return timer;
+    }
+
+    public boolean isTimedOut() {
+      return timedOut;
+    }
+  }
+}
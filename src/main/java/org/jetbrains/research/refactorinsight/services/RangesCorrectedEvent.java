@@ -0,0 +1,24 @@
+package org.jetbrains.research.refactorinsight.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of the correction of the ranges of a refactoring against the file contents.
+ */
+@Name("org.jetbrains.research.refactorinsight.RangesCorrected")
+@Label("Ranges Corrected")
+@Category("RefactorInsight")
+@Description("Correction of the ranges of a refactoring the first time it is shown")
+@StackTrace(false)
+class RangesCorrectedEvent extends Event {
+  @Label("Commit")
+  String commitId;
+
+  @Label("Refactoring Type")
+  String refactoringType;
+}
@@ -0,0 +1,109 @@
+package org.jetbrains.research.refactorinsight.services;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
+import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+
+/**
+ * Summaries of the refactorings detected in each commit, indexed by the commit index of the VCS log.
+ * A summary holds the number of refactorings detected in the commit, including the ones combined into others,
+ * and the most frequent refactoring type.
+ * Summaries are computed from the refactoring entries once, and a summary is recomputed only after its commit is mined.
+ * The summaries are immutable and read without locking, so painting the log never waits for mining.
+ */
+public class RefactoringSummaries {
+  private static final Summary NONE = new Summary(0, null);
+
+  private final Map<Integer, Summary> summaries = new ConcurrentHashMap<>();
+  private final Map<String, Integer> commitIndices = new ConcurrentHashMap<>();
+  private final AtomicInteger generation = new AtomicInteger();
+
+  /**
+   * Returns the summary of a commit.
+   *
+   * @param commitIndex index of the commit in the VCS log.
+   * @param commitHash  supplies the hash of the commit, if the summary is not known.
+   * @param entries     the refactorings of each mined commit.
+   * @return the summary, or null if no refactorings were detected in the commit.
+   */
+  public Summary get(int commitIndex, Supplier<String> commitHash, Function<String, RefactoringEntry> entries) {
+    Summary summary = summaries.get(commitIndex);
+    if (summary == null) {
+      int observed = generation.get();
+      String hash = commitHash.get();
+      commitIndices.put(hash, commitIndex);
+      summary = compute(entries.apply(hash));
+      summaries.put(commitIndex, summary);
+      //a summary computed from an entry that changed meanwhile is computed again on the next paint
+      if (generation.get() != observed) {
+        summaries.remove(commitIndex, summary);
+      }
+    }
+    return summary == NONE ? null : summary;
+  }
+
+  /**
+   * Forgets the summary of a commit that was mined again.
+   *
+   * @param commitHash the commit.
+   */
+  public void invalidate(String commitHash) {
+    generation.incrementAndGet();
+    Integer commitIndex = commitIndices.get(commitHash);
+    if (commitIndex != null) {
+      summaries.remove(commitIndex);
+    }
+  }
+
+  /**
+   * Forgets all the summaries, e.g. after the refactorings are cleared.
+   */
+  public void clear() {
+    generation.incrementAndGet();
+    summaries.clear();
+    commitIndices.clear();
+  }
+
+  private static Summary compute(RefactoringEntry entry) {
+    if (entry == null || entry.getRefactorings().isEmpty()) {
+      return NONE;
+    }
+    Map<RefactoringType, Integer> frequencies = new EnumMap<>(RefactoringType.class);
+    RefactoringType mainType = null;
+    for (RefactoringInfo info : entry.getRefactorings()) {
+      int frequency = frequencies.merge(info.getType(), 1, Integer::sum);
+      if (mainType == null || frequency > frequencies.get(mainType)) {
+        mainType = info.getType();
+      }
+    }
+    return new Summary(entry.getRefactorings().size(), mainType);
+  }
+
+  /**
+   * Number of refactorings in a commit and its most frequent refactoring type.
+   */
+  public static class Summary {
+    private final int count;
+    private final RefactoringType mainType;
+
+    public Summary(int count, RefactoringType mainType) {
+      this.count = count;
+      this.mainType = mainType;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public RefactoringType getMainType() {
+      return mainType;
+    }
+  }
+}
@@ -31,7 +31,7 @@ public class RefactoringsMapConverter extends Converter<RefactoringsMap> {
       return new RefactoringsMap(Arrays.stream(tokens[1].split(regex1))
           .map(entry -> entry.split(regex2))
           .collect(Collectors.toConcurrentMap(entry -> entry[0],
-              entry -> RefactoringEntry.fromString(entry[1], entry[0]))), tokens[0]);
+              entry -> RefactoringEntry.fromString(entry[1], MiningService.commitOfKey(entry[0])))), tokens[0]);
     } catch (Exception e) {
       return new RefactoringsMap(new ConcurrentHashMap<>(), "-1");
     }
@@ -0,0 +1,195 @@
+package org.jetbrains.research.refactorinsight.services;
+
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.FRAG;
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.LIST;
+import static org.jetbrains.research.refactorinsight.utils.StringUtils.delimiter;
+
+import com.intellij.ide.IdeEventQueue;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
+import org.jetbrains.research.refactorinsight.processors.CommitMiner;
+import org.jetbrains.research.refactorinsight.processors.MiningTimer;
+
+/**
+ * The commits whose mining timed out, to be mined again when the IDE is idle.
+ * Every attempt gets twice the time budget of the previous one,
+ * and a commit is given up after a maximum number of attempts.
+ * The queue is saved together with the refactorings, so that the retries continue after a restart.
+ */
+public class RetryQueue {
+  private static final long FIRST_BUDGET_SECONDS = 120;
+  private static final int MAX_ATTEMPTS = 4;
+  private static final int IDLE_MILLIS = 30_000;
+
+  private final MiningService service;
+  private final Map<String, Integer> attempts = new LinkedHashMap<>();
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "RefactorInsight retry");
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.setDaemon(true);
+    return thread;
+  });
+  private Runnable idleListener = null;
+
+  RetryQueue(MiningService service) {
+    this.service = service;
+  }
+
+  /**
+   * Restores the queue saved with the refactorings.
+   *
+   * @param value the saved queue.
+   */
+  synchronized void load(String value) {
+    attempts.clear();
+    if (value == null || value.isEmpty()) {
+      return;
+    }
+    for (String commit : value.split(delimiter(LIST, true))) {
+      String[] tokens = commit.split(delimiter(FRAG, true), -1);
+      if (tokens.length == 2) {
+        attempts.put(tokens[0], Integer.parseInt(tokens[1]));
+      }
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return attempts.entrySet().stream()
+        .map(e -> e.getKey() + delimiter(FRAG) + e.getValue())
+        .collect(Collectors.joining(delimiter(LIST)));
+  }
+
+  /**
+   * Records a timed out attempt to mine a commit.
+   * The commit is queued again, unless it has reached the maximum number of attempts.
+   *
+   * @param commitId the commit.
+   */
+  synchronized void timedOut(String commitId) {
+    int attempt = attempts.getOrDefault(commitId, 0) + 1;
+    if (attempt < MAX_ATTEMPTS) {
+      attempts.put(commitId, attempt);
+    } else {
+      attempts.remove(commitId);
+    }
+  }
+
+  private synchronized void remove(String commitId) {
+    attempts.remove(commitId);
+  }
+
+  /**
+   * Checks whether a commit that timed out is going to be mined again.
+   *
+   * @param commitId the commit.
+   */
+  public synchronized boolean isPending(String commitId) {
+    return attempts.containsKey(commitId);
+  }
+
+  private synchronized Map.Entry<String, Integer> next() {
+    if (attempts.isEmpty()) {
+      return null;
+    }
+    Map.Entry<String, Integer> first = attempts.entrySet().iterator().next();
+    return Map.entry(first.getKey(), first.getValue());
+  }
+
+  synchronized void clear() {
+    attempts.clear();
+  }
+
+  /**
+   * Starts mining the queued commits whenever the IDE has been idle for a while.
+   *
+   * @param project the current project.
+   */
+  public void schedule(Project project) {
+    ApplicationManager.getApplication().invokeLater(() -> {
+      if (idleListener == null) {
+        idleListener = () -> retry(project);
+        IdeEventQueue.getInstance().addIdleListener(idleListener, IDLE_MILLIS);
+      }
+    }, project.getDisposed());
+  }
+
+  /**
+   * Mines the queued commits one by one, as long as the IDE stays idle.
+   */
+  private void retry(Project project) {
+    if (!running.compareAndSet(false, true)) {
+      return;
+    }
+    executor.execute(() -> {
+      try {
+        Map.Entry<String, Integer> commit;
+        while ((commit = next()) != null && !project.isDisposed() && !service.isMining()
+            && !Thread.currentThread().isInterrupted()
+            && IdeEventQueue.getInstance().getIdleTime() >= IDLE_MILLIS) {
+          attempt(commit.getKey(), commit.getValue(), project);
+        }
+      } finally {
+        running.set(false);
+      }
+    });
+  }
+
+  private void attempt(String commitId, int attempt, Project project) {
+    RefactoringEntry entry = service.get(commitId);
+    if (entry == null || !entry.timeout) {
+      //mined in the meantime
+      remove(commitId);
+      return;
+    }
+    ExecutorService worker = Executors.newSingleThreadExecutor();
+    long start = System.nanoTime();
+    MiningTimer timer = new MiningTimer();
+    Future<?> future = worker.submit(CommitMiner.mineAtCommit(commitId, entry.getParent(), entry.getTimeStamp(),
+        service.getRefactoringsMap(), project, service.getRepository(project), timer));
+    try {
+      future.get(FIRST_BUDGET_SECONDS << attempt, TimeUnit.SECONDS);
+      remove(commitId);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      service.commitTimedOut(commitId, entry.getParent(), entry.getTimeStamp(), System.nanoTime() - start, timer);
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      e.printStackTrace();
+      remove(commitId);
+    } finally {
+      worker.shutdown();
+    }
+    ApplicationManager.getApplication()
+        .invokeLater(() -> WindowService.getInstance(project).refresh(commitId), project.getDisposed());
+  }
+
+  /**
+   * Stops the retries.
+   */
+  void dispose() {
+    executor.shutdownNow();
+    ApplicationManager.getApplication().invokeLater(() -> {
+      if (idleListener != null) {
+        IdeEventQueue.getInstance().removeIdleListener(idleListener);
+        idleListener = null;
+      }
+    });
+  }
+}
@@ -44,7 +44,12 @@ public class SettingsConfigurable implements Configurable {
     SettingsState settings = SettingsState.getInstance(project);
     return !(mySettingsComponent.getCommitLimit() == settings.commitLimit
         && mySettingsComponent.getHistoryLimit() == settings.historyLimit
-        && mySettingsComponent.getThreads() == settings.threads);
+        && mySettingsComponent.getThreads() == settings.threads
+        && mySettingsComponent.getPrefetchWindow() == settings.prefetchWindow
+        && mySettingsComponent.getScopePaths().equals(settings.scopePaths)
+        && mySettingsComponent.getScopeSince().equals(settings.scopeSince)
+        && mySettingsComponent.getScopeUntil().equals(settings.scopeUntil)
+        && mySettingsComponent.getScopeAuthors().equals(settings.scopeAuthors));
   }
 
   @Override
@@ -53,6 +58,11 @@ public class SettingsConfigurable implements Configurable {
     settings.commitLimit = mySettingsComponent.getCommitLimit();
     settings.historyLimit = mySettingsComponent.getHistoryLimit();
     settings.threads = mySettingsComponent.getThreads();
+    settings.prefetchWindow = mySettingsComponent.getPrefetchWindow();
+    settings.scopePaths = mySettingsComponent.getScopePaths();
+    settings.scopeSince = mySettingsComponent.getScopeSince();
+    settings.scopeUntil = mySettingsComponent.getScopeUntil();
+    settings.scopeAuthors = mySettingsComponent.getScopeAuthors();
     List<GitRepository> repositories = GitRepositoryManager
         .getInstance(project).getRepositories();
     if (repositories.isEmpty()) {
@@ -67,6 +77,11 @@ public class SettingsConfigurable implements Configurable {
     mySettingsComponent.setCommitLimit(settings.commitLimit);
     mySettingsComponent.setHistoryLimit(settings.historyLimit);
     mySettingsComponent.setThreads(settings.threads);
+    mySettingsComponent.setPrefetchWindow(settings.prefetchWindow);
+    mySettingsComponent.setScopePaths(settings.scopePaths);
+    mySettingsComponent.setScopeSince(settings.scopeSince);
+    mySettingsComponent.setScopeUntil(settings.scopeUntil);
+    mySettingsComponent.setScopeAuthors(settings.scopeAuthors);
   }
 
   @Override
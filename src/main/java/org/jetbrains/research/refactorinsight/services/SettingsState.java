@@ -23,6 +23,11 @@ public class SettingsState implements PersistentStateComponent<SettingsState> {
   public int commitLimit = 100;
   public int historyLimit = 100;
   public int threads = 8;
+  public int prefetchWindow = 10;
+  public String scopePaths = "";
+  public String scopeSince = "";
+  public String scopeUntil = "";
+  public String scopeAuthors = "";
 
   public static SettingsState getInstance(Project project) {
     return ServiceManager.getService(project, SettingsState.class);
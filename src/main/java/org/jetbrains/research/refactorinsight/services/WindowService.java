@@ -46,6 +46,15 @@ public class WindowService {
     return gitInfo.containsKey(table) && gitInfo.get(table).isSelected();
   }
 
+  /**
+   * Updates the refactoring views of all the VCS log tabs after a commit is mined.
+   *
+   * @param commitId the mined commit.
+   */
+  public void refresh(String commitId) {
+    gitInfo.values().forEach(window -> window.refresh(commitId));
+  }
+
   /**
    * Generates if needed a GitWindow (RefactorInsight) object.
    * @param e Event
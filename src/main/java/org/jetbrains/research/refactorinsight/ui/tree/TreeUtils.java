@@ -170,6 +170,29 @@ public class TreeUtils {
    * @return Swing Tree visualisation of refactorings in this entry.
    */
   public static Tree buildTree(List<RefactoringInfo> refactorings) {
+    return buildTree(buildTreeRoot(refactorings));
+  }
+
+  /**
+   * Builds a UI tree from the nodes built by {@link #buildTreeRoot(List)}.
+   *
+   * @param root the root of the refactorings tree.
+   * @return Swing Tree visualisation of the refactorings.
+   */
+  public static Tree buildTree(DefaultMutableTreeNode root) {
+    Tree tree = new Tree(root);
+    tree.setRootVisible(false);
+    expandAllNodes(tree, 0, tree.getRowCount());
+    return tree;
+  }
+
+  /**
+   * Builds the nodes of the refactorings tree.
+   * Does not create any UI component, so it can be called off the EDT.
+   *
+   * @return the root of the refactorings tree.
+   */
+  public static DefaultMutableTreeNode buildTreeRoot(List<RefactoringInfo> refactorings) {
     Map<DisplayedGroup, DefaultMutableTreeNode> groups = new EnumMap<>(DisplayedGroup.class);
     DefaultMutableTreeNode root =
         new DefaultMutableTreeNode(refactorings.isEmpty() ? "" : refactorings.get(0).getCommitId());
@@ -182,9 +205,6 @@ public class TreeUtils {
         }).add(makeNode(info));
       }
     });
-    Tree tree = new Tree(root);
-    tree.setRootVisible(false);
-    expandAllNodes(tree, 0, tree.getRowCount());
-    return tree;
+    return root;
   }
 }
@@ -9,12 +9,15 @@ import javax.swing.JTree;
 import javax.swing.tree.DefaultMutableTreeNode;
 import icons.RefactorInsightIcons;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
 import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
 import org.jetbrains.research.refactorinsight.ui.tree.Node;
 import org.jetbrains.research.refactorinsight.ui.tree.NodeType;
 
 public class HistoryToolbarRenderer extends ColoredTreeCellRenderer {
 
+  public static final String LOADING = RefactorInsightBundle.message("loading");
+
   private CellIconFactory factory = new CellIconFactory();
 
   /**
@@ -48,6 +51,10 @@ public class HistoryToolbarRenderer extends ColoredTreeCellRenderer {
     Icon icon = null;
     RefactoringInfo info = getRefactoringInfo(node);
 
+    if (LOADING.equals(node.getUserObject())) {
+      append(LOADING, SimpleTextAttributes.GRAY_ATTRIBUTES);
+      return;
+    }
     if (node.getUserObject() instanceof Node) {
       final Node object = (Node) node.getUserObject();
       icon = factory.create(info, object);
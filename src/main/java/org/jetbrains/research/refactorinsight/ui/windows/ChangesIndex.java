@@ -0,0 +1,85 @@
+package org.jetbrains.research.refactorinsight.ui.windows;
+
+import static org.jetbrains.research.refactorinsight.utils.Utils.fixPath;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Revisions of the files changed in a commit, indexed by their paths before and after the commit.
+ * Refactorings reference files by their path relative to the project,
+ * which is resolved against the project base path. Paths outside of it are looked up once
+ * among all the changed files and the result is remembered.
+ */
+public class ChangesIndex {
+  private final String basePath;
+  private final Map<String, ContentRevision> before = new HashMap<>();
+  private final Map<String, ContentRevision> after = new HashMap<>();
+  private final Map<String, Optional<ContentRevision>> resolved = new ConcurrentHashMap<>();
+
+  /**
+   * Indexes the changes of a commit.
+   *
+   * @param changes  the changes of the commit.
+   * @param basePath the base path of the project.
+   */
+  public ChangesIndex(Collection<Change> changes, String basePath) {
+    this.basePath = basePath == null ? "" : FileUtil.toSystemIndependentName(basePath);
+    for (Change change : changes) {
+      if (change.getBeforeRevision() != null) {
+        before.put(normalize(change.getBeforeRevision().getFile().getPath()), change.getBeforeRevision());
+      }
+      if (change.getAfterRevision() != null) {
+        after.put(normalize(change.getAfterRevision().getFile().getPath()), change.getAfterRevision());
+      }
+    }
+  }
+
+  /**
+   * Returns the revision of a file before the commit.
+   *
+   * @param path path of the file, relative to the project.
+   */
+  @Nullable
+  public ContentRevision getBefore(String path) {
+    return find(before, "before:", path);
+  }
+
+  /**
+   * Returns the revision of a file after the commit.
+   *
+   * @param path path of the file, relative to the project.
+   */
+  @Nullable
+  public ContentRevision getAfter(String path) {
+    return find(after, "after:", path);
+  }
+
+  private ContentRevision find(Map<String, ContentRevision> revisions, String side, String path) {
+    if (path == null) {
+      return null;
+    }
+    String relativePath = normalize(fixPath(path));
+    ContentRevision revision = revisions.get(normalize(basePath + "/" + relativePath));
+    if (revision != null) {
+      return revision;
+    }
+    return resolved.computeIfAbsent(side + relativePath, key -> revisions.entrySet().stream()
+        .filter(e -> e.getKey().contains(relativePath))
+        .map(Map.Entry::getValue)
+        .findFirst()).orElse(null);
+  }
+
+  private static String normalize(String path) {
+    return FileUtil.toCanonicalPath(FileUtil.toSystemIndependentName(path));
+  }
+}
@@ -6,7 +6,6 @@ import com.intellij.diff.DiffDialogHints;
 import com.intellij.diff.DiffManager;
 import com.intellij.diff.FrameDiffTool;
 import com.intellij.diff.chains.DiffRequestChain;
-import com.intellij.diff.chains.SimpleDiffRequestChain;
 import com.intellij.diff.contents.DiffContent;
 import com.intellij.diff.contents.DocumentContent;
 import com.intellij.diff.requests.DiffRequest;
@@ -60,12 +59,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
-import java.util.function.Predicate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
-import static org.jetbrains.research.refactorinsight.utils.Utils.fixPath;
-
 /**
  * Deals with refactoring diff requests.
  * Generates ui components and disposes them.
@@ -90,17 +87,27 @@ public class DiffWindow extends com.intellij.diff.DiffExtension {
    */
   public static void showDiff(Collection<Change> changes, RefactoringInfo info,
                               Project project, List<RefactoringInfo> refactoringInfos) {
-    final Predicate<RefactoringInfo> showable =
-        i -> !i.isHidden() && i.getLeftPath() != null;
-    List<DiffRequest> requests = refactoringInfos.stream()
-        .filter(showable)
-        .map(i -> i.generate(getDiffContents(changes, i, project)))
-        .filter(Objects::nonNull)
+    showDiff(new ChangesIndex(changes, project.getBasePath()), info, project, refactoringInfos);
+  }
+
+  /**
+   * Requests diff window to show specific refactoring with two editors.
+   * The diffs of the refactorings are produced lazily, when they are navigated to,
+   * and the contents of each file revision are loaded once for all of them.
+   *
+   * @param changes the changes of the commit, indexed by path.
+   * @param info    RefactoringInfo
+   * @param project Current project
+   */
+  public static void showDiff(ChangesIndex changes, RefactoringInfo info,
+                              Project project, List<RefactoringInfo> refactoringInfos) {
+    List<RefactoringInfo> showable = refactoringInfos.stream()
+        .filter(i -> !i.isHidden() && i.getLeftPath() != null)
         .collect(Collectors.toList());
-    DiffRequestChain chain = new SimpleDiffRequestChain(requests);
-    final int index = refactoringInfos.stream()
-        .filter(showable).collect(Collectors.toList()).indexOf(info);
+    final int index = showable.indexOf(info);
     if (index != -1) {
+      DiffContents contents = new DiffContents(changes, project);
+      DiffRequestChain chain = new RefactoringDiffRequestChain(showable, project, contents::get);
       chain.setIndex(index);
       chain.putUserData(DiffUserDataKeysEx.FORCE_DIFF_TOOL, SimpleDiffTool.INSTANCE);
       DiffManager.getInstance().showDiff(project, chain,
@@ -108,87 +115,78 @@ public class DiffWindow extends com.intellij.diff.DiffExtension {
     }
   }
 
-  private static DiffContent[] getDiffContents(Collection<Change> changes,
-                                               RefactoringInfo info, Project project) {
-    if (info.getLeftPath() == null || info.getRightPath() == null) {
-      return null;
-    }
-    return info.isMoreSided() ? getMoreSidedDiffContents(changes, info, project) :
-        getStandardDiffContents(changes, info, project);
-  }
-
   /**
-   * This method is for "More Sided" refactoring diff.
+   * Contents of the file revisions shown in one diff window.
+   * Each revision is loaded once and its content is shared by all the refactorings that show it.
    */
-  private static DiffContent[] getMoreSidedDiffContents(Collection<Change> changes,
-                                                        RefactoringInfo info, Project project) {
-    try {
-      DiffContentFactoryEx myDiffContentFactory = DiffContentFactoryEx.getInstanceEx();
+  private static class DiffContents {
+    private final ChangesIndex changes;
+    private final Project project;
+    private final Map<ContentRevision, DiffContent> contents = new ConcurrentHashMap<>();
+
+    DiffContents(ChangesIndex changes, Project project) {
+      this.changes = changes;
+      this.project = project;
+    }
+
+    /**
+     * Returns the contents to be shown in the diff of a refactoring.
+     */
+    DiffContent[] get(RefactoringInfo info) {
+      if (info.getLeftPath() == null || info.getRightPath() == null) {
+        return null;
+      }
+      try {
+        return info.isMoreSided() ? getMoreSidedDiffContents(info) : getStandardDiffContents(info);
+      } catch (VcsException ex) {
+        ex.printStackTrace();
+        return null;
+      }
+    }
+
+    /**
+     * This method is for "More Sided" refactoring diff.
+     */
+    private DiffContent[] getMoreSidedDiffContents(RefactoringInfo info) throws VcsException {
       ArrayList<DiffContent> contentList = new ArrayList<>();
-      for (Change change : changes) {
-        if (change.getAfterRevision() != null
-            && change.getAfterRevision().getFile().getPath().contains(info.getRightPath())) {
-          contentList.add(myDiffContentFactory
-                              .create(project, change.getAfterRevision().getContent(),
-                                      JavaClassFileType.INSTANCE));
-          break;
-        }
+      ContentRevision after = changes.getAfter(info.getRightPath());
+      if (after != null) {
+        contentList.add(create(after));
       }
       for (Pair<String, Boolean> pathPair : info.getMoreSidedLeftPaths()) {
-        for (Change change : changes) {
-          ContentRevision revision = pathPair.second
-              ? change.getAfterRevision() : change.getBeforeRevision();
-          if (revision != null
-              && revision.getFile().getPath().contains(fixPath(pathPair.first))) {
-            contentList.add(myDiffContentFactory
-                                .create(project, revision.getContent(),
-                                        JavaClassFileType.INSTANCE));
-            break;
-          }
+        ContentRevision revision = pathPair.second
+            ? changes.getAfter(pathPair.first) : changes.getBefore(pathPair.first);
+        if (revision != null) {
+          contentList.add(create(revision));
         }
       }
       return contentList.toArray(new DiffContent[0]);
-    } catch (VcsException ex) {
-      ex.printStackTrace();
-      return null;
     }
-  }
 
-  /**
-   * This is contents getter is for standard two or three sided refactoring diff.
-   */
-  private static DiffContent[] getStandardDiffContents(Collection<Change> changes,
-                                                       RefactoringInfo info, Project project) {
-    try {
-      DiffContentFactoryEx myDiffContentFactory = DiffContentFactoryEx.getInstanceEx();
-      DiffContent[] contents = {null, null, null};
-      for (Change change : changes) {
-        if (change.getBeforeRevision() != null) {
-          if (change.getBeforeRevision().getFile().getPath().contains(info.getLeftPath())) {
-            contents[0] = myDiffContentFactory.create(project,
-                                                      change.getBeforeRevision().getContent(),
-                                                      JavaClassFileType.INSTANCE);
-          }
-        }
-        if (info.isThreeSided()
-            && change.getAfterRevision() != null
-            && change.getAfterRevision().getFile().getPath().contains(info.getMidPath())) {
-          contents[1] = myDiffContentFactory.create(project,
-                                                    change.getAfterRevision().getContent(),
-                                                    JavaClassFileType.INSTANCE);
-        }
-        if (change.getAfterRevision() != null
-            && change.getAfterRevision().getFile().getPath().contains(info.getRightPath())) {
-          contents[2] = myDiffContentFactory.create(project,
-                                                    change.getAfterRevision().getContent(),
-                                                    JavaClassFileType.INSTANCE);
+    /**
+     * This is contents getter is for standard two or three sided refactoring diff.
+     */
+    private DiffContent[] getStandardDiffContents(RefactoringInfo info) throws VcsException {
+      ContentRevision before = changes.getBefore(info.getLeftPath());
+      ContentRevision mid = info.isThreeSided() ? changes.getAfter(info.getMidPath()) : null;
+      ContentRevision after = changes.getAfter(info.getRightPath());
+      return new DiffContent[] {create(before), create(mid), create(after)};
+    }
+
+    private DiffContent create(ContentRevision revision) throws VcsException {
+      if (revision == null) {
+        return null;
+      }
+      DiffContent content = contents.get(revision);
+      if (content == null) {
+        content = DiffContentFactoryEx.getInstanceEx()
+            .create(project, revision.getContent(), JavaClassFileType.INSTANCE);
+        DiffContent existing = contents.putIfAbsent(revision, content);
+        if (existing != null) {
+          content = existing;
         }
       }
-      return contents;
-
-    } catch (VcsException ex) {
-      ex.printStackTrace();
-      return null;
+      return content;
     }
   }
 
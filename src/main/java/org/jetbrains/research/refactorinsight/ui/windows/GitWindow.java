@@ -1,5 +1,9 @@
 package org.jetbrains.research.refactorinsight.ui.windows;
 
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.changes.ui.ChangesTree;
 import com.intellij.ui.Gray;
@@ -7,14 +11,28 @@ import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBList;
 import com.intellij.ui.components.JBViewport;
 import com.intellij.ui.treeStructure.Tree;
+import com.intellij.util.Alarm;
 import com.intellij.util.ui.UIUtil;
 import com.intellij.vcs.log.VcsCommitMetadata;
+import com.intellij.vcs.log.VcsFullCommitDetails;
 import com.intellij.vcs.log.ui.MainVcsLogUi;
 import com.intellij.vcs.log.ui.table.VcsLogGraphTable;
 
+import java.awt.BorderLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import javax.swing.JPanel;
+import javax.swing.JViewport;
 import javax.swing.SwingConstants;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreePath;
@@ -23,6 +41,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
 import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
 import org.jetbrains.research.refactorinsight.services.MiningService;
+import org.jetbrains.research.refactorinsight.services.SettingsState;
 import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
 import org.jetbrains.research.refactorinsight.ui.tree.Node;
 import org.jetbrains.research.refactorinsight.ui.tree.TreeUtils;
@@ -31,14 +50,37 @@ import org.jetbrains.research.refactorinsight.ui.tree.renderers.MainCellRenderer
 /**
  * Adds additional UI elements to the Git Log tab.
  * Listens to mouse events to show refactorings at selected commit.
+ * The refactoring trees are built in background and the last ones are cached,
+ * so that going back to a commit only attaches a ready tree.
+ * Commits around the selection and in the visible rows are mined ahead of time,
+ * once the log has not been scrolled for a while.
+ * Selecting several commits shows their refactorings in one tree, mining the missing commits in parallel.
  */
 public class GitWindow {
+  private static final int CACHED_TREES = 16;
+  private static final int PREFETCH_DELAY = 500;
+  private static final int CACHED_CHANGES = 4;
+
+  private final MainCellRenderer renderer = new MainCellRenderer();
+  private final Map<String, DefaultMutableTreeNode> trees = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, DefaultMutableTreeNode> eldest) {
+      return size() > CACHED_TREES;
+    }
+  };
+  private final Map<String, ChangesIndex> changes = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, ChangesIndex> eldest) {
+      return size() > CACHED_CHANGES;
+    }
+  };
   private Project project;
   private ChangesTree changesTree;
   private JBViewport viewport;
   private VcsLogGraphTable table;
   private MiningService miner;
   private boolean state = false;
+  private final Alarm prefetchAlarm;
 
   /**
    * Constructor for GitWindow.
@@ -52,6 +94,7 @@ public class GitWindow {
     viewport = (JBViewport) changesTree.getParent();
     table = vcsLogUi.getTable();
     miner = MiningService.getInstance(project);
+    prefetchAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
 
     table.getSelectionModel().addListSelectionListener(listSelectionEvent -> {
       if (listSelectionEvent.getValueIsAdjusting()) {
@@ -61,7 +104,65 @@ public class GitWindow {
       if (state) {
         buildComponent();
       }
+      schedulePrefetch();
     });
+    if (table.getParent() instanceof JViewport) {
+      ((JViewport) table.getParent()).addChangeListener(e -> schedulePrefetch());
+    }
+  }
+
+  /**
+   * Cancels the pending prefetch and schedules a new one after the log stops moving.
+   */
+  private void schedulePrefetch() {
+    miner.cancelPrefetch();
+    prefetchAlarm.cancelAllRequests();
+    if (SettingsState.getInstance(project).prefetchWindow > 0) {
+      prefetchAlarm.addRequest(this::prefetch, PREFETCH_DELAY);
+    }
+  }
+
+  /**
+   * Mines the commits around the selection, nearest first, and then the visible commits.
+   */
+  private void prefetch() {
+    int rowCount = table.getRowCount();
+    Rectangle visible = table.getVisibleRect();
+    int first = table.rowAtPoint(visible.getLocation());
+    if (rowCount == 0 || first < 0) {
+      return;
+    }
+    int last = table.rowAtPoint(new Point(visible.x, visible.y + visible.height - 1));
+    if (last < 0) {
+      last = rowCount - 1;
+    }
+
+    Set<Integer> rows = new LinkedHashSet<>();
+    int selected = table.getSelectionModel().getAnchorSelectionIndex();
+    if (selected >= 0 && selected < rowCount) {
+      int window = SettingsState.getInstance(project).prefetchWindow;
+      for (int distance = 0; distance <= window; distance++) {
+        if (selected + distance < rowCount) {
+          rows.add(selected + distance);
+        }
+        if (selected - distance >= 0) {
+          rows.add(selected - distance);
+        }
+      }
+    }
+    for (int row = first; row <= last; row++) {
+      rows.add(row);
+    }
+
+    List<VcsCommitMetadata> commits = new ArrayList<>();
+    for (int row : rows) {
+      if (!miner.containsCommit(table.getModel().getCommitId(row).getHash().asString())) {
+        commits.add(table.getModel().getCommitMetadata(row));
+      }
+    }
+    if (!commits.isEmpty()) {
+      miner.prefetch(commits, project, this::refresh);
+    }
   }
 
   public boolean isSelected() {
@@ -89,16 +190,48 @@ public class GitWindow {
    * @param commitId to refresh the view at.
    */
   public void refresh(String commitId) {
-    int index = table.getSelectionModel().getAnchorSelectionIndex();
-    if (state && index >= 0 && table.getModel().getCommitId(index).getHash().asString().equals(commitId)) {
+    if (state && selectedCommits().containsKey(commitId)) {
       buildComponent();
     }
   }
 
+  /**
+   * Returns the selected commits with their rows, from the newest to the oldest.
+   * A single selection is given by the anchor of the selection.
+   */
+  private Map<String, Integer> selectedCommits() {
+    Map<String, Integer> commits = new LinkedHashMap<>();
+    if (table.getSelectedRowCount() > 1) {
+      for (int row : table.getSelectedRows()) {
+        commits.put(table.getModel().getCommitId(row).getHash().asString(), row);
+      }
+    } else {
+      int index = table.getSelectionModel().getAnchorSelectionIndex();
+      if (index >= 0 && index < table.getRowCount()) {
+        commits.put(table.getModel().getCommitId(index).getHash().asString(), index);
+      }
+    }
+    return commits;
+  }
+
   /**
    * Mine commit if not already. Need because entry must be ready when classical diff is called.
+   * The unmined commits of a multiple selection are mined in parallel.
    */
   private void mineIfAbsent() {
+    if (table.getSelectedRowCount() > 1) {
+      List<VcsCommitMetadata> commits = new ArrayList<>();
+      selectedCommits().forEach((commitId, row) -> {
+        VcsCommitMetadata metadata = table.getModel().getCommitMetadata(row);
+        if (miner.get(commitId) == null && !metadata.getParents().isEmpty()) {
+          commits.add(metadata);
+        }
+      });
+      if (!commits.isEmpty()) {
+        miner.mineAtCommits(commits, project, this);
+      }
+      return;
+    }
     int index = table.getSelectionModel().getAnchorSelectionIndex();
     if (index >= 0) {
       String commitId = table.getModel().getCommitId(index).getHash().asString();
@@ -111,6 +244,10 @@ public class GitWindow {
   }
 
   private void buildComponent() {
+    if (table.getSelectedRowCount() > 1) {
+      buildSelectionComponent();
+      return;
+    }
     int index = table.getSelectionModel().getAnchorSelectionIndex();
 
     if (index < 0) {
@@ -119,6 +256,7 @@ public class GitWindow {
     }
 
     String commitId = table.getModel().getCommitId(index).getHash().asString();
+    int version = miner.getEntryVersion(commitId);
     RefactoringEntry entry = miner.get(commitId);
 
     if (entry == null) {
@@ -127,16 +265,119 @@ public class GitWindow {
       return;
     }
 
-    if (entry.timeout || entry.getRefactorings().isEmpty()) {
-      final JBLabel component =
-          new JBLabel(RefactorInsightBundle.message("no.ref"), SwingConstants.CENTER);
-      component.setForeground(Gray._105);
-      viewport.setView(component);
+    if (entry.timeout) {
+      showLabel(RefactorInsightBundle.message(miner.getRetryQueue().isPending(commitId) ? "retry.pending" : "timeout"));
+      return;
+    }
+
+    if (entry.getRefactorings().isEmpty()) {
+      String text = RefactorInsightBundle.message("no.ref");
+      showLabel(entry.getScope().isEmpty() ? text : text + ". " + scopeText(entry.getScope()));
+      return;
+    }
+
+    showTree(treeKey(commitId, version, entry), entry.getRefactorings(), Collections.singletonMap(commitId, index),
+        entry.getScope());
+  }
+
+  /**
+   * Shows the refactorings of all selected commits in one tree.
+   * The commits that are still being mined are added to the tree once they are mined.
+   */
+  private void buildSelectionComponent() {
+    Map<String, Integer> commits = selectedCommits();
+    List<RefactoringInfo> refactorings = new ArrayList<>();
+    List<String> keys = new ArrayList<>();
+    Set<String> scopes = new LinkedHashSet<>();
+    int mined = 0;
+    boolean pending = false;
+    for (String commitId : commits.keySet()) {
+      int version = miner.getEntryVersion(commitId);
+      RefactoringEntry entry = miner.get(commitId);
+      if (entry != null) {
+        mined++;
+        keys.add(treeKey(commitId, version, entry));
+        if (!entry.getScope().isEmpty()) {
+          scopes.add(entry.getScope());
+        }
+        if (!entry.timeout) {
+          refactorings.addAll(entry.getRefactorings());
+        } else {
+          pending |= miner.getRetryQueue().isPending(commitId);
+        }
+      }
+    }
+
+    if (refactorings.isEmpty()) {
+      String message = mined < commits.size() ? "loading" : pending ? "retry.pending" : "no.ref";
+      String text = RefactorInsightBundle.message(message);
+      showLabel(message.equals("no.ref") && !scopes.isEmpty() ? text + ". " + scopeText(String.join("; ", scopes))
+          : text);
+      return;
+    }
+
+    showTree(String.join(",", keys), refactorings, commits, String.join("; ", scopes));
+  }
+
+  /**
+   * Identifies the refactorings of a commit in the cache of trees.
+   * The version changes whenever the commit is mined again or its refactorings are replaced,
+   * and the scope is part of the key since it decides which refactorings the tree shows.
+   * Correcting the ranges of a displayed refactoring does not change its node, so it keeps the key.
+   *
+   * @param commitId the commit.
+   * @param version  the version of the entry, read before the entry itself.
+   * @param entry    the refactorings of the commit.
+   */
+  private static String treeKey(String commitId, int version, RefactoringEntry entry) {
+    return commitId + ":" + version + ":" + entry.getScope();
+  }
+
+  private static String scopeText(String scope) {
+    return String.format(RefactorInsightBundle.message("scope.restricted"), scope);
+  }
+
+  private void showLabel(String text) {
+    final JBLabel component = new JBLabel(text, SwingConstants.CENTER);
+    component.setForeground(Gray._105);
+    viewport.setView(component);
+  }
+
+  /**
+   * Attaches the tree of the given refactorings, building it in background if it is not cached.
+   *
+   * @param key          identifies the refactorings in the cache of trees.
+   * @param refactorings refactorings of the selected commits.
+   * @param commits      selected commits with their rows.
+   * @param scope          the paths the detection was restricted to, shown above the tree if not empty.
+   */
+  private void showTree(String key, List<RefactoringInfo> refactorings, Map<String, Integer> commits,
+                        String scope) {
+    DefaultMutableTreeNode root = trees.get(key);
+    if (root != null) {
+      showTree(root, commits, scope);
       return;
     }
 
-    Tree tree = TreeUtils.buildTree(entry.getRefactorings());
-    tree.setCellRenderer(new MainCellRenderer());
+    List<RefactoringInfo> copy = new ArrayList<>(refactorings);
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      DefaultMutableTreeNode built = TreeUtils.buildTreeRoot(copy);
+      ApplicationManager.getApplication().invokeLater(() -> {
+        trees.put(key, built);
+        if (state && selectedCommits().equals(commits)) {
+          showTree(built, commits, scope);
+        }
+      }, project.getDisposed());
+    });
+  }
+
+  /**
+   * Attaches the refactorings tree of the selected commits.
+   * If the detection was restricted to some paths, they are shown above the tree.
+   */
+  private void showTree(DefaultMutableTreeNode root, Map<String, Integer> commits, String scope) {
+    Tree tree = TreeUtils.buildTree(root);
+    tree.setCellRenderer(renderer);
 
     tree.addMouseListener(new MouseAdapter() {
       @Override
@@ -149,13 +390,55 @@ public class GitWindow {
           DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
           if (node.isLeaf()) {
             RefactoringInfo info = ((Node) node.getUserObject()).getInfo();
-
-            DiffWindow.showDiff(table.getModel().getFullDetails(index)
-                                    .getChanges(0), info, project, entry.getRefactorings());
+            Integer row = commits.get(info.getCommitId());
+            if (row != null) {
+              showDiff(row, info);
+            }
           }
         }
       }
     });
-    viewport.setView(tree);
+    if (scope.isEmpty()) {
+      viewport.setView(tree);
+      return;
+    }
+    JBLabel header = new JBLabel(scopeText(scope));
+    header.setForeground(Gray._105);
+    JPanel panel = new JPanel(new BorderLayout());
+    panel.setBackground(tree.getBackground());
+    panel.add(header, BorderLayout.NORTH);
+    panel.add(tree, BorderLayout.CENTER);
+    viewport.setView(panel);
+  }
+
+  /**
+   * Shows the diff of a refactoring.
+   * The changes of its commit are indexed in background the first time they are needed.
+   *
+   * @param row  the row of the commit.
+   * @param info the refactoring.
+   */
+  private void showDiff(int row, RefactoringInfo info) {
+    String commitId = info.getCommitId();
+    ChangesIndex index = changes.get(commitId);
+    if (index != null) {
+      DiffWindow.showDiff(index, info, project, info.getEntry().getRefactorings());
+      return;
+    }
+    VcsFullCommitDetails details = table.getModel().getFullDetails(row);
+    ProgressManager.getInstance().run(new Task.Backgroundable(project, RefactorInsightBundle.message("loading")) {
+      private ChangesIndex loaded;
+
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        loaded = new ChangesIndex(details.getChanges(0), project.getBasePath());
+      }
+
+      @Override
+      public void onSuccess() {
+        changes.put(commitId, loaded);
+        DiffWindow.showDiff(loaded, info, project, info.getEntry().getRefactorings());
+      }
+    });
   }
 }
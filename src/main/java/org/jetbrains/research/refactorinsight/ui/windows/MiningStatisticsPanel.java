@@ -0,0 +1,162 @@
+package org.jetbrains.research.refactorinsight.ui.windows;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowAnchor;
+import com.intellij.openapi.wm.ToolWindowManager;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBPanel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import com.intellij.ui.table.JBTable;
+import com.intellij.util.ui.JBUI;
+import icons.RefactorInsightIcons;
+import java.awt.BorderLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
+import org.jetbrains.research.refactorinsight.processors.MiningTimer;
+import org.jetbrains.research.refactorinsight.processors.MiningTimer.Phase;
+import org.jetbrains.research.refactorinsight.services.MiningService;
+import org.jetbrains.research.refactorinsight.services.MiningStatistics;
+import org.jetbrains.research.refactorinsight.services.MiningStatistics.CommitStatistics;
+
+/**
+ * Shows the mining statistics of the project: the time spent in each phase,
+ * the progress of the current `Mine All` session and the slowest commits with the size of their diffs.
+ * The statistics are refreshed every second while the panel is open.
+ */
+public class MiningStatisticsPanel extends JBPanel<MiningStatisticsPanel> implements Disposable {
+  private static final int REFRESH_MILLIS = 1000;
+
+  private final MiningStatistics statistics;
+  private final JBLabel summary = new JBLabel();
+  private final CommitsModel commits = new CommitsModel();
+  private final Timer timer;
+
+  private MiningStatisticsPanel(Project project) {
+    super(new BorderLayout());
+    statistics = MiningService.getInstance(project).getStatistics();
+    summary.setBorder(JBUI.Borders.empty(8));
+    add(summary, BorderLayout.NORTH);
+    add(new JBScrollPane(new JBTable(commits)), BorderLayout.CENTER);
+    refresh();
+    timer = new Timer(REFRESH_MILLIS, e -> refresh());
+    timer.start();
+  }
+
+  /**
+   * Shows the statistics in the tool window of the project.
+   *
+   * @param project the current project.
+   */
+  public static void show(Project project) {
+    String id = RefactorInsightBundle.message("statistics");
+    ToolWindowManager manager = ToolWindowManager.getInstance(project);
+    ToolWindow toolWindow = manager.getToolWindow(id);
+    if (toolWindow == null) {
+      toolWindow = manager.registerToolWindow(id, true, ToolWindowAnchor.BOTTOM);
+      toolWindow.setIcon(RefactorInsightIcons.toolWindow);
+    }
+    if (toolWindow.getContentManager().getContentCount() == 0) {
+      MiningStatisticsPanel panel = new MiningStatisticsPanel(project);
+      Content content = ContentFactory.SERVICE.getInstance().createContent(panel, "", false);
+      content.setDisposer(panel);
+      toolWindow.getContentManager().addContent(content);
+    }
+    toolWindow.show();
+  }
+
+  private void refresh() {
+    String remaining = statistics.isSessionRunning() && statistics.getRemainingSeconds() >= 0
+        ? StringUtil.formatDuration(TimeUnit.SECONDS.toMillis(statistics.getRemainingSeconds()))
+        : "-";
+    summary.setText(String.format(RefactorInsightBundle.message("statistics.summary"),
+        statistics.getMinedCommits(),
+        statistics.getTimeouts(),
+        statistics.getQueueDepth(),
+        statistics.getSessionDone(),
+        statistics.isSessionRunning() ? statistics.getSessionCommits() : 0,
+        statistics.getThroughput(),
+        remaining,
+        duration(statistics.getPhaseNanos(Phase.QUEUE_WAIT)),
+        duration(statistics.getPhaseNanos(Phase.BLOB_LOADING)),
+        duration(statistics.getPhaseNanos(Phase.JAVA_DETECTION)),
+        duration(statistics.getPhaseNanos(Phase.KOTLIN_DETECTION)),
+        duration(statistics.getPhaseNanos(Phase.CONVERSION)),
+        duration(statistics.getCorrectionNanos()),
+        statistics.getCorrections()));
+    commits.setCommits(statistics.getSlowestCommits());
+  }
+
+  private static String duration(long nanos) {
+    return StringUtil.formatDuration(TimeUnit.NANOSECONDS.toMillis(nanos));
+  }
+
+  @Override
+  public void dispose() {
+    timer.stop();
+  }
+
+  /**
+   * The slowest commits, with the time spent in each phase and the size of their diffs.
+   */
+  private static class CommitsModel extends AbstractTableModel {
+    private static final String[] COLUMNS = RefactorInsightBundle.message("statistics.columns").split(",");
+    private List<CommitStatistics> commits = new ArrayList<>();
+
+    void setCommits(List<CommitStatistics> commits) {
+      this.commits = commits;
+      fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+      return commits.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+      return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+      return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+      CommitStatistics commit = commits.get(row);
+      MiningTimer timer = commit.getTimer();
+      switch (column) {
+        case 0:
+          return commit.getCommitId().substring(0, Math.min(10, commit.getCommitId().length()));
+        case 1:
+          return duration(commit.getNanos());
+        case 2:
+          return duration(timer.get(Phase.QUEUE_WAIT));
+        case 3:
+          return duration(timer.get(Phase.BLOB_LOADING));
+        case 4:
+          return duration(timer.get(Phase.JAVA_DETECTION));
+        case 5:
+          return duration(timer.get(Phase.KOTLIN_DETECTION));
+        case 6:
+          return duration(timer.get(Phase.CONVERSION));
+        case 7:
+          return timer.getFiles();
+        case 8:
+          return timer.getCharacters();
+        default:
+          return commit.isTimedOut();
+      }
+    }
+  }
+}
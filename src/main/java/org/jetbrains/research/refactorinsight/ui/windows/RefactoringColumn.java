@@ -1,21 +1,29 @@
 package org.jetbrains.research.refactorinsight.ui.windows;
 
 import com.intellij.ui.ColoredTableCellRenderer;
+import com.intellij.ui.SimpleTextAttributes;
 import com.intellij.vcs.log.ui.table.GraphTableModel;
 import com.intellij.vcs.log.ui.table.VcsLogCellRenderer;
 import com.intellij.vcs.log.ui.table.VcsLogGraphTable;
 import com.intellij.vcs.log.ui.table.column.VcsLogCustomColumn;
 import icons.RefactorInsightIcons;
+import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
 import org.jetbrains.research.refactorinsight.services.MiningService;
+import org.jetbrains.research.refactorinsight.services.RefactoringSummaries;
 
 import javax.swing.JTable;
 import javax.swing.table.TableCellRenderer;
 
-public class RefactoringColumn implements VcsLogCustomColumn<Boolean> {
+/**
+ * Git Log column that shows the number of refactorings detected in each commit and their main type.
+ * The values are read from the summaries indexed by the commit index of the VCS log,
+ * so that painting the column does not look up the refactoring entries.
+ */
+public class RefactoringColumn implements VcsLogCustomColumn<RefactoringSummaries.Summary> {
 
   @NotNull
   @Override
@@ -24,13 +32,13 @@ public class RefactoringColumn implements VcsLogCustomColumn<Boolean> {
   }
 
   @Override
-  public Boolean getValue(@NotNull GraphTableModel graphTableModel, int row) {
+  public RefactoringSummaries.Summary getValue(@NotNull GraphTableModel graphTableModel, int row) {
     MiningService miningService = graphTableModel.getLogData().getProject().getServiceIfCreated(MiningService.class);
-    if (miningService == null) {
-      return Boolean.FALSE;
+    Integer commitIndex = graphTableModel.getIdAtRow(row);
+    if (miningService == null || commitIndex == null) {
+      return null;
     }
-    String commitHash = graphTableModel.getCommitId(row).getHash().asString();
-    return miningService.containsRefactoring(commitHash);
+    return miningService.getSummary(commitIndex, () -> graphTableModel.getCommitId(row).getHash().asString());
   }
 
   @NotNull
@@ -52,8 +60,8 @@ public class RefactoringColumn implements VcsLogCustomColumn<Boolean> {
   }
 
   @Override
-  public Boolean getStubValue(@NotNull GraphTableModel graphTableModel) {
-    return Boolean.FALSE;
+  public RefactoringSummaries.Summary getStubValue(@NotNull GraphTableModel graphTableModel) {
+    return null;
   }
 
   @Override
@@ -65,26 +73,31 @@ public class RefactoringColumn implements VcsLogCustomColumn<Boolean> {
     @Override
     protected void customizeCellRenderer(@NotNull JTable table, @Nullable Object value, boolean selected,
                                          boolean hasFocus, int row, int column) {
-      if (!(value instanceof Boolean) || !(table instanceof VcsLogGraphTable)) {
+      if (!(table instanceof VcsLogGraphTable)) {
         return;
       }
 
       ((VcsLogGraphTable) table).applyHighlighters(this, row, column, hasFocus, selected);
 
-      customizeCellRenderer((Boolean) value);
+      if (value instanceof RefactoringSummaries.Summary) {
+        customizeCellRenderer((RefactoringSummaries.Summary) value);
+      }
     }
 
-    private void customizeCellRenderer(@NotNull Boolean value) {
+    private void customizeCellRenderer(@NotNull RefactoringSummaries.Summary value) {
       setBorder(null);
-      if (value) {
-        setIcon(RefactorInsightIcons.node);
-        setTransparentIconBackground(true);
+      setIcon(RefactorInsightIcons.node);
+      setTransparentIconBackground(true);
+      append(String.valueOf(value.getCount()));
+      if (value.getMainType() != null) {
+        append(" " + value.getMainType().getName(), SimpleTextAttributes.GRAY_ATTRIBUTES);
       }
     }
 
     @Override
     public @Nullable Integer getPreferredWidth(@NotNull JTable table) {
-      customizeCellRenderer(true);
+      clear();
+      customizeCellRenderer(new RefactoringSummaries.Summary(99, RefactoringType.MOVE_AND_RENAME_OPERATION));
       return getPreferredSize().width;
     }
   }
@@ -0,0 +1,140 @@
+package org.jetbrains.research.refactorinsight.ui.windows;
+
+import com.intellij.diff.chains.DiffRequestChain;
+import com.intellij.diff.chains.DiffRequestProducer;
+import com.intellij.diff.chains.DiffRequestProducerException;
+import com.intellij.diff.contents.DiffContent;
+import com.intellij.diff.requests.DiffRequest;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.UserDataHolder;
+import com.intellij.openapi.util.UserDataHolderBase;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.jetbrains.research.refactorinsight.services.MiningService;
+
+/**
+ * Chain of the refactoring diffs of a commit.
+ * The diff of a refactoring is produced only when it is shown: its ranges are corrected
+ * and its file contents are loaded in background, while the diff of the next refactoring is prefetched.
+ */
+public class RefactoringDiffRequestChain extends UserDataHolderBase implements DiffRequestChain {
+  private final List<RefactoringRequestProducer> producers = new ArrayList<>();
+  private final Project project;
+  private final Function<RefactoringInfo, DiffContent[]> contents;
+  private int index = 0;
+
+  /**
+   * Creates the chain.
+   *
+   * @param refactorings refactorings to be shown, in the order of navigation.
+   * @param project      the current project.
+   * @param contents     loads the file contents of a refactoring.
+   */
+  public RefactoringDiffRequestChain(List<RefactoringInfo> refactorings, Project project,
+                                     Function<RefactoringInfo, DiffContent[]> contents) {
+    this.project = project;
+    this.contents = contents;
+    for (RefactoringInfo info : refactorings) {
+      producers.add(new RefactoringRequestProducer(info, producers.size()));
+    }
+  }
+
+  @Override
+  public @NotNull List<? extends DiffRequestProducer> getRequests() {
+    return producers;
+  }
+
+  @Override
+  public int getIndex() {
+    return index;
+  }
+
+  @Override
+  public void setIndex(int index) {
+    this.index = index;
+  }
+
+  /**
+   * Produces the diff request of a single refactoring.
+   */
+  private class RefactoringRequestProducer implements DiffRequestProducer {
+    private final RefactoringInfo info;
+    private final int position;
+    private Future<DiffRequest> request;
+
+    RefactoringRequestProducer(RefactoringInfo info, int position) {
+      this.info = info;
+      this.position = position;
+    }
+
+    /**
+     * Starts loading the request, if it is not loaded yet.
+     */
+    private synchronized Future<DiffRequest> load() {
+      if (request == null) {
+        request = AppExecutorUtil.getAppExecutorService().submit(() -> {
+          MiningService.getInstance(project).getStatistics().correct(info, project);
+          DiffContent[] diffContents = contents.apply(info);
+          return diffContents == null ? null : info.generate(diffContents);
+        });
+      }
+      return request;
+    }
+
+    /**
+     * Forgets a consumed request, so that only prefetched requests are kept by the chain.
+     */
+    private synchronized void release(Future<DiffRequest> consumed) {
+      if (request == consumed) {
+        request = null;
+      }
+    }
+
+    @Override
+    public @NotNull String getName() {
+      return info.getName();
+    }
+
+    @Override
+    public @NotNull DiffRequest process(@NotNull UserDataHolder context, @NotNull ProgressIndicator indicator)
+        throws DiffRequestProducerException, ProcessCanceledException {
+      Future<DiffRequest> future = load();
+      if (position + 1 < producers.size()) {
+        producers.get(position + 1).load();
+      }
+      DiffRequest result;
+      while (true) {
+        indicator.checkCanceled();
+        try {
+          result = future.get(10, TimeUnit.MILLISECONDS);
+          break;
+        } catch (InterruptedException e) {
+          throw new ProcessCanceledException(e);
+        } catch (ExecutionException e) {
+          release(future);
+          throw new DiffRequestProducerException(e.getCause());
+        } catch (TimeoutException ignored) {
+          //keep waiting for the contents
+        }
+      }
+      release(future);
+      if (result == null) {
+        throw new DiffRequestProducerException(RefactorInsightBundle.message("no.diff"));
+      }
+      return result;
+    }
+  }
+}
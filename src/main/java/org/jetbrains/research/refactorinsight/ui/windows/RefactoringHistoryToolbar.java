@@ -23,25 +23,38 @@ import com.intellij.vcs.log.impl.VcsProjectLog;
 import com.intellij.vcs.log.ui.MainVcsLogUi;
 import com.intellij.vcs.log.ui.VcsLogPanel;
 import com.intellij.vcs.log.ui.frame.VcsLogChangesBrowser;
+import git4idea.repo.GitRepository;
+import git4idea.repo.GitRepositoryManager;
 import icons.RefactorInsightIcons;
 import java.awt.GridLayout;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 import javax.swing.JComponent;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
 import org.jetbrains.research.refactorinsight.RefactorInsightBundle;
+import org.jetbrains.research.refactorinsight.services.MiningService;
 import org.jetbrains.research.refactorinsight.ui.tree.TreeUtils;
 import org.jetbrains.research.refactorinsight.ui.tree.renderers.HistoryToolbarRenderer;
 import org.jetbrains.research.refactorinsight.utils.Utils;
@@ -74,33 +87,166 @@ public class RefactoringHistoryToolbar {
 
   /**
    * Display the toolbar.
+   * Scrolling to the end of the history loads older history in the background.
+   * The history of the members of a class can be added later with {@link #addMembers},
+   * and more refactorings with {@link #addRefactorings}.
    *
-   * @param refactorings detected refactorings
-   * @param objectsName  name of the method
+   * @param refactorings         detected refactorings
+   * @param objectsName          name of the method
+   * @param onOlderHistoryLoaded called with the displayed tree once older history is loaded, to add it to the tree,
+   *                             or null if the history is complete and no older history is loaded
+   * @return the displayed tree, or null if there is no history to display.
    */
-  public void showToolbar(Set<RefactoringInfo> refactorings,
+  @Nullable
+  public Tree showToolbar(Set<RefactoringInfo> refactorings,
                           String objectsName, DataContext datacontext, HistoryType type,
-                          @Nullable HashMap<String, Set<RefactoringInfo>> methodsHistory,
-                          @Nullable HashMap<String, Set<RefactoringInfo>> attributesHistory) {
+                          Consumer<Tree> onOlderHistoryLoaded) {
 
     this.type = type;
     if (refactorings == null || refactorings.isEmpty()) {
       showPopup(datacontext);
-    } else {
-      JBSplitter splitter = new JBSplitter(false, (float) 0.35);
-      List<RefactoringInfo> refactoringInfos = new ArrayList<>(refactorings);
-      Utils.chronologicalOrder(refactoringInfos);
-
-      Tree tree =
-          createTree(refactoringInfos, methodsHistory, attributesHistory);
-      tree.setRootVisible(false);
-      //TreeUtils.expandAllNodes(tree, 0, tree.getRowCount());
-      tree.setCellRenderer(new HistoryToolbarRenderer());
-      addMouseListener(splitter, tree);
-      setFirstComponent(refactorings.size(), splitter, tree);
-      setSecondComponent(splitter);
-      showContent(objectsName, splitter);
+      return null;
+    }
+    JBSplitter splitter = new JBSplitter(false, (float) 0.35);
+    List<RefactoringInfo> refactoringInfos = new ArrayList<>(refactorings);
+    Utils.chronologicalOrder(refactoringInfos);
+
+    Tree tree = createTree(refactoringInfos);
+    tree.putClientProperty(HistoryType.class, type);
+    tree.setRootVisible(false);
+    //TreeUtils.expandAllNodes(tree, 0, tree.getRowCount());
+    tree.setCellRenderer(new HistoryToolbarRenderer());
+    addMouseListener(splitter, tree);
+    setFirstComponent(refactorings.size(), splitter, tree, onOlderHistoryLoaded);
+    setSecondComponent(splitter);
+    showContent(objectsName, splitter);
+    return tree;
+  }
+
+  /**
+   * Adds the history of the methods and fields of a class to its history tree.
+   * The refactorings of a member are added to the tree once the member is expanded.
+   * If the tree already shows members, only the members and refactorings it does not show yet are added.
+   *
+   * @param tree              the tree of the class history.
+   * @param methodsHistory    history of the methods of the class.
+   * @param attributesHistory history of the fields of the class.
+   */
+  public void addMembers(Tree tree, Map<String, Set<RefactoringInfo>> methodsHistory,
+                         Map<String, Set<RefactoringInfo>> attributesHistory) {
+    DefaultTreeModel model = (DefaultTreeModel) tree.getModel();
+    DefaultMutableTreeNode root = (DefaultMutableTreeNode) model.getRoot();
+    List<DefaultMutableTreeNode> groups = new ArrayList<>();
+
+    if (methodsHistory != null && !methodsHistory.isEmpty()) {
+      DefaultMutableTreeNode child = findChild(root, RefactorInsightBundle.message("check.methods"));
+      if (child != null) {
+        mergeObjects(model, methodsHistory, child, true);
+      } else {
+        child = new DefaultMutableTreeNode(RefactorInsightBundle.message("check.methods"));
+        addObjectsToTree(methodsHistory, child, true);
+        if (child.getChildCount() > 0) {
+          groups.add(child);
+        }
+      }
+    }
+
+    if (attributesHistory != null && !attributesHistory.isEmpty()) {
+      DefaultMutableTreeNode child = findChild(root, RefactorInsightBundle.message("check.fields"));
+      if (child != null) {
+        mergeObjects(model, attributesHistory, child, false);
+      } else {
+        child = new DefaultMutableTreeNode(RefactorInsightBundle.message("check.fields"));
+        addObjectsToTree(attributesHistory, child, false);
+        if (child.getChildCount() > 0) {
+          groups.add(child);
+        }
+      }
+    }
+
+    if (groups.isEmpty()) {
+      return;
+    }
+    groups.forEach(root::add);
+    model.nodesWereInserted(root, IntStream.range(root.getChildCount() - groups.size(), root.getChildCount())
+        .toArray());
+    groups.forEach(group -> tree.expandPath(new TreePath(group.getPath())));
+  }
+
+  /**
+   * Adds the refactorings that a displayed history tree does not show yet, in chronological order.
+   * The nodes already in the tree are kept, so they stay expanded and selected.
+   *
+   * @param tree         the displayed tree.
+   * @param refactorings the refactorings of the history, including the ones already shown.
+   */
+  public void addRefactorings(Tree tree, Set<RefactoringInfo> refactorings) {
+    DefaultTreeModel model = (DefaultTreeModel) tree.getModel();
+    DefaultMutableTreeNode root = (DefaultMutableTreeNode) model.getRoot();
+    Set<RefactoringInfo> shown = refactoringsOf(root);
+    List<RefactoringInfo> added = new ArrayList<>();
+    for (RefactoringInfo info : refactorings) {
+      if (!shown.contains(info)) {
+        added.add(info);
+      }
+    }
+    if (added.isEmpty()) {
+      return;
+    }
+    Utils.chronologicalOrder(added);
+    added.forEach(info -> insertRefactoring(model, root, info));
+
+    JScrollPane pane = (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, tree);
+    if (pane != null && pane.getColumnHeader() != null && pane.getColumnHeader().getView() instanceof JBLabel) {
+      ((JBLabel) pane.getColumnHeader().getView())
+          .setText(detectedText(refactoringsOf(root).size(), (HistoryType) tree.getClientProperty(HistoryType.class)));
+    }
+  }
+
+  private static DefaultMutableTreeNode findChild(DefaultMutableTreeNode parent, Object userObject) {
+    for (int i = 0; i < parent.getChildCount(); i++) {
+      DefaultMutableTreeNode child = (DefaultMutableTreeNode) parent.getChildAt(i);
+      if (userObject.equals(child.getUserObject())) {
+        return child;
+      }
     }
+    return null;
+  }
+
+  private static Set<RefactoringInfo> refactoringsOf(DefaultMutableTreeNode parent) {
+    Set<RefactoringInfo> refactorings = new HashSet<>();
+    for (int i = 0; i < parent.getChildCount(); i++) {
+      Object userObject = ((DefaultMutableTreeNode) parent.getChildAt(i)).getUserObject();
+      if (userObject instanceof RefactoringInfo) {
+        refactorings.add((RefactoringInfo) userObject);
+      }
+    }
+    return refactorings;
+  }
+
+  /**
+   * Inserts the node of a refactoring before the first later refactoring, and before the groups of members.
+   */
+  private static void insertRefactoring(DefaultTreeModel model, DefaultMutableTreeNode parent,
+                                        RefactoringInfo info) {
+    DefaultMutableTreeNode holder = new DefaultMutableTreeNode();
+    TreeUtils.createHistoryTree(holder, info);
+    long timestamp = info.getEntry().getTimeStamp();
+    int index = 0;
+    while (index < parent.getChildCount()) {
+      Object userObject = ((DefaultMutableTreeNode) parent.getChildAt(index)).getUserObject();
+      if (!(userObject instanceof RefactoringInfo)
+          || ((RefactoringInfo) userObject).getEntry().getTimeStamp() > timestamp) {
+        break;
+      }
+      index++;
+    }
+    model.insertNodeInto((DefaultMutableTreeNode) holder.getFirstChild(), parent, index);
+  }
+
+  private static String detectedText(int size, HistoryType type) {
+    return String.format(RefactorInsightBundle.message("how.many.detected"),
+        size, size > 1 ? "s" : "", type.toString().toLowerCase());
   }
 
   private void setSecondComponent(JBSplitter splitter) {
@@ -110,16 +256,46 @@ public class RefactoringHistoryToolbar {
     splitter.setSecondComponent(component);
   }
 
-  private void setFirstComponent(int size, JBSplitter splitter, Tree tree) {
+  private void setFirstComponent(int size, JBSplitter splitter, Tree tree, Consumer<Tree> onOlderHistoryLoaded) {
     JBScrollPane pane = new JBScrollPane(tree);
-    JBLabel label =
-        new JBLabel(String.format(RefactorInsightBundle.message("how.many.detected"),
-            size, size > 1 ? "s" : "", type.toString().toLowerCase()));
+    JBLabel label = new JBLabel(detectedText(size, type));
     label.setForeground(Gray._105);
     pane.setColumnHeaderView(label);
+    if (onOlderHistoryLoaded != null) {
+      addPagingListener(pane, tree, onOlderHistoryLoaded);
+    }
     splitter.setFirstComponent(pane);
   }
 
+  /**
+   * Requests older history once the user scrolls to the end of the tree.
+   * The next page can be requested once the previous one is added to the tree.
+   */
+  private void addPagingListener(JBScrollPane pane, Tree tree, Consumer<Tree> onOlderHistoryLoaded) {
+    AtomicBoolean requested = new AtomicBoolean(false);
+    JScrollBar bar = pane.getVerticalScrollBar();
+    Runnable loadOlderHistory = () -> {
+      List<GitRepository> repositories = GitRepositoryManager.getInstance(project).getRepositories();
+      if (!repositories.isEmpty() && requested.compareAndSet(false, true)) {
+        MiningService.getInstance(project).loadOlderHistory(repositories.get(0), () -> {
+          onOlderHistoryLoaded.accept(tree);
+          requested.set(false);
+        });
+      }
+    };
+    pane.addMouseWheelListener(e -> {
+      if (e.getWheelRotation() > 0 && bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum()) {
+        loadOlderHistory.run();
+      }
+    });
+    bar.addAdjustmentListener(e -> {
+      if (!e.getValueIsAdjusting() && e.getValue() > 0
+          && e.getValue() + bar.getVisibleAmount() >= bar.getMaximum()) {
+        loadOlderHistory.run();
+      }
+    });
+  }
+
   private void addMouseListener(JBSplitter splitter, Tree tree) {
     tree.addMouseListener(new MouseAdapter() {
       @Override
@@ -171,9 +347,7 @@ public class RefactoringHistoryToolbar {
   }
 
   @NotNull
-  private Tree createTree(List<RefactoringInfo> refactorings,
-                          HashMap<String, Set<RefactoringInfo>> methods,
-                          HashMap<String, Set<RefactoringInfo>> attributes) {
+  private Tree createTree(List<RefactoringInfo> refactorings) {
 
     DefaultMutableTreeNode root = new DefaultMutableTreeNode("root");
     createRefactoringsTree(refactorings, root);
@@ -182,56 +356,60 @@ public class RefactoringHistoryToolbar {
     root.breadthFirstEnumeration().asIterator().forEachRemaining((c) -> expandable
         .getAndIncrement());
 
-    if (methods != null && !methods.isEmpty()) {
-      DefaultMutableTreeNode child = new DefaultMutableTreeNode(
-          RefactorInsightBundle.message("check.methods"));
-      addObjectsToTree(methods, child, true);
-      if (child.getChildCount() > 0) {
-        root.add(child);
-      }
-    }
-
-    if (attributes != null && !attributes.isEmpty()) {
-      DefaultMutableTreeNode child = new DefaultMutableTreeNode(
-          RefactorInsightBundle.message("check.fields"));
-      addObjectsToTree(attributes, child, false);
-      if (child.getChildCount() > 0) {
-        root.add(child);
-      }
-    }
-
     Tree tree = new Tree(root);
     for (int i = 0; i < expandable.get(); i++) {
       tree.expandRow(i);
     }
-    if (tree.getRowCount() > expandable.get()) {
-      int history1 = expandable.get();
-      tree.expandRow(history1);
-      DefaultMutableTreeNode n =
-          (DefaultMutableTreeNode) tree.getPathForRow(history1).getLastPathComponent();
-      if (tree.getRowCount() > history1 + n.getChildCount() + 1) {
-        tree.expandRow(history1 + n.getChildCount() + 1);
+    tree.addTreeWillExpandListener(new TreeWillExpandListener() {
+      @Override
+      public void treeWillExpand(TreeExpansionEvent event) {
+        Object node = event.getPath().getLastPathComponent();
+        if (node instanceof MemberNode) {
+          ((MemberNode) node).load((DefaultTreeModel) tree.getModel());
+        }
       }
-    }
+
+      @Override
+      public void treeWillCollapse(TreeExpansionEvent event) {
+      }
+    });
     return tree;
   }
 
-  private void addObjectsToTree(HashMap<String, Set<RefactoringInfo>> objects,
+  private void addObjectsToTree(Map<String, Set<RefactoringInfo>> objects,
                                 DefaultMutableTreeNode child, boolean forMethods) {
     objects.forEach((obj, refs) -> {
       if (!refs.isEmpty()) {
-        DefaultMutableTreeNode m =
-            new DefaultMutableTreeNode(forMethods
-                ? obj.substring(obj.lastIndexOf(".") + 1)
-                : obj.substring(obj.lastIndexOf("|") + 1));
-        List<RefactoringInfo> infos = new ArrayList<>(refs);
-        Utils.chronologicalOrder(infos);
-        createRefactoringsTree(infos, m);
-        child.add(m);
+        child.add(new MemberNode(memberName(obj, forMethods), refs));
+      }
+    });
+  }
+
+  /**
+   * Adds the members missing from a displayed group, and the refactorings missing from its members.
+   */
+  private void mergeObjects(DefaultTreeModel model, Map<String, Set<RefactoringInfo>> objects,
+                            DefaultMutableTreeNode child, boolean forMethods) {
+    objects.forEach((obj, refs) -> {
+      if (refs.isEmpty()) {
+        return;
+      }
+      String name = memberName(obj, forMethods);
+      DefaultMutableTreeNode member = findChild(child, name);
+      if (member instanceof MemberNode) {
+        ((MemberNode) member).addRefactorings(model, refs);
+      } else {
+        model.insertNodeInto(new MemberNode(name, refs), child, child.getChildCount());
       }
     });
   }
 
+  private static String memberName(String signature, boolean forMethods) {
+    return forMethods
+        ? signature.substring(signature.lastIndexOf(".") + 1)
+        : signature.substring(signature.lastIndexOf("|") + 1);
+  }
+
   private void createRefactoringsTree(List<RefactoringInfo> refactorings,
                                       DefaultMutableTreeNode root) {
     for (RefactoringInfo ref : refactorings) {
@@ -254,6 +432,42 @@ public class RefactoringHistoryToolbar {
     toolWindow.show();
   }
 
+  /**
+   * Node of a class member, whose refactorings are added to the tree when it is first expanded.
+   */
+  private class MemberNode extends DefaultMutableTreeNode {
+    private List<RefactoringInfo> refactorings;
+
+    MemberNode(String name, Set<RefactoringInfo> refactorings) {
+      super(name);
+      this.refactorings = new ArrayList<>(refactorings);
+      add(new DefaultMutableTreeNode(HistoryToolbarRenderer.LOADING));
+    }
+
+    void load(DefaultTreeModel model) {
+      if (refactorings == null) {
+        return;
+      }
+      removeAllChildren();
+      Utils.chronologicalOrder(refactorings);
+      createRefactoringsTree(refactorings, this);
+      refactorings = null;
+      model.nodeStructureChanged(this);
+    }
+
+    void addRefactorings(DefaultTreeModel model, Set<RefactoringInfo> added) {
+      if (refactorings != null) {
+        added.stream().filter(info -> !refactorings.contains(info)).forEach(refactorings::add);
+        return;
+      }
+      Set<RefactoringInfo> shown = refactoringsOf(this);
+      List<RefactoringInfo> missing = new ArrayList<>();
+      added.stream().filter(info -> !shown.contains(info)).forEach(missing::add);
+      Utils.chronologicalOrder(missing);
+      missing.forEach(info -> insertRefactoring(model, this, info));
+    }
+  }
+
   private void showPopup(DataContext datacontext) {
     JBPanel panel = new JBPanel(new GridLayout(0, 1));
     panel.add(new JBLabel(RefactorInsightBundle.message("no.ref.history")));
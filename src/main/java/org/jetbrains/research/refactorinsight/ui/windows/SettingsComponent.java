@@ -6,6 +6,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.ui.JBIntSpinner;
+import com.intellij.ui.components.JBTextField;
 import com.intellij.util.ui.FormBuilder;
 import git4idea.repo.GitRepository;
 import git4idea.repo.GitRepositoryManager;
@@ -29,6 +30,12 @@ public class SettingsComponent {
       new JBIntSpinner(100, 0, Integer.MAX_VALUE, 10);
   private final JBIntSpinner threads =
       new JBIntSpinner(8, 0, Integer.MAX_VALUE, 1);
+  private final JBIntSpinner prefetchWindow =
+      new JBIntSpinner(10, 0, Integer.MAX_VALUE, 1);
+  private final JBTextField scopePaths = new JBTextField();
+  private final JBTextField scopeSince = new JBTextField();
+  private final JBTextField scopeUntil = new JBTextField();
+  private final JBTextField scopeAuthors = new JBTextField();
 
   /**
    * SettingsComponent constructor. Creates the setting panel.
@@ -67,8 +74,8 @@ public class SettingsComponent {
                 String content = VfsUtil.loadText(file);
                 content = content.split("value=\"", 2)[1];
                 content = content.substring(0, content.lastIndexOf('\"'));
-                MiningService.getInstance(project).getState().refactoringsMap =
-                    new RefactoringsMapConverter().fromString(content);
+                MiningService.getInstance(project)
+                    .setRefactoringsMap(new RefactoringsMapConverter().fromString(content));
               } catch (Exception ex) {
                 Messages.showErrorDialog(RefactorInsightBundle.message("bad.file"),
                     RefactorInsightBundle.message("name"));
@@ -83,6 +90,11 @@ public class SettingsComponent {
         .addLabeledComponent(RefactorInsightBundle.message("label.max.history"), historyLimit, 1,
             false)
         .addLabeledComponent(RefactorInsightBundle.message("label.threads"), threads, 1, false)
+        .addLabeledComponent(RefactorInsightBundle.message("label.prefetch"), prefetchWindow, 1, false)
+        .addLabeledComponent(RefactorInsightBundle.message("label.scope.paths"), scopePaths, 1, false)
+        .addLabeledComponent(RefactorInsightBundle.message("label.scope.since"), scopeSince, 1, false)
+        .addLabeledComponent(RefactorInsightBundle.message("label.scope.until"), scopeUntil, 1, false)
+        .addLabeledComponent(RefactorInsightBundle.message("label.scope.authors"), scopeAuthors, 1, false)
         .addComponent(clear)
         .addComponent(all)
         .addComponent(choose)
@@ -122,4 +134,44 @@ public class SettingsComponent {
   public void setThreads(int n) {
     this.threads.setNumber(n);
   }
+
+  public int getPrefetchWindow() {
+    return prefetchWindow.getNumber();
+  }
+
+  public void setPrefetchWindow(int n) {
+    this.prefetchWindow.setNumber(n);
+  }
+
+  public String getScopePaths() {
+    return scopePaths.getText().trim();
+  }
+
+  public void setScopePaths(String paths) {
+    this.scopePaths.setText(paths);
+  }
+
+  public String getScopeSince() {
+    return scopeSince.getText().trim();
+  }
+
+  public void setScopeSince(String since) {
+    this.scopeSince.setText(since);
+  }
+
+  public String getScopeUntil() {
+    return scopeUntil.getText().trim();
+  }
+
+  public void setScopeUntil(String until) {
+    this.scopeUntil.setText(until);
+  }
+
+  public String getScopeAuthors() {
+    return scopeAuthors.getText().trim();
+  }
+
+  public void setScopeAuthors(String authors) {
+    this.scopeAuthors.setText(authors);
+  }
 }
@@ -1,8 +1,13 @@
 package org.jetbrains.research.refactorinsight.utils;
 
+import com.intellij.openapi.util.Key;
 import com.intellij.psi.PsiField;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.PsiParameterList;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import gr.uom.java.xmi.UMLOperation;
 import gr.uom.java.xmi.UMLType;
 import org.jetbrains.research.refactorinsight.data.Group;
@@ -25,6 +30,8 @@ public class StringUtils {
   public static final int RANGE = 6;
   public static final String[] delimiters = {"_", "=", "`", "-", "!", ",", ";"};
 
+  private static final Key<CachedValue<String>> SIGNATURE = Key.create("refactorinsight.signature");
+
   public static String delimiter(int option, boolean escaped) {
     return (escaped ? ESC_REGEX : "") + delimiters[option];
   }
@@ -153,6 +160,28 @@ public class StringUtils {
         + "|" + field.getName() + " : " + field.getType().getPresentableText();
   }
 
+  /**
+   * Returns the signature of a PsiMethod, cached until the next PSI modification.
+   *
+   * @param method to get signature for.
+   * @return the signature.
+   */
+  public static String getCachedSignature(PsiMethod method) {
+    return CachedValuesManager.getCachedValue(method, SIGNATURE, () -> CachedValueProvider.Result
+        .create(calculateSignature(method), PsiModificationTracker.MODIFICATION_COUNT));
+  }
+
+  /**
+   * Returns the signature of a PsiField, cached until the next PSI modification.
+   *
+   * @param field to get signature for.
+   * @return signature of a field.
+   */
+  public static String getCachedFieldSignature(PsiField field) {
+    return CachedValuesManager.getCachedValue(field, SIGNATURE, () -> CachedValueProvider.Result
+        .create(getFieldSignature(field), PsiModificationTracker.MODIFICATION_COUNT));
+  }
+
   /**
    * Method for create a presentable String out of the
    * name refactoring.
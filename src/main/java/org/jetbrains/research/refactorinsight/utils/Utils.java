@@ -4,7 +4,6 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Pair;
-import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.LocalFilePath;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.wm.ToolWindowManager;
@@ -19,6 +18,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -228,44 +228,41 @@ public class Utils {
    * @return the corrected RefactoringInfo
    */
   public static RefactoringInfo check(RefactoringInfo info, Project project) {
+    GitRevisionNumber afterNumber = new GitRevisionNumber(info.getCommitId());
+    GitRevisionNumber beforeNumber = new GitRevisionNumber(info.getParent());
+    return check(info, (path, atCommit) -> GitContentRevision
+        .createRevision(new LocalFilePath(project.getBasePath() + "/" + path, false),
+            atCommit ? afterNumber : beforeNumber, project)
+        .getContent());
+  }
+
+  /**
+   * Checks and corrects the ranges returned by RefactoringMiner,
+   * with the file contents read by the given loader.
+   *
+   * @param info     refactoring info
+   * @param contents loads the files of the commit of the refactoring and of its parent
+   * @return the corrected RefactoringInfo
+   */
+  public static RefactoringInfo check(RefactoringInfo info, ContentLoader contents) {
     //check for refactorings without line markings
     // such as move source folder or rename package
     if (info.getLeftPath() == null || info.getRightPath() == null) {
       return info;
     }
 
-    FilePath beforePath = new LocalFilePath(
-        project.getBasePath() + "/"
-            + info.getLeftPath(), false);
-    FilePath midPath = !info.isThreeSided() ? null : new LocalFilePath(
-        project.getBasePath() + "/"
-            + info.getMidPath(), false);
-    FilePath afterPath = new LocalFilePath(
-        project.getBasePath() + "/"
-            + info.getRightPath(), false);
-    GitRevisionNumber afterNumber = new GitRevisionNumber(info.getCommitId());
-    GitRevisionNumber beforeNumber = new GitRevisionNumber(info.getParent());
-
-
     try {
-      String after = GitContentRevision
-          .createRevision(afterPath, afterNumber, project).getContent();
+      String after = contents.load(info.getRightPath(), true);
 
       if (!info.isMoreSided()) {
-        String before = GitContentRevision
-            .createRevision(beforePath, beforeNumber, project).getContent();
-        String mid = !info.isThreeSided() ? null : GitContentRevision
-            .createRevision(midPath, afterNumber, project).getContent();
+        String before = contents.load(info.getLeftPath(), false);
+        String mid = !info.isThreeSided() ? null : contents.load(info.getMidPath(), true);
 
         info.correctLines(before, mid, after);
       } else {
         List<String> befores = new ArrayList<>();
         for (Pair<String, Boolean> pathPair : info.getMoreSidedLeftPaths()) {
-          GitRevisionNumber number = pathPair.second ? afterNumber : beforeNumber;
-          FilePath filePath =
-              new LocalFilePath(project.getBasePath() + "/" + fixPath(pathPair.first), false);
-          befores.add(
-              GitContentRevision.createRevision(filePath, number, project).getContent());
+          befores.add(contents.load(fixPath(pathPair.first), pathPair.second));
         }
         info.correctMoreSidedLines(befores, after);
       }
@@ -302,7 +299,22 @@ public class Utils {
    * @throws IOException in case of a problem
    */
   public static int getCommitCount(GitRepository repository) throws IOException {
-    Process process = Runtime.getRuntime().exec("git rev-list --all --count", null,
+    return getCommitCount(repository, new ArrayList<>());
+  }
+
+  /**
+   * Get the amount of commits in a repository that are selected by some arguments of `git rev-list`,
+   * such as the ones of a mining scope.
+   *
+   * @param repository GitRepository
+   * @param args       the arguments selecting the commits.
+   * @return the amount of commits
+   * @throws IOException in case of a problem
+   */
+  public static int getCommitCount(GitRepository repository, List<String> args) throws IOException {
+    List<String> command = new ArrayList<>(Arrays.asList("git", "rev-list", "--all", "--count"));
+    command.addAll(args);
+    Process process = Runtime.getRuntime().exec(command.toArray(new String[0]), null,
         new File(repository.getRoot().getCanonicalPath()));
     BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
     String output = reader.readLine();
@@ -311,6 +323,7 @@ public class Utils {
 
   /**
    * Calculates the version of the project by computing the hash code of the existing classes.
+   * Transient fields are in-memory caches that are not stored, so they do not change the version.
    *
    * @return the current version.
    */
@@ -322,6 +335,7 @@ public class Utils {
         RefactoringLine.class,
         RefactoringLine.RefactoringOffset.class
     ).flatMap(c -> Arrays.stream(c.getDeclaredFields())
+        .filter(field -> !Modifier.isTransient(field.getModifiers()))
         .map(Field::getGenericType)
         .map(Type::getTypeName)
     ).collect(Collectors.toList()))
@@ -400,4 +414,12 @@ public class Utils {
     int nameEnd = qualifiedName.indexOf('(', nameBegin);
     return qualifiedName.substring(nameBegin, nameEnd) + "()";
   }
+
+  /**
+   * Loads the content of a file at the commit of a refactoring or at its parent.
+   */
+  @FunctionalInterface
+  public interface ContentLoader {
+    String load(String path, boolean atCommit) throws VcsException;
+  }
 }
@@ -0,0 +1,280 @@
+package org.jetbrains.research.refactorinsight.data;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.TestCase.assertEquals;
+
+import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class HistoryIndexTest {
+
+  private static RefactoringInfo info(RefactoringType type, Group group, String nameBefore, String nameAfter) {
+    return new RefactoringInfo()
+        .setType(type)
+        .setGroup(group)
+        .setNameBefore(nameBefore)
+        .setNameAfter(nameAfter);
+  }
+
+  private static RefactoringEntry entry(String commitId, String parent, RefactoringInfo... infos) {
+    RefactoringEntry entry = new RefactoringEntry(commitId, parent, 1234)
+        .setRefactorings(new ArrayList<>(Arrays.asList(infos)));
+    Arrays.stream(infos).forEach(info -> info.setEntry(entry));
+    return entry;
+  }
+
+
+  @Test
+  public void converterTest() {
+    RefactoringInfo renameMethod = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_METHOD)
+        .setGroup(Group.METHOD)
+        .setNameBefore("a.A.m()")
+        .setNameAfter("a.A.n()");
+    RefactoringInfo renameClass = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_CLASS)
+        .setGroup(Group.CLASS)
+        .setNameBefore("a.A")
+        .setNameAfter("a.B");
+    RefactoringEntry first = new RefactoringEntry("bbbb", "aaaa", 1234)
+        .setRefactorings(new ArrayList<>(Collections.singletonList(renameMethod)));
+    RefactoringEntry second = new RefactoringEntry("cccc", "bbbb", 5678)
+        .setRefactorings(new ArrayList<>(Collections.singletonList(renameClass)));
+    renameMethod.setEntry(first);
+    renameClass.setEntry(second);
+
+    HistoryIndex index = new HistoryIndex();
+    index.addCommit(first);
+    index.addCommit(second);
+    assertEquals(new HashSet<>(Arrays.asList("a.B.n()", "a.B")), index.getHistory().keySet());
+
+    Map<String, RefactoringEntry> entries = Map.of("bbbb", first, "cccc", second);
+    HistoryIndex deserialized = HistoryIndex.fromString(index.toString(), entries::get);
+    assertEquals("cccc", deserialized.getTip());
+    assertEquals(index.getHistory(), deserialized.getHistory());
+
+    //the second commit is mined again and its refactoring moves, the first commit is no longer mined
+    RefactoringInfo extractMethod = new RefactoringInfo()
+        .setType(RefactoringType.EXTRACT_OPERATION)
+        .setGroup(Group.METHOD)
+        .setNameBefore("a.B.n()")
+        .setNameAfter("a.B.o()");
+    RefactoringEntry remined = new RefactoringEntry("cccc", "bbbb", 5678)
+        .setRefactorings(new ArrayList<>(Arrays.asList(extractMethod, renameClass)));
+    HistoryIndex partial = HistoryIndex.fromString(index.toString(), Map.of("cccc", remined)::get);
+    assertEquals(Collections.singleton("a.B"), partial.getHistory().keySet());
+    assertEquals(Collections.singleton(renameClass), partial.getHistory().get("a.B"));
+  }
+
+  @Test
+  public void classRenameTest() {
+    RefactoringInfo renameMethod = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_METHOD)
+        .setGroup(Group.METHOD)
+        .setNameBefore("a.A.m()")
+        .setNameAfter("a.A.n()");
+    RefactoringInfo addParameter = new RefactoringInfo()
+        .setType(RefactoringType.ADD_PARAMETER)
+        .setGroup(Group.METHOD)
+        .setNameBefore("a.A.A()")
+        .setNameAfter("a.A.A(int)");
+    RefactoringInfo renameAttribute = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_ATTRIBUTE)
+        .setGroup(Group.ATTRIBUTE)
+        .setDetailsBefore("a.A")
+        .setDetailsAfter("a.A")
+        .setNameBefore("x")
+        .setNameAfter("y");
+    RefactoringInfo otherMethod = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_METHOD)
+        .setGroup(Group.METHOD)
+        .setNameBefore("a.C.m()")
+        .setNameAfter("a.C.n()");
+    RefactoringInfo renameClass = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_CLASS)
+        .setGroup(Group.CLASS)
+        .setNameBefore("a.A")
+        .setNameAfter("a.B");
+    RefactoringEntry first = new RefactoringEntry("bbbb", "aaaa", 1234)
+        .setRefactorings(new ArrayList<>(Arrays.asList(renameMethod, addParameter, renameAttribute, otherMethod)));
+    RefactoringEntry second = new RefactoringEntry("cccc", "bbbb", 5678)
+        .setRefactorings(new ArrayList<>(Collections.singletonList(renameClass)));
+
+    HistoryIndex index = new HistoryIndex();
+    index.addCommit(first);
+    index.addCommit(second);
+
+    Map<String, Set<RefactoringInfo>> history = index.getHistory();
+    assertEquals(new HashSet<>(Arrays.asList("a.B", "a.B.n()", "a.B.B(int)", "a.B|y", "a.C.n()")),
+        history.keySet());
+    assertEquals(Collections.singleton(renameMethod), history.get("a.B.n()"));
+    assertEquals(Collections.singleton(addParameter), history.get("a.B.B(int)"));
+    assertEquals(Collections.singleton(renameAttribute), history.get("a.B|y"));
+    assertEquals(Collections.singleton(otherMethod), history.get("a.C.n()"));
+    assertTrue(index.mightContain("B"));
+    assertTrue(index.mightContain("y"));
+  }
+
+  @Test
+  public void addOlderTest() {
+    RefactoringInfo renameOldMethod = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_METHOD)
+        .setGroup(Group.METHOD)
+        .setNameBefore("a.A.k()")
+        .setNameAfter("a.A.m()");
+    RefactoringInfo addParameter = new RefactoringInfo()
+        .setType(RefactoringType.ADD_PARAMETER)
+        .setGroup(Group.METHOD)
+        .setNameBefore("a.A.A()")
+        .setNameAfter("a.A.A(int)");
+    RefactoringInfo renameClass = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_CLASS)
+        .setGroup(Group.CLASS)
+        .setNameBefore("a.A")
+        .setNameAfter("a.B");
+    RefactoringInfo renameMethod = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_METHOD)
+        .setGroup(Group.METHOD)
+        .setNameBefore("a.B.m()")
+        .setNameAfter("a.B.n()");
+    RefactoringEntry first = new RefactoringEntry("bbbb", "aaaa", 1234)
+        .setRefactorings(new ArrayList<>(Arrays.asList(renameOldMethod, addParameter)));
+    RefactoringEntry second = new RefactoringEntry("cccc", "bbbb", 5678)
+        .setRefactorings(new ArrayList<>(Collections.singletonList(renameClass)));
+    RefactoringEntry third = new RefactoringEntry("dddd", "cccc", 9012)
+        .setRefactorings(new ArrayList<>(Collections.singletonList(renameMethod)));
+
+    HistoryIndex full = new HistoryIndex();
+    full.addCommit(first);
+    full.addCommit(second);
+    full.addCommit(third);
+
+    HistoryIndex newer = new HistoryIndex();
+    newer.addCommit(second);
+    newer.addCommit(third);
+    assertEquals("bbbb", newer.getAncestor());
+    HistoryIndex older = new HistoryIndex();
+    older.addCommit(first);
+    HistoryIndex extended = newer.copy();
+    extended.addOlder(older);
+
+    assertEquals(full.getHistory(), extended.getHistory());
+    assertEquals(new HashSet<>(Arrays.asList(renameOldMethod, renameMethod)), extended.getHistory().get("a.B.n()"));
+    assertEquals(Collections.singleton(addParameter), extended.getHistory().get("a.B.B(int)"));
+    assertEquals(3, extended.getDepth());
+    assertEquals("aaaa", extended.getAncestor());
+    assertEquals(2, newer.getDepth());
+    assertEquals(new HashSet<>(Arrays.asList("a.B", "a.B.n()")), newer.getHistory().keySet());
+  }
+
+  @Test
+  public void renameChainTest() {
+    RefactoringInfo renameMethod = info(RefactoringType.RENAME_METHOD, Group.METHOD, "a.A.m()", "a.A.n()");
+    RefactoringInfo addParameter = info(RefactoringType.ADD_PARAMETER, Group.METHOD, "a.A.A()", "a.A.A(int)");
+    RefactoringInfo renameAttribute = info(RefactoringType.RENAME_ATTRIBUTE, Group.ATTRIBUTE, "x", "y")
+        .setDetailsBefore("a.A")
+        .setDetailsAfter("a.A");
+    RefactoringInfo firstClassRename = info(RefactoringType.RENAME_CLASS, Group.CLASS, "a.A", "a.B");
+    RefactoringInfo secondClassRename = info(RefactoringType.RENAME_CLASS, Group.CLASS, "a.B", "a.C");
+    RefactoringInfo renameRenamed = info(RefactoringType.RENAME_METHOD, Group.METHOD, "a.C.n()", "a.C.o()");
+    List<RefactoringEntry> entries = Arrays.asList(
+        entry("bbbb", "aaaa", renameMethod, addParameter, renameAttribute),
+        entry("cccc", "bbbb", firstClassRename),
+        entry("dddd", "cccc", secondClassRename),
+        entry("eeee", "dddd", renameRenamed));
+
+    HistoryIndex index = new HistoryIndex();
+    entries.forEach(index::addCommit);
+
+    //the member keys follow both class renames
+    Map<String, Set<RefactoringInfo>> history = index.getHistory();
+    assertEquals(new HashSet<>(Arrays.asList("a.C", "a.C.o()", "a.C.C(int)", "a.C|y")), history.keySet());
+    assertEquals(new HashSet<>(Arrays.asList(firstClassRename, secondClassRename)), history.get("a.C"));
+    assertEquals(new HashSet<>(Arrays.asList(renameMethod, renameRenamed)), history.get("a.C.o()"));
+    assertEquals(Collections.singleton(addParameter), history.get("a.C.C(int)"));
+    assertEquals(Collections.singleton(renameAttribute), history.get("a.C|y"));
+
+    //the same history is built when each commit is added to a copy of the previous snapshot
+    HistoryIndex layered = new HistoryIndex();
+    for (RefactoringEntry entry : entries) {
+      layered = layered.copy();
+      layered.addCommit(entry);
+    }
+    assertEquals(history, layered.getHistory());
+    assertEquals(history, HistoryIndex.fromString(layered.toString(), commitsOf(entries)::get).getHistory());
+  }
+
+  @Test
+  public void mightContainAfterFromStringTest() {
+    List<RefactoringEntry> entries = new ArrayList<>();
+    String parent = "aaaa";
+    for (int i = 0; i < 20; i++) {
+      String commit = "c" + i;
+      entries.add(entry(commit, parent,
+          info(RefactoringType.RENAME_METHOD, Group.METHOD, "a.A" + i + ".m" + i + "()", "a.A" + i + ".n" + i + "()"),
+          info(RefactoringType.RENAME_ATTRIBUTE, Group.ATTRIBUTE, "x" + i, "y" + i)
+              .setDetailsBefore("a.A" + i)
+              .setDetailsAfter("a.A" + i),
+          info(RefactoringType.RENAME_CLASS, Group.CLASS, "a.A" + i, "a.B" + i)));
+      parent = commit;
+    }
+    HistoryIndex index = new HistoryIndex();
+    entries.forEach(index::addCommit);
+
+    HistoryIndex deserialized = HistoryIndex.fromString(index.toString(), commitsOf(entries)::get);
+    assertEquals(index.getHistory(), deserialized.getHistory());
+    for (int i = 0; i < 20; i++) {
+      assertTrue(deserialized.mightContain("n" + i));
+      assertTrue(deserialized.mightContain("y" + i));
+      assertTrue(deserialized.mightContain("B" + i));
+    }
+  }
+
+  @Test
+  public void copyIndependenceTest() {
+    RefactoringInfo renameMethod = info(RefactoringType.RENAME_METHOD, Group.METHOD, "a.A.m()", "a.A.n()");
+    RefactoringInfo renameClass = info(RefactoringType.RENAME_CLASS, Group.CLASS, "a.A", "a.B");
+    RefactoringInfo otherRename = info(RefactoringType.RENAME_METHOD, Group.METHOD, "a.A.n()", "a.A.o()");
+    HistoryIndex base = new HistoryIndex();
+    base.addCommit(entry("bbbb", "aaaa", renameMethod));
+    Map<String, Set<RefactoringInfo>> before = new HashMap<>(base.getHistory());
+
+    HistoryIndex renamed = base.copy();
+    renamed.addCommit(entry("cccc", "bbbb", renameClass));
+    HistoryIndex branch = base.copy();
+    branch.addCommit(entry("dddd", "bbbb", otherRename));
+
+    assertEquals(before, base.getHistory());
+    assertEquals("bbbb", base.getTip());
+    assertEquals(1, base.getDepth());
+    assertFalse(base.containsCommit("cccc"));
+    assertFalse(base.containsCommit("dddd"));
+
+    assertEquals(new HashSet<>(Arrays.asList("a.B", "a.B.n()")), renamed.getHistory().keySet());
+    assertTrue(renamed.containsCommit("bbbb"));
+    assertFalse(renamed.containsCommit("dddd"));
+    assertEquals(2, renamed.getDepth());
+
+    assertEquals(Collections.singleton("a.A.o()"), branch.getHistory().keySet());
+    assertEquals(new HashSet<>(Arrays.asList(renameMethod, otherRename)), branch.getHistory().get("a.A.o()"));
+    assertFalse(branch.containsCommit("cccc"));
+    assertEquals(Collections.singleton(renameMethod), base.getHistory().get("a.A.n()"));
+  }
+
+  private static Map<String, RefactoringEntry> commitsOf(List<RefactoringEntry> entries) {
+    Map<String, RefactoringEntry> commits = new HashMap<>();
+    entries.forEach(entry -> commits.put(entry.getCommitId(), entry));
+    return commits;
+  }
+}
@@ -0,0 +1,127 @@
+package org.jetbrains.research.refactorinsight.data;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+import com.intellij.openapi.util.Pair;
+import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.jetbrains.research.refactorinsight.data.diff.MoreSidedDiffRequestGenerator;
+import org.jetbrains.research.refactorinsight.data.diff.TwoSidedDiffRequestGenerator;
+import org.junit.Test;
+
+public class RefactoringEntryTest {
+
+  private static RefactoringInfo info(RefactoringType type, String name, String left, String mid, String right) {
+    return new RefactoringInfo()
+        .setType(type)
+        .setNameBefore(name)
+        .setNameAfter(name)
+        .setLeftPath(left)
+        .setMidPath(mid)
+        .setRightPath(right)
+        .setRequestGenerator(new TwoSidedDiffRequestGenerator());
+  }
+
+  private static RefactoringLine line(RefactoringInfo info) {
+    RefactoringLine line = new RefactoringLine(null, null, null, RefactoringLine.VisualisationType.TWO,
+        RefactoringLine.MarkingOption.NONE, false);
+    info.getLineMarkings().add(line);
+    return line;
+  }
+
+  private static RefactoringEntry combine(RefactoringInfo... infos) {
+    RefactoringEntry entry = new RefactoringEntry("cccc", "bbbb", 1234)
+        .setRefactorings(new ArrayList<>(Arrays.asList(infos)));
+    entry.combineRelated();
+    return entry;
+  }
+
+  @Test
+  public void combineExtractSuperclassTest() {
+    RefactoringInfo extractSuperclass = info(RefactoringType.EXTRACT_SUPERCLASS, "a.S", "a/A.java", null, "a/S.java")
+        .setRequestGenerator(new MoreSidedDiffRequestGenerator(new ArrayList<>()));
+    RefactoringLine own = line(extractSuperclass);
+    RefactoringInfo pullUpMethod = info(RefactoringType.PULL_UP_OPERATION, "a.S.m()", "a/A.java", null, "a/S.java");
+    RefactoringLine method = line(pullUpMethod);
+    RefactoringLine body = line(pullUpMethod);
+    RefactoringInfo pullUpAttribute = info(RefactoringType.PULL_UP_ATTRIBUTE, "x", "a/B.java", null, "a/S.java");
+    RefactoringLine attribute = line(pullUpAttribute);
+    RefactoringInfo otherPullUp = info(RefactoringType.PULL_UP_OPERATION, "a.T.n()", "a/C.java", null, "a/T.java");
+    RefactoringLine other = line(otherPullUp);
+
+    RefactoringEntry entry = combine(pullUpMethod, extractSuperclass, otherPullUp, pullUpAttribute);
+
+    //the ranges of the last pull up go first, as if each range had been inserted at the beginning
+    assertEquals(Arrays.asList(attribute, body, method, own), extractSuperclass.getLineMarkings());
+    assertEquals(Arrays.asList(new Pair<>("a/B.java", false), new Pair<>("a/A.java", false),
+        new Pair<>("a/A.java", false)), extractSuperclass.getMoreSidedLeftPaths());
+    assertEquals(Collections.singletonList(other), otherPullUp.getLineMarkings());
+    assertTrue(pullUpMethod.isHidden());
+    assertTrue(pullUpAttribute.isHidden());
+    assertFalse(otherPullUp.isHidden());
+    assertFalse(extractSuperclass.isHidden());
+    assertTrue(extractSuperclass.getIncludingRefactorings().isEmpty());
+    assertEquals(Arrays.asList(pullUpMethod, extractSuperclass, otherPullUp, pullUpAttribute),
+        entry.getRefactorings());
+  }
+
+  @Test
+  public void combineExtractClassTest() {
+    RefactoringInfo extractClass = info(RefactoringType.EXTRACT_CLASS, "a.E", "a/A.java", null, "a/E.java");
+    RefactoringInfo moveMethod = info(RefactoringType.MOVE_OPERATION, "a.E.m()", "a/A.java", null, "a/E.java");
+    RefactoringInfo moveAttribute = info(RefactoringType.MOVE_ATTRIBUTE, "x", "a/A.java", null, "a/E.java");
+    RefactoringInfo moveFromOther = info(RefactoringType.MOVE_OPERATION, "a.E.n()", "a/B.java", null, "a/E.java");
+    RefactoringInfo extractToMid = info(RefactoringType.EXTRACT_CLASS, "a.F", "a/C.java", "a/F.java", "a/C.java");
+    RefactoringInfo moveToMid = info(RefactoringType.MOVE_ATTRIBUTE, "y", "a/C.java", null, "a/F.java");
+    RefactoringInfo moveToRight = info(RefactoringType.MOVE_OPERATION, "a.C.o()", "a/C.java", null, "a/C.java");
+
+    RefactoringEntry entry = combine(moveMethod, extractClass, moveFromOther, extractToMid, moveAttribute,
+        moveToRight, moveToMid);
+
+    assertEquals(new HashSet<>(Arrays.asList(RefactoringType.MOVE_OPERATION.getName(),
+        RefactoringType.MOVE_ATTRIBUTE.getName())), extractClass.getIncludingRefactorings());
+    assertEquals(Collections.singleton(RefactoringType.MOVE_ATTRIBUTE.getName()),
+        extractToMid.getIncludingRefactorings());
+    assertTrue(moveMethod.isHidden());
+    assertTrue(moveAttribute.isHidden());
+    assertTrue(moveToMid.isHidden());
+    assertFalse(moveFromOther.isHidden());
+    assertFalse(moveToRight.isHidden());
+    assertFalse(extractClass.isHidden());
+    assertFalse(extractToMid.isHidden());
+    assertEquals(Arrays.asList(moveMethod, extractClass, moveFromOther, extractToMid, moveAttribute,
+        moveToRight, moveToMid), entry.getRefactorings());
+  }
+
+  @Test
+  public void combineWithMissingPathsTest() {
+    RefactoringInfo extractClass = info(RefactoringType.EXTRACT_CLASS, "a.E", null, null, "a/E.java");
+    RefactoringInfo move = info(RefactoringType.MOVE_OPERATION, "a.E.m()", null, null, "a/E.java");
+    RefactoringInfo moveFromFile = info(RefactoringType.MOVE_OPERATION, "a.E.n()", "a/A.java", null, "a/E.java");
+    RefactoringInfo extractSuperclass = info(RefactoringType.EXTRACT_SUPERCLASS, "a.S", "a/A.java", null, null)
+        .setRequestGenerator(new MoreSidedDiffRequestGenerator(new ArrayList<>()));
+    RefactoringInfo pullUp = info(RefactoringType.PULL_UP_OPERATION, "a.S.m()", "a/A.java", null, null);
+    RefactoringLine pulled = line(pullUp);
+
+    List<RefactoringInfo> infos = new ArrayList<>(Arrays.asList(extractClass, move, null, moveFromFile,
+        extractSuperclass, pullUp));
+    RefactoringEntry entry = new RefactoringEntry("cccc", "bbbb", 1234).setRefactorings(infos);
+    entry.combineRelated();
+
+    //a missing path is related to the same missing path
+    assertEquals(Collections.singleton(RefactoringType.MOVE_OPERATION.getName()),
+        extractClass.getIncludingRefactorings());
+    assertTrue(move.isHidden());
+    assertFalse(moveFromFile.isHidden());
+    assertTrue(pullUp.isHidden());
+    assertEquals(Collections.singletonList(pulled), extractSuperclass.getLineMarkings());
+  }
+}
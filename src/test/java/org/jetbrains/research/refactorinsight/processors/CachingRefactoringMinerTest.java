@@ -0,0 +1,97 @@
+package org.jetbrains.research.refactorinsight.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.refactoringminer.api.Refactoring;
+import org.refactoringminer.api.RefactoringHandler;
+
+public class CachingRefactoringMinerTest {
+
+  private static final String FIRST = "package a;\n"
+      + "public class A {\n"
+      + "  public int m(int x) {\n"
+      + "    int y = x * 2;\n"
+      + "    int z = y + 1;\n"
+      + "    return z * z;\n"
+      + "  }\n"
+      + "}\n";
+  private static final String SECOND = "package a;\n"
+      + "public class A {\n"
+      + "  public int n(int x) {\n"
+      + "    int y = x * 2;\n"
+      + "    int z = y + 1;\n"
+      + "    return z * z;\n"
+      + "  }\n"
+      + "}\n";
+  private static final String THIRD = "package a;\n"
+      + "public class A {\n"
+      + "  public int n(int x) {\n"
+      + "    int z = twice(x) + 1;\n"
+      + "    return z * z;\n"
+      + "  }\n"
+      + "  private int twice(int x) {\n"
+      + "    int y = x * 2;\n"
+      + "    return y;\n"
+      + "  }\n"
+      + "}\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static RevCommit commit(Git git, File file, String content) throws Exception {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    git.add().addFilepattern(".").call();
+    return git.commit().setMessage("change").setAuthor("author", "author@example.com")
+        .setCommitter("author", "author@example.com").call();
+  }
+
+  private static List<String> detect(Repository repository, RevCommit commit, UMLModelCache cache) {
+    List<String> detected = new ArrayList<>();
+    new CachingRefactoringMiner(cache).detectAtCommit(repository, commit.getName(), new RefactoringHandler() {
+      @Override
+      public void handle(String commitId, List<Refactoring> refactorings) {
+        detected.addAll(refactorings.stream().map(Refactoring::toString).collect(Collectors.toList()));
+      }
+    });
+    return detected;
+  }
+
+  @Test
+  public void warmCacheDetectsTheSameRefactorings() throws Exception {
+    File directory = folder.newFolder("repository");
+    File source = new File(directory, "src/a/A.java");
+    source.getParentFile().mkdirs();
+    try (Git git = Git.init().setDirectory(directory).call()) {
+      commit(git, source, FIRST);
+      RevCommit renamed = commit(git, source, SECOND);
+      RevCommit extracted = commit(git, source, THIRD);
+      Repository repository = git.getRepository();
+
+      List<String> coldRenamed = detect(repository, renamed, new UMLModelCache(10));
+      List<String> coldExtracted = detect(repository, extracted, new UMLModelCache(10));
+      assertFalse(coldRenamed.isEmpty());
+      assertFalse(coldExtracted.isEmpty());
+
+      //the model of the file after the rename is reused as the model before the extraction
+      UMLModelCache cache = new UMLModelCache(10);
+      assertEquals(coldRenamed, detect(repository, renamed, cache));
+      assertEquals(coldExtracted, detect(repository, extracted, cache));
+      assertEquals(coldExtracted, detect(repository, extracted, cache));
+      assertEquals(coldRenamed, detect(repository, renamed, cache));
+    }
+  }
+}
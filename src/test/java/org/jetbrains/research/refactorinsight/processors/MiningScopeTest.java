@@ -0,0 +1,131 @@
+package org.jetbrains.research.refactorinsight.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.junit.Test;
+
+public class MiningScopeTest {
+
+  private static MiningScope paths(String... paths) {
+    return new MiningScope(List.of(paths), "", "", Collections.emptyList());
+  }
+
+  private static RefactoringInfo info(String left, String mid, String right) {
+    return new RefactoringInfo().setNameBefore("before").setNameAfter("after")
+        .setLeftPath(left).setMidPath(mid).setRightPath(right);
+  }
+
+  @Test
+  public void globWithAnyDirectories() {
+    MiningScope scope = paths("src/**/*.java");
+    assertTrue(scope.contains("src/A.java"));
+    assertTrue(scope.contains("src/a/b/A.java"));
+    assertFalse(scope.contains("test/A.java"));
+    assertFalse(scope.contains("src/A.kt"));
+  }
+
+  @Test
+  public void globStartingWithAnyDirectories() {
+    MiningScope scope = paths("**/test/*.kt");
+    assertTrue(scope.contains("test/A.kt"));
+    assertTrue(scope.contains("a/b/test/A.kt"));
+    assertFalse(scope.contains("test/a/A.kt"));
+  }
+
+  @Test
+  public void globWithNegatedSet() {
+    MiningScope scope = paths("src/[!t]*.java");
+    assertTrue(scope.contains("src/A.java"));
+    assertFalse(scope.contains("src/tA.java"));
+  }
+
+  @Test
+  public void globWithSingleCharacter() {
+    MiningScope scope = paths("src/?.java");
+    assertTrue(scope.contains("src/A.java"));
+    assertFalse(scope.contains("src/AB.java"));
+    assertFalse(scope.contains("src//.java"));
+  }
+
+  @Test
+  public void prefixWithoutTrailingSlash() {
+    MiningScope scope = paths("src/main");
+    assertTrue(scope.contains("src/main"));
+    assertTrue(scope.contains("src/main/A.java"));
+    assertFalse(scope.contains("src/mainer/A.java"));
+    assertFalse(scope.contains((String) null));
+  }
+
+  @Test
+  public void prefixWithTrailingSlash() {
+    MiningScope scope = paths("src/test/");
+    assertTrue(scope.contains("src/test/A.java"));
+    assertFalse(scope.contains("src/testing/A.java"));
+  }
+
+  @Test
+  public void emptyScopeContainsEverything() {
+    assertFalse(MiningScope.ALL.isRestricted());
+    assertTrue(MiningScope.ALL.contains("any/A.java"));
+    assertTrue(MiningScope.ALL.contains((String) null));
+    assertTrue(MiningScope.ALL.logArgs().isEmpty());
+  }
+
+  @Test
+  public void logArgsOrder() {
+    MiningScope scope = new MiningScope(List.of("src", "**/*.kt"), "2020-01-01", "2021-01-01",
+        List.of("alice", "bob"));
+    assertEquals(List.of("--since=2020-01-01", "--until=2021-01-01", "--author=alice", "--author=bob",
+        "--", "src", ":(glob)**/*.kt"), scope.logArgs());
+  }
+
+  @Test
+  public void logArgsWithoutPaths() {
+    MiningScope scope = new MiningScope(Collections.emptyList(), "", "2021-01-01", List.of("alice"));
+    assertEquals(List.of("--until=2021-01-01", "--author=alice"), scope.logArgs());
+  }
+
+  @Test
+  public void restrictKeepsRefactoringsWithAllFilesInScope() {
+    RefactoringInfo inScope = info("src/A.java", null, "src/B.java");
+    RefactoringInfo onlyRight = info(null, null, "src/B.kt");
+    RefactoringInfo movedIn = info("lib/A.kt", null, "src/A.kt");
+    RefactoringInfo extractedOut = info("src/A.java", "lib/B.java", "src/A.java");
+    RefactoringEntry entry = new RefactoringEntry("cccc", "bbbb", 1234)
+        .setRefactorings(new ArrayList<>(List.of(inScope, onlyRight, movedIn, extractedOut)));
+
+    RefactoringEntry restricted = paths("src", "test").restrict(entry);
+    assertEquals(List.of(inScope, onlyRight), restricted.getRefactorings());
+    assertEquals("src,test", restricted.getScope());
+  }
+
+  @Test
+  public void restrictToEmptyScope() {
+    RefactoringInfo info = info("lib/A.java", null, "lib/A.java");
+    RefactoringEntry entry = new RefactoringEntry("cccc", "bbbb", 1234)
+        .setRefactorings(new ArrayList<>(List.of(info)));
+    assertSame(entry, MiningScope.ALL.restrict(entry));
+    assertEquals(List.of(info), entry.getRefactorings());
+    assertEquals("", entry.getScope());
+  }
+
+  @Test
+  public void isCoveredBy() {
+    RefactoringEntry unscoped = new RefactoringEntry("cccc", "bbbb", 1234);
+    RefactoringEntry scoped = new RefactoringEntry("bbbb", "aaaa", 1234).setScope("src,test");
+    assertTrue(paths("src").isCoveredBy(unscoped));
+    assertTrue(MiningScope.ALL.isCoveredBy(unscoped));
+    assertTrue(paths("src", "test").isCoveredBy(scoped));
+    assertFalse(paths("src").isCoveredBy(scoped));
+    assertFalse(MiningScope.ALL.isCoveredBy(scoped));
+  }
+}
@@ -33,6 +33,7 @@ public class ConverterTest {
         + delimiter(MAP_ENTRY) + "bbbb"
         + delimiter(ENTRY) + 1234
         + delimiter(ENTRY) + "true"
+        + delimiter(ENTRY)
         + delimiter(ENTRY);
     final RefactoringEntry refactoringEntry = new RefactoringEntry("cccc", "bbbb", 1234);
     refactoringEntry.setTimeout(true);
@@ -44,8 +45,9 @@ public class ConverterTest {
     String moreEntryString = oneEntryString
         + delimiter(MAP) + "bbbb" + delimiter(MAP_ENTRY) + "aaaa"
         + delimiter(ENTRY) + 5678
-        + delimiter(ENTRY) + "false" + delimiter(ENTRY);
-    final RefactoringEntry refactoringEntry1 = new RefactoringEntry("bbbb", "aaaa", 5678);
+        + delimiter(ENTRY) + "false"
+        + delimiter(ENTRY) + "src/main" + delimiter(ENTRY);
+    final RefactoringEntry refactoringEntry1 = new RefactoringEntry("bbbb", "aaaa", 5678).setScope("src/main");
     RefactoringsMap moreEntryMap = new RefactoringsMap(new ConcurrentHashMap<>(Map.of(
         "cccc", refactoringEntry.setRefactorings(new ArrayList<>()),
         "bbbb", refactoringEntry1.setRefactorings(new ArrayList<>()))), "1.0.5");
@@ -165,4 +167,29 @@ public class ConverterTest {
       assertEquals(k, v.toString());
     });
   }
+
+  @Test
+  public void uncorrectedInfoConverterTest() {
+    RefactoringLine line = new RefactoringLine(null, null, null,
+        RefactoringLine.VisualisationType.TWO, RefactoringLine.MarkingOption.COLLAPSE, true);
+    line.setWord(new String[]{"MY_FIELD", null, "a-b"});
+    assertEquals(line.toRawString(), RefactoringLine.fromRawString(line.toRawString()).toRawString());
+
+    RefactoringInfo info = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_ATTRIBUTE)
+        .setNameBefore("nameBef")
+        .setNameAfter("nameAft")
+        .setLeftPath("left/path.java")
+        .setRightPath("right/path.java")
+        .setGroup(Group.ATTRIBUTE)
+        .setIncludes(new HashSet<>(Arrays.asList("Rename Attribute", "Change Attribute Type")));
+    info.getLineMarkings().add(line);
+    assertTrue(info.needsCorrection());
+
+    RefactoringInfo deserialized = RefactoringInfo.fromString(info.toString());
+    assertEquals(info, deserialized);
+    assertTrue(deserialized.needsCorrection());
+    assertEquals(info.getIncludingRefactorings(), deserialized.getIncludingRefactorings());
+    assertEquals(info.toString(), deserialized.toString());
+  }
 }
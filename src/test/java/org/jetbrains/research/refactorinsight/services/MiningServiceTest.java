@@ -0,0 +1,57 @@
+package org.jetbrains.research.refactorinsight.services;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.research.refactorinsight.adapters.RefactoringType;
+import org.jetbrains.research.refactorinsight.data.Group;
+import org.jetbrains.research.refactorinsight.data.HistoryIndex;
+import org.jetbrains.research.refactorinsight.data.RefactoringEntry;
+import org.jetbrains.research.refactorinsight.data.RefactoringInfo;
+import org.junit.Test;
+
+public class MiningServiceTest {
+
+  private static RefactoringEntry entry(String commitId, String parent, String nameBefore, String nameAfter) {
+    RefactoringInfo info = new RefactoringInfo()
+        .setType(RefactoringType.RENAME_METHOD)
+        .setGroup(Group.METHOD)
+        .setNameBefore(nameBefore)
+        .setNameAfter(nameAfter);
+    return new RefactoringEntry(commitId, parent, 1234)
+        .setRefactorings(new ArrayList<>(Collections.singletonList(info)));
+  }
+
+  @Test
+  public void dropSnapshotsIncludingChangedCommits() {
+    HistoryIndex first = new HistoryIndex();
+    first.addCommit(entry("bbbb", "aaaa", "a.A.k()", "a.A.l()"));
+    HistoryIndex second = first.copy();
+    second.addCommit(entry("cccc", "bbbb", "a.A.l()", "a.A.m()"));
+    HistoryIndex third = second.copy();
+    third.addCommit(entry("dddd", "cccc", "a.A.m()", "a.A.n()"));
+    HistoryIndex otherBranch = new HistoryIndex();
+    otherBranch.addCommit(entry("eeee", "aaaa", "a.A.k()", "a.A.o()"));
+
+    Map<String, HistoryIndex> snapshots = new HashMap<>();
+    snapshots.put("bbbb", first);
+    snapshots.put("cccc", second);
+    snapshots.put("dddd", third);
+    snapshots.put("eeee", otherBranch);
+
+    MiningService.dropSnapshots(snapshots, Collections.emptyList());
+    assertEquals(4, snapshots.size());
+
+    //the middle commit is mined again, so every snapshot whose walk includes it is stale
+    MiningService.dropSnapshots(snapshots, List.of("cccc"));
+    assertEquals(Map.of("bbbb", first, "eeee", otherBranch), snapshots);
+
+    MiningService.dropSnapshots(snapshots, List.of("ffff", "eeee"));
+    assertEquals(Map.of("bbbb", first), snapshots);
+  }
+}